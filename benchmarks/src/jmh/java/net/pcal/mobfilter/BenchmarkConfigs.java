@@ -0,0 +1,82 @@
+package net.pcal.mobfilter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generates synthetic configurations of a given size and shape for the benchmarks.  None of the generated
+ * rules match the zombie in BenchmarkSpawnAttempt, so evaluation always has to walk the whole list.
+ */
+final class BenchmarkConfigs {
+
+    enum Shape {
+        /**
+         * mobfilter.simple with alternating allow/disallow lines, so each line becomes its own rule.
+         */
+        SIMPLE,
+        /**
+         * json rules with a single entityId check each.
+         */
+        JSON_ENTITY,
+        /**
+         * json rules with blockX/blockY/blockZ boxes, like a config full of safe zones.
+         */
+        JSON_REGION,
+        /**
+         * json rules with a mix of cheap and expensive checks.
+         */
+        JSON_MIXED
+    }
+
+    private BenchmarkConfigs() {}
+
+    static Config load(final Shape shape, final int ruleCount) throws IOException {
+        final Config.Builder builder = Config.builder();
+        load(shape, generate(shape, ruleCount), builder);
+        return builder.build();
+    }
+
+    static void load(final Shape shape, final byte[] configBytes, final Config.Builder builder) throws IOException {
+        if (shape == Shape.SIMPLE) {
+            SimpleConfigLoader.loadRules(new ByteArrayInputStream(configBytes), builder);
+        } else {
+            JsonConfigLoader.loadRules(new ByteArrayInputStream(configBytes), builder);
+        }
+    }
+
+    static byte[] generate(final Shape shape, final int ruleCount) {
+        final StringBuilder sb = new StringBuilder();
+        if (shape == Shape.SIMPLE) {
+            for (int i = 0; i < ruleCount; i++) {
+                sb.append(i % 2 == 0 ? "" : "!").append("benchmod:mob").append(i).append('\n');
+            }
+            return sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        sb.append("{\n  \"rules\": [\n");
+        for (int i = 0; i < ruleCount; i++) {
+            if (i > 0) sb.append(",\n");
+            sb.append("    { \"name\": \"rule").append(i).append("\", \"what\": \"DISALLOW_SPAWN\", \"when\": { ");
+            switch (shape) {
+                case JSON_ENTITY -> sb.append("\"entityId\": [\"benchmod:mob").append(i).append("\"]");
+                case JSON_REGION -> {
+                    final int x = (i % 100) * 1000;
+                    final int z = (i / 100) * 1000;
+                    sb.append("\"blockX\": [\"").append(x).append("\", \"").append(x + 100).append("\"], ");
+                    sb.append("\"blockY\": [\"0\", \"MAX\"], ");
+                    sb.append("\"blockZ\": [\"").append(z).append("\", \"").append(z + 100).append("\"]");
+                }
+                case JSON_MIXED -> {
+                    sb.append("\"category\": [\"MONSTER\"], ");
+                    sb.append("\"biomeId\": [\"benchmod:biome").append(i).append("\"], ");
+                    sb.append("\"lightLevel\": [\"0\", \"7\"], ");
+                    sb.append("\"weather\": [\"RAIN\"]");
+                }
+                default -> throw new IllegalArgumentException(shape.name());
+            }
+            sb.append(" } }");
+        }
+        sb.append("\n  ]\n}\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,146 @@
+package net.pcal.mobfilter;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.resources.Identifier;
+import net.minecraft.world.Difficulty;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.MobCategory;
+import net.minecraft.world.level.LightLayer;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.Block;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * SpawnAttempt with canned values so we can drive the engine without a world.  Describes a zombie
+ * spawning naturally in the plains at night.  The registries have to be bootstrapped before this is used,
+ * since it reports a real EntityType for the RuleIndex to look up.
+ */
+final class BenchmarkSpawnAttempt implements SpawnAttempt {
+
+    private static final Logger LOGGER = LogManager.getLogger(BenchmarkSpawnAttempt.class);
+    private static final Identifier ENTITY_ID = Identifier.parse("minecraft:zombie");
+    private static final Identifier DIMENSION_ID = Identifier.parse("minecraft:overworld");
+    private static final Identifier BLOCK_ID = Identifier.parse("minecraft:grass_block");
+    private static final Identifier BIOME_ID = Identifier.parse("minecraft:plains");
+    private static final Long DAY_TIME = 18000L;
+
+    private final BlockPos blockPos = new BlockPos(-1234, 70, -5678);
+
+    @Override
+    public Identifier getEntityId() {
+        return ENTITY_ID;
+    }
+
+    @Override
+    public EntityType<?> getEntityType() {
+        return EntityType.ZOMBIE;
+    }
+
+    @Override
+    public String getWorldName() {
+        return "Benchmark World";
+    }
+
+    @Override
+    public Identifier getDimensionId() {
+        return DIMENSION_ID;
+    }
+
+    @Override
+    public Identifier getBlockId() {
+        return BLOCK_ID;
+    }
+
+    @Override
+    public EntitySpawnReason getSpawnReason() {
+        return EntitySpawnReason.NATURAL;
+    }
+
+    @Override
+    public MobCategory getMobCategory() {
+        return MobCategory.MONSTER;
+    }
+
+    @Override
+    public BlockPos getBlockPos() {
+        return this.blockPos;
+    }
+
+    @Override
+    public Integer getMoonPhase() {
+        return 2;
+    }
+
+    @Override
+    public Integer getBrightness(LightLayer lightLayer, BlockPos blockPos) {
+        return 4;
+    }
+
+    @Override
+    public Integer getMaxLocalRawBrightness(BlockPos blockPos) {
+        return 4;
+    }
+
+    @Override
+    public Boolean isThundering() {
+        return false;
+    }
+
+    @Override
+    public Boolean isRainingAt(BlockPos blockPos) {
+        return false;
+    }
+
+    @Override
+    public Difficulty getDifficulty() {
+        return Difficulty.NORMAL;
+    }
+
+    @Override
+    public Biome getBiome(BlockPos blockPos) {
+        return null;
+    }
+
+    @Override
+    public Identifier getBiomeId() {
+        return BIOME_ID;
+    }
+
+    @Override
+    public Long getDayTime() {
+        return DAY_TIME;
+    }
+
+    @Override
+    public Long getGameTime() {
+        return DAY_TIME;
+    }
+
+    @Override
+    public RuleCheck.WeatherType getWeatherType() {
+        return RuleCheck.WeatherType.CLEAR;
+    }
+
+    @Override
+    public Block getBlock() {
+        return null;
+    }
+
+    @Override
+    public Holder<Biome> getBiomeHolder() {
+        return null;
+    }
+
+    @Override
+    public Integer getNearbyCount(int categoryMask, int chunkRadius) {
+        return 0;
+    }
+
+    @Override
+    public Logger getLogger() {
+        return LOGGER;
+    }
+}
@@ -0,0 +1,66 @@
+package net.pcal.mobfilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of parsing a config file into rules.  Run with the gc profiler (the default for this module) to
+ * see how much garbage loading produces.  loadBound() is the old way of loading json, binding the whole
+ * file before building any rules, for comparison with the streaming loader.
+ *
+ * The gc profiler reports how much is allocated, not how much is live at once, and the streaming loader
+ * mostly saves the latter.  To compare peak heap, find the smallest -Xmx (with -XX:+UseSerialGC) that each
+ * one can load a large file in.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigLoadBenchmark {
+
+    @Param({"100", "10000"})
+    public int ruleCount;
+
+    @Param({"SIMPLE", "JSON_ENTITY", "JSON_REGION", "JSON_MIXED"})
+    public BenchmarkConfigs.Shape shape;
+
+    private byte[] configBytes;
+
+    @Setup
+    public void setup() {
+        this.configBytes = BenchmarkConfigs.generate(this.shape, this.ruleCount);
+    }
+
+    @Benchmark
+    public Config load() throws IOException {
+        final Config.Builder builder = Config.builder();
+        BenchmarkConfigs.load(this.shape, this.configBytes, builder);
+        return builder.build();
+    }
+
+    @Benchmark
+    public Config loadBound() throws IOException {
+        final Config.Builder builder = Config.builder();
+        if (this.shape == BenchmarkConfigs.Shape.SIMPLE) {
+            BenchmarkConfigs.load(this.shape, this.configBytes, builder);
+        } else {
+            JsonConfigLoader.loadRules(JsonConfigLoader.loadFromJson(new ByteArrayInputStream(this.configBytes)), builder);
+        }
+        return builder.build();
+    }
+}
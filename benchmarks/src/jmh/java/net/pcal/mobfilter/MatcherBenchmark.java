@@ -0,0 +1,95 @@
+package net.pcal.mobfilter;
+
+import net.minecraft.resources.Identifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building and querying Matchers and IdMatchers, with sizes on either side of Matcher's
+ * HASH_CUTOFF.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatcherBenchmark {
+
+    @Param({"1", "2", "3", "4", "8", "64", "1024"})
+    public int size;
+
+    private String[] items;
+    private String[] idPatterns;
+    private Matcher<String> matcher;
+    private IdMatcher idMatcher;
+    private String hit;
+    private String miss;
+    private Identifier hitId;
+    private Identifier missId;
+    private Identifier namespaceHitId;
+
+    @Setup
+    public void setup() {
+        this.items = new String[this.size];
+        this.idPatterns = new String[this.size + 1];
+        for (int i = 0; i < this.size; i++) {
+            this.items[i] = "item" + i;
+            this.idPatterns[i] = "benchmod:mob" + i;
+        }
+        this.idPatterns[this.size] = "othermod:*";
+        this.matcher = Matcher.of(this.items);
+        this.idMatcher = IdMatcher.of(this.idPatterns);
+        this.hit = new String(this.items[this.size - 1]); // not the same instance, like real lookups
+        this.miss = "nope";
+        this.hitId = Identifier.parse("benchmod:mob" + (this.size - 1));
+        this.missId = Identifier.parse("minecraft:zombie");
+        this.namespaceHitId = Identifier.parse("othermod:whatever");
+    }
+
+    @Benchmark
+    public boolean matcherHit() {
+        return this.matcher.isMatch(this.hit);
+    }
+
+    @Benchmark
+    public boolean matcherMiss() {
+        return this.matcher.isMatch(this.miss);
+    }
+
+    @Benchmark
+    public Matcher<String> matcherOf() {
+        return Matcher.of(this.items);
+    }
+
+    @Benchmark
+    public boolean idMatcherHit() {
+        return this.idMatcher.isMatch(this.hitId);
+    }
+
+    @Benchmark
+    public boolean idMatcherNamespaceHit() {
+        return this.idMatcher.isMatch(this.namespaceHitId);
+    }
+
+    @Benchmark
+    public boolean idMatcherMiss() {
+        return this.idMatcher.isMatch(this.missId);
+    }
+
+    @Benchmark
+    public IdMatcher idMatcherOf() {
+        return IdMatcher.of(this.idPatterns);
+    }
+}
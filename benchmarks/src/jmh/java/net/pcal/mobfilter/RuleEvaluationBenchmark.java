@@ -0,0 +1,68 @@
+package net.pcal.mobfilter;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.server.Bootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of deciding a single spawn, by rule count and rule shape, both by walking the whole chain and the way
+ * the mod does it, through the RuleIndex.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleEvaluationBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    public int ruleCount;
+
+    @Param({"SIMPLE", "JSON_ENTITY", "JSON_REGION", "JSON_MIXED"})
+    public BenchmarkConfigs.Shape shape;
+
+    private RuleChain rules;
+    private RuleIndex index;
+    private Rule firstRule;
+    private SpawnAttempt att;
+
+    @Setup
+    public void setup() throws IOException {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        final Config config = BenchmarkConfigs.load(this.shape, this.ruleCount);
+        this.rules = RuleChain.build(config.getRules());
+        this.index = RuleIndex.build(config.getRules());
+        this.firstRule = this.rules.get(0);
+        this.att = new BenchmarkSpawnAttempt();
+    }
+
+    @Benchmark
+    public boolean configServiceIsSpawnAllowed() {
+        return ConfigService.isSpawnAllowed(this.att, this.rules);
+    }
+
+    @Benchmark
+    public boolean indexedIsSpawnAllowed() {
+        return ConfigService.isSpawnAllowed(this.att, this.index);
+    }
+
+    @Benchmark
+    public Boolean ruleIsSpawnAllowed() {
+        return this.firstRule.isSpawnAllowed(this.att);
+    }
+}
@@ -0,0 +1,136 @@
+package net.pcal.mobfilter;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.server.Bootstrap;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replays a capture made with '/mobfilter capture' against one or two configs, without a server:
+ *
+ *   ./gradlew :benchmarks:replay --args="logs/mobfilter-capture.bin config/old.json5 config/new.json5"
+ *
+ * For each config, reports how many of the captured spawns it allows and how many decisions per second it
+ * makes on one thread and on all of them.  Given two configs, also reports the spawns they disagree on.
+ *
+ * Configs are loaded straight from the given files (mobfilter.simple if the name ends in .simple, json
+ * otherwise), and decided through RuleIndex the way ConfigService does when it doesn't have a level.  So
+ * biome checks go by id, and nearbyCount checks always match since counts aren't captured.  Random and
+ * throttle rules will naturally disagree with themselves.
+ */
+public final class ReplayRunner {
+
+    private static final int MAX_DIFFS_SHOWN = 20;
+    private static final long MIN_TIMED_NANOS = 2_000_000_000L;
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: " + ReplayRunner.class.getSimpleName() + " <capture file> <config> [<other config>]");
+            System.exit(1);
+        }
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        final List<CapturedSpawnAttempt> attempts = SpawnCapture.read(Path.of(args[0]));
+        attempts.forEach(CapturedSpawnAttempt::resolve);
+        System.out.println(attempts.size() + " spawn attempts in " + args[0]);
+        if (attempts.isEmpty()) return;
+        final boolean[] a = replay(args[1], attempts);
+        if (args.length == 3) {
+            final boolean[] b = replay(args[2], attempts);
+            printDiffs(attempts, a, b);
+        }
+    }
+
+    // ===================================================================================
+    // Private
+
+    private static boolean[] replay(final String configFile, final List<CapturedSpawnAttempt> attempts) throws IOException, InterruptedException {
+        final RuleIndex index = RuleIndex.build(loadConfig(Path.of(configFile)).getRules());
+        final boolean[] verdicts = new boolean[attempts.size()];
+        int allowed = 0;
+        for (int i = 0; i < verdicts.length; i++) {
+            verdicts[i] = ConfigService.isSpawnAllowed(attempts.get(i), index);
+            if (verdicts[i]) allowed++;
+        }
+        System.out.println();
+        System.out.println(configFile + ": " + allowed + " allowed, " + (verdicts.length - allowed) + " disallowed");
+        final int threads = Runtime.getRuntime().availableProcessors();
+        System.out.printf("  1 thread:   %,.0f decisions/sec%n", getThroughput(index, attempts, 1));
+        if (threads > 1) System.out.printf("  %d threads: %,.0f decisions/sec%n", threads, getThroughput(index, attempts, threads));
+        return verdicts;
+    }
+
+    private static Config loadConfig(final Path configFile) throws IOException {
+        final Config.Builder builder = Config.builder();
+        final ByteArrayInputStream in = new ByteArrayInputStream(Files.readAllBytes(configFile));
+        if (configFile.getFileName().toString().endsWith(".simple")) {
+            SimpleConfigLoader.loadRules(in, builder);
+        } else {
+            JsonConfigLoader.loadRules(in, builder);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Split the attempts evenly across the given number of threads and keep deciding them until enough time
+     * has passed to be worth measuring.  The first pass is a warmup and isn't counted.
+     */
+    private static double getThroughput(final RuleIndex index, final List<CapturedSpawnAttempt> attempts, final int threads) throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            runPass(executor, index, attempts, threads);
+            long decisions = 0;
+            final long start = System.nanoTime();
+            long elapsed;
+            do {
+                runPass(executor, index, attempts, threads);
+                decisions += attempts.size();
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < MIN_TIMED_NANOS);
+            return decisions * 1e9 / elapsed;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void runPass(final ExecutorService executor, final RuleIndex index, final List<CapturedSpawnAttempt> attempts, final int threads) throws InterruptedException {
+        final List<Future<?>> futures = new ArrayList<>(threads);
+        final int perThread = (attempts.size() + threads - 1) / threads;
+        for (int t = 0; t < threads; t++) {
+            final List<CapturedSpawnAttempt> slice = attempts.subList(Math.min(attempts.size(), t * perThread), Math.min(attempts.size(), (t + 1) * perThread));
+            futures.add(executor.submit(() -> {
+                for (final CapturedSpawnAttempt att : slice) ConfigService.isSpawnAllowed(att, index);
+            }));
+        }
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+    private static void printDiffs(final List<CapturedSpawnAttempt> attempts, final boolean[] a, final boolean[] b) {
+        int diffs = 0;
+        System.out.println();
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) continue;
+            if (diffs < MAX_DIFFS_SHOWN) {
+                System.out.println("  " + (a[i] ? "ALLOW" : "DISALLOW") + " -> " + (b[i] ? "ALLOW" : "DISALLOW") + "  " + attempts.get(i));
+            }
+            diffs++;
+        }
+        if (diffs > MAX_DIFFS_SHOWN) System.out.println("  ...");
+        System.out.printf("%d of %d verdicts differ (%.2f%%)%n", diffs, a.length, diffs * 100.0 / a.length);
+    }
+}
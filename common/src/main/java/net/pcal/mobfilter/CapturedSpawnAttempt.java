@@ -0,0 +1,184 @@
+package net.pcal.mobfilter;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.Identifier;
+import net.minecraft.world.Difficulty;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.MobCategory;
+import net.minecraft.world.level.LightLayer;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.Block;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A spawn attempt read back from a SpawnCapture, for replaying against a config without a server.
+ *
+ * Everything is answered from what was captured at the spawn position.  Biomes and nearby counts can't be
+ * captured, so they're null, which makes the checks that need them fall back the same way they do during
+ * worldgen.  The entity type and block are also null until resolve() is called, since that needs the
+ * registries to be bootstrapped; until then, compiled checks fall back to matching ids.
+ */
+final class CapturedSpawnAttempt implements SpawnAttempt {
+
+    private static final Logger LOGGER = LogManager.getLogger(CapturedSpawnAttempt.class);
+
+    Identifier entityId;
+    String worldName;
+    Identifier dimensionId;
+    Identifier biomeId;
+    Identifier blockId;
+    EntitySpawnReason spawnReason;
+    MobCategory mobCategory;
+    RuleCheck.WeatherType weatherType;
+    Difficulty difficulty;
+    Integer rawBrightness;
+    Integer skyBrightness;
+    Integer moonPhase;
+    BlockPos blockPos;
+    Long dayTime;
+    Long gameTime;
+
+    private EntityType<?> entityType;
+    private Block block;
+
+    /**
+     * Look up the captured entity type and block in the registries, so that RuleIndex and the compiled checks
+     * can be used.  Ids the registries don't know (e.g., from mods that aren't loaded) stay unresolved.
+     */
+    void resolve() {
+        if (this.entityId != null) this.entityType = BuiltInRegistries.ENTITY_TYPE.getOptional(this.entityId).orElse(null);
+        if (this.blockId != null) this.block = BuiltInRegistries.BLOCK.getOptional(this.blockId).orElse(null);
+    }
+
+    @Override
+    public Identifier getEntityId() {
+        return this.entityId;
+    }
+
+    @Override
+    public EntityType<?> getEntityType() {
+        return this.entityType;
+    }
+
+    @Override
+    public String getWorldName() {
+        return this.worldName;
+    }
+
+    @Override
+    public Identifier getDimensionId() {
+        return this.dimensionId;
+    }
+
+    @Override
+    public Identifier getBlockId() {
+        return this.blockId;
+    }
+
+    @Override
+    public Block getBlock() {
+        return this.block;
+    }
+
+    @Override
+    public EntitySpawnReason getSpawnReason() {
+        return this.spawnReason;
+    }
+
+    @Override
+    public MobCategory getMobCategory() {
+        return this.mobCategory;
+    }
+
+    @Override
+    public BlockPos getBlockPos() {
+        return this.blockPos;
+    }
+
+    @Override
+    public Integer getMoonPhase() {
+        return this.moonPhase;
+    }
+
+    @Override
+    public Integer getBrightness(LightLayer lightLayer, BlockPos blockPos) {
+        return lightLayer == LightLayer.SKY && isSpawnPos(blockPos) ? this.skyBrightness : null;
+    }
+
+    @Override
+    public Integer getMaxLocalRawBrightness(BlockPos blockPos) {
+        return isSpawnPos(blockPos) ? this.rawBrightness : null;
+    }
+
+    @Override
+    public Boolean isThundering() {
+        return this.weatherType == null ? null : this.weatherType == RuleCheck.WeatherType.THUNDER;
+    }
+
+    @Override
+    public Boolean isRainingAt(BlockPos blockPos) {
+        if (this.weatherType == null || !isSpawnPos(blockPos)) return null;
+        return this.weatherType != RuleCheck.WeatherType.CLEAR;
+    }
+
+    @Override
+    public Difficulty getDifficulty() {
+        return this.difficulty;
+    }
+
+    @Override
+    public Biome getBiome(BlockPos blockPos) {
+        return null;
+    }
+
+    @Override
+    public Holder<Biome> getBiomeHolder() {
+        return null;
+    }
+
+    @Override
+    public Identifier getBiomeId() {
+        return this.biomeId;
+    }
+
+    @Override
+    public Long getDayTime() {
+        return this.dayTime;
+    }
+
+    @Override
+    public Long getGameTime() {
+        return this.gameTime;
+    }
+
+    @Override
+    public RuleCheck.WeatherType getWeatherType() {
+        return this.weatherType;
+    }
+
+    @Override
+    public Integer getNearbyCount(int categoryMask, int chunkRadius) {
+        return null;
+    }
+
+    @Override
+    public Logger getLogger() {
+        return LOGGER;
+    }
+
+    @Override
+    public String toString() {
+        return this.spawnReason + " " + this.entityId + " in " + this.dimensionId + " at [" + this.blockPos + "]";
+    }
+
+    // ===================================================================================
+    // Private
+
+    private boolean isSpawnPos(final BlockPos blockPos) {
+        return this.blockPos != null && this.blockPos.equals(blockPos);
+    }
+}
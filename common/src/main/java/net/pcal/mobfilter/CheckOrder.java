@@ -0,0 +1,228 @@
+package net.pcal.mobfilter;
+
+import com.google.common.collect.ImmutableList;
+import net.pcal.mobfilter.RuleCheck.BiomeCheck;
+import net.pcal.mobfilter.RuleCheck.BlockIdCheck;
+import net.pcal.mobfilter.RuleCheck.BlockPosCheck;
+import net.pcal.mobfilter.RuleCheck.CategoryCheck;
+import net.pcal.mobfilter.RuleCheck.DifficultyCheck;
+import net.pcal.mobfilter.RuleCheck.DimensionCheck;
+import net.pcal.mobfilter.RuleCheck.EntityIdCheck;
+import net.pcal.mobfilter.RuleCheck.LightLevelCheck;
+import net.pcal.mobfilter.RuleCheck.MoonPhaseCheck;
+import net.pcal.mobfilter.RuleCheck.NearbyCountCheck;
+import net.pcal.mobfilter.RuleCheck.RandomCheck;
+import net.pcal.mobfilter.RuleCheck.SkylightLevelCheck;
+import net.pcal.mobfilter.RuleCheck.SpawnReasonCheck;
+import net.pcal.mobfilter.RuleCheck.TimeOfDayCheck;
+import net.pcal.mobfilter.RuleCheck.WeatherCheck;
+import net.pcal.mobfilter.RuleCheck.WorldNameCheck;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decides what order to run the checks in each rule.  A rule fails as soon as one of its checks does, so we
+ * want to run the checks that are cheap and likely to fail first.  Each check type has a rough cost, and
+ * we sample how often each check actually passes: once in SAMPLE_INTERVAL decisions, we run every check in
+ * every rule that gets evaluated and count the passes.  Every REORDER_INTERVAL samples, ConfigService asks
+ * us for a new ordering.
+ *
+ * Only checks without side effects are moved.  A RandomCheck stays where it is, and the checks on either
+ * side of it are only reordered among themselves.
+ *
+ * Checks are tracked by their position in the rule as it was originally loaded, so the same CheckOrder
+ * keeps working across reorderings and the specialized copies of the rules made by RuleIndex.
+ */
+final class CheckOrder {
+
+    private static final int SAMPLE_INTERVAL = 256;
+    private static final int REORDER_INTERVAL = 4096;
+    private static final int MIN_SAMPLES = 64;
+    private static final double PRIOR_PASS_RATE = 0.5;
+    private static final double MIN_IMPROVEMENT = 0.95; // don't bother unless expected cost drops by 5%
+
+    private final RuleCheck[][] checksByOrdinal;
+    private final int[] offsets;
+    private final AtomicLongArray evaluations;
+    private final AtomicLongArray passes;
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicBoolean isReorderPending = new AtomicBoolean();
+
+    CheckOrder(final List<Rule> configRules) {
+        this.checksByOrdinal = new RuleCheck[configRules.size()][];
+        this.offsets = new int[configRules.size()];
+        int slots = 0;
+        for (final Rule rule : configRules) {
+            this.checksByOrdinal[rule.ordinal()] = rule.checks().toArray(new RuleCheck[0]);
+            this.offsets[rule.ordinal()] = slots;
+            slots += rule.checks().size();
+        }
+        this.evaluations = new AtomicLongArray(slots);
+        this.passes = new AtomicLongArray(slots);
+    }
+
+    // ===================================================================================
+    // Sampling
+
+    /**
+     * @return whether the caller should pass the rules it evaluates for this decision to sample().
+     */
+    boolean shouldSample() {
+        return ThreadLocalRandom.current().nextInt(SAMPLE_INTERVAL) == 0;
+    }
+
+    /**
+     * Run each of the rule's checks against the attempt and record which ones passed.
+     */
+    void sample(final Rule rule, final SpawnAttempt att) {
+        final int ordinal = rule.ordinal();
+        if (ordinal < 0 || ordinal >= this.checksByOrdinal.length) return;
+        for (int i = 0; i < rule.checks().size(); i++) {
+            final RuleCheck check = rule.checks().get(i);
+            if (!isReorderable(check)) continue;
+            final int slot = getSlot(ordinal, check);
+            if (slot < 0) continue;
+            this.evaluations.incrementAndGet(slot);
+            if (check.isMatch(att)) this.passes.incrementAndGet(slot);
+        }
+    }
+
+    /**
+     * Called once per sampled decision.
+     *
+     * @return true if it's time to reorder and nobody else is doing it.  The caller must call
+     * reorderDone() afterward.
+     */
+    boolean claimReorder() {
+        if (this.samples.incrementAndGet() % REORDER_INTERVAL != 0) return false;
+        return this.isReorderPending.compareAndSet(false, true);
+    }
+
+    void reorderDone() {
+        this.isReorderPending.set(false);
+    }
+
+    // ===================================================================================
+    // Ordering
+
+    /**
+     * @return the rules with their checks put in the best order we know of, or null if none of the rules
+     * would change.
+     */
+    List<Rule> reorder(final List<Rule> rules) {
+        final ImmutableList.Builder<Rule> out = ImmutableList.builder();
+        boolean isChanged = false;
+        for (final Rule rule : rules) {
+            final List<RuleCheck> checks = reorder(rule);
+            if (checks == null) {
+                out.add(rule);
+            } else {
+                out.add(rule.withChecks(checks));
+                isChanged = true;
+            }
+        }
+        return isChanged ? out.build() : null;
+    }
+
+    /**
+     * @return a rough relative cost of evaluating the given check.  Lookups against the world cost more than
+     * comparing things we already have in hand.
+     */
+    static int getCost(final RuleCheck check) {
+        return switch (check) {
+            case RuleCheck.CompiledCheck c -> getCost(c.source());
+            case SpawnReasonCheck c -> 1;
+            case CategoryCheck c -> 1;
+            case BlockPosCheck c -> 1;
+            case EntityIdCheck c -> 2;
+            case TimeOfDayCheck c -> 2;
+            case DifficultyCheck c -> 2;
+            case DimensionCheck c -> 2;
+            case RandomCheck c -> 2;
+            case WorldNameCheck c -> 3;
+            case MoonPhaseCheck c -> 3;
+            case WeatherCheck c -> 5;
+            case LightLevelCheck c -> 8;
+            case SkylightLevelCheck c -> 8;
+            case BlockIdCheck c -> 10;
+            case BiomeCheck c -> 10;
+            case NearbyCountCheck c -> 4 + 2 * c.chunkRadius(); // (2r+1)^2 map lookups, but cheap ones
+            default -> 5;
+        };
+    }
+
+    // ===================================================================================
+    // Private
+
+    /**
+     * @return the rule's checks in a better order, or null if the current one is good enough.
+     */
+    private List<RuleCheck> reorder(final Rule rule) {
+        final List<RuleCheck> current = rule.checks();
+        if (current.size() < 2) return null;
+        final List<RuleCheck> proposed = new ArrayList<>(current.size());
+        final List<RuleCheck> segment = new ArrayList<>();
+        final Comparator<RuleCheck> byRank = Comparator.comparingDouble(check -> getRank(rule.ordinal(), check));
+        for (final RuleCheck check : current) {
+            if (isReorderable(check)) {
+                segment.add(check);
+            } else {
+                segment.sort(byRank);
+                proposed.addAll(segment);
+                segment.clear();
+                proposed.add(check);
+            }
+        }
+        segment.sort(byRank);
+        proposed.addAll(segment);
+        if (proposed.equals(current)) return null;
+        if (getExpectedCost(rule.ordinal(), proposed) > getExpectedCost(rule.ordinal(), current) * MIN_IMPROVEMENT) return null;
+        return ImmutableList.copyOf(proposed);
+    }
+
+    /**
+     * For a chain of ANDed checks, running them in increasing order of cost / P(fail) minimizes the
+     * expected cost.
+     */
+    private double getRank(final int ordinal, final RuleCheck check) {
+        return getCost(check) / Math.max(0.001, 1.0 - getPassRate(ordinal, check));
+    }
+
+    private double getExpectedCost(final int ordinal, final List<RuleCheck> checks) {
+        double out = 0;
+        double reachRate = 1.0;
+        for (final RuleCheck check : checks) {
+            out += reachRate * getCost(check);
+            reachRate *= getPassRate(ordinal, check);
+        }
+        return out;
+    }
+
+    private double getPassRate(final int ordinal, final RuleCheck check) {
+        final int slot = getSlot(ordinal, check);
+        if (slot < 0) return PRIOR_PASS_RATE;
+        final long evaluated = this.evaluations.get(slot);
+        if (evaluated < MIN_SAMPLES) return PRIOR_PASS_RATE;
+        return (double) this.passes.get(slot) / evaluated;
+    }
+
+    private int getSlot(final int ordinal, RuleCheck check) {
+        if (check instanceof RuleCheck.CompiledCheck cc) check = cc.source(); // compiled copies count as the original
+        if (ordinal < 0 || ordinal >= this.checksByOrdinal.length) return -1;
+        final RuleCheck[] checks = this.checksByOrdinal[ordinal];
+        for (int i = 0; i < checks.length; i++) {
+            if (checks[i] == check) return this.offsets[ordinal] + i;
+        }
+        return -1;
+    }
+
+    private static boolean isReorderable(final RuleCheck check) {
+        return !(check instanceof RandomCheck);
+    }
+}
@@ -21,33 +21,69 @@ class Config {
 
         private final ImmutableList.Builder<Rule> rules = ImmutableList.builder();
         private Level logLevel = Level.INFO;
+        private boolean isStatsEnabled = false;
+        private int journalSampleRate = 0;
+        private int ruleCount = 0;
 
         void addRule(Rule rule) {
-            this.rules.add(requireNonNull(rule));
+            requireNonNull(rule);
+            this.rules.add(rule.withOrdinal(this.ruleCount++));
         }
         void setLogLevel(Level logLevel) {
             this.logLevel = logLevel;
         }
+        void setStatsEnabled(boolean isStatsEnabled) {
+            this.isStatsEnabled = isStatsEnabled;
+        }
+        void setJournalSampleRate(int journalSampleRate) {
+            if (journalSampleRate < 0) throw new IllegalArgumentException("journalSampleRate can't be negative: " + journalSampleRate);
+            this.journalSampleRate = journalSampleRate;
+        }
 
         Config build() {
-            return new Config(this.rules.build(), this.logLevel);
+            return new Config(this.rules.build(), this.logLevel, this.isStatsEnabled, this.journalSampleRate);
         }
 
     }
 
     private final List<Rule> rules;
     private final Level logLevel;
+    private final boolean isStatsEnabled;
+    private final int journalSampleRate;
 
-    Config(List<Rule> rules, Level logLevel) {
+    Config(List<Rule> rules, Level logLevel, boolean isStatsEnabled, int journalSampleRate) {
         this.rules = requireNonNull(rules);
         this.logLevel = requireNonNull(logLevel);
+        this.isStatsEnabled = isStatsEnabled;
+        this.journalSampleRate = journalSampleRate;
     }
 
     List<Rule> getRules() {
         return Collections.unmodifiableList(rules);
     }
 
+    /**
+     * @return a copy of this config with the given rules instead.
+     */
+    Config withRules(List<Rule> rules) {
+        return new Config(rules, this.logLevel, this.isStatsEnabled, this.journalSampleRate);
+    }
+
     public Level getLogLevel() {
         return this.logLevel;
     }
+
+    /**
+     * @return whether we should collect rule stats for /mobfilter stats.
+     */
+    boolean isStatsEnabled() {
+        return this.isStatsEnabled;
+    }
+
+    /**
+     * @return how many decisions per one written to the decision journal, or 0 if the journal is off.
+     */
+    int getJournalSampleRate() {
+        return this.journalSampleRate;
+    }
 }
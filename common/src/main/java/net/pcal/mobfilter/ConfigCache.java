@@ -0,0 +1,303 @@
+package net.pcal.mobfilter;
+
+import com.google.common.collect.ImmutableList;
+import net.minecraft.core.Direction;
+import net.minecraft.world.Difficulty;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.MobCategory;
+import net.pcal.mobfilter.RuleCheck.BiomeCheck;
+import net.pcal.mobfilter.RuleCheck.BlockIdCheck;
+import net.pcal.mobfilter.RuleCheck.BlockPosCheck;
+import net.pcal.mobfilter.RuleCheck.CategoryCheck;
+import net.pcal.mobfilter.RuleCheck.DifficultyCheck;
+import net.pcal.mobfilter.RuleCheck.DimensionCheck;
+import net.pcal.mobfilter.RuleCheck.EntityIdCheck;
+import net.pcal.mobfilter.RuleCheck.LightLevelCheck;
+import net.pcal.mobfilter.RuleCheck.MoonPhaseCheck;
+import net.pcal.mobfilter.RuleCheck.NearbyCountCheck;
+import net.pcal.mobfilter.RuleCheck.RandomCheck;
+import net.pcal.mobfilter.RuleCheck.SkylightLevelCheck;
+import net.pcal.mobfilter.RuleCheck.SpawnReasonCheck;
+import net.pcal.mobfilter.RuleCheck.TimeOfDayCheck;
+import net.pcal.mobfilter.RuleCheck.WeatherCheck;
+import net.pcal.mobfilter.RuleCheck.WeatherType;
+import net.pcal.mobfilter.RuleCheck.WorldNameCheck;
+import org.apache.logging.log4j.Level;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Binary form of a parsed Config, so that big configs don't have to be parsed again on every server start.
+ * The cache starts with the version of the mod that wrote it and a hash of the config files it was built
+ * from, and is only used by the same version and if the files still hash the same.  Bump FORMAT_VERSION
+ * whenever the format or the meaning of any check changes; the mod version is there in case someone forgets.
+ *
+ * Matchers are stored as the items they were created with and rebuilt on read.  Enums are stored by name so
+ * that a Minecraft update that reorders them can't silently change a rule.
+ */
+final class ConfigCache {
+
+    private static final int MAGIC = 0x4D464343; // 'MFCC'
+    private static final int FORMAT_VERSION = 5;
+    private static final String MOD_VERSION = readModVersion();
+    private static final int HASH_BUFFER_SIZE = 8192;
+
+    private static final byte DIMENSION = 1;
+    private static final byte BIOME = 2;
+    private static final byte SPAWN_REASON = 3;
+    private static final byte CATEGORY = 4;
+    private static final byte ENTITY_ID = 5;
+    private static final byte BLOCK_ID = 6;
+    private static final byte BLOCK_POS = 7;
+    private static final byte LIGHT_LEVEL = 8;
+    private static final byte SKYLIGHT_LEVEL = 9;
+    private static final byte MOON_PHASE = 10;
+    private static final byte WEATHER = 11;
+    private static final byte TIME_OF_DAY = 12;
+    private static final byte RANDOM = 13;
+    private static final byte DIFFICULTY = 14;
+    private static final byte WORLD_NAME = 15;
+    private static final byte NEARBY_COUNT = 16;
+
+    private ConfigCache() {
+    }
+
+    /**
+     * @return a hash of the given config file contents.  Pass null for a file that doesn't exist.
+     */
+    static byte[] hash(final byte[]... files) {
+        final MessageDigest digest = newDigest();
+        for (final byte[] file : files) {
+            updateLength(digest, file != null ? file.length : -1);
+            if (file != null) digest.update(file);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @return a hash of the given config files, the same as hash(byte[]...) would give for their contents.
+     * The files are streamed through the digest rather than read into memory.
+     * @throws IOException if one of the files can't be read.
+     */
+    static byte[] hash(final Path... files) throws IOException {
+        final MessageDigest digest = newDigest();
+        final byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        for (final Path file : files) {
+            try (final InputStream in = Files.newInputStream(file)) {
+                final long length = Files.size(file);
+                if (length > Integer.MAX_VALUE) throw new IOException("Config file is too big: " + file);
+                updateLength(digest, (int) length);
+                long read = 0;
+                for (int n; (n = in.read(buffer)) > 0; read += n) digest.update(buffer, 0, n);
+                if (read != length) throw new IOException("Config file changed while reading it: " + file);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @return the cached config, or null if the cache was built from different config files or by a
+     * different version of the cache format.
+     * @throws IOException if the cache can't be read or is corrupt.
+     */
+    static Config read(final InputStream rawIn, final byte[] hash) throws IOException {
+        return read(rawIn, hash, MOD_VERSION);
+    }
+
+    /**
+     * @param modVersion the mod version the cache has to have been written by.  For tests.
+     */
+    static Config read(final InputStream rawIn, final byte[] hash, final String modVersion) throws IOException {
+        final DataInputStream in = new DataInputStream(rawIn);
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+        if (!in.readUTF().equals(modVersion)) return null;
+        final byte[] cachedHash = new byte[in.readUnsignedByte()];
+        in.readFully(cachedHash);
+        if (!Arrays.equals(hash, cachedHash)) return null;
+        final Config.Builder builder = Config.builder();
+        builder.setLogLevel(Level.toLevel(in.readUTF(), Level.INFO));
+        builder.setStatsEnabled(in.readBoolean());
+        builder.setJournalSampleRate(in.readInt());
+        final int ruleCount = in.readInt();
+        for (int i = 0; i < ruleCount; i++) {
+            final String name = in.readUTF();
+            final Rule.RuleAction action = Rule.RuleAction.valueOf(in.readUTF());
+            final Throttle throttle = action == Rule.RuleAction.THROTTLE ?
+                    new Throttle(in.readDouble(), in.readInt(), Throttle.Scope.valueOf(in.readUTF())) : null;
+            final int checkCount = in.readUnsignedShort();
+            final ImmutableList.Builder<RuleCheck> checks = ImmutableList.builder();
+            for (int j = 0; j < checkCount; j++) checks.add(readCheck(in));
+            builder.addRule(new Rule(name, checks.build(), action, -1, throttle));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Write the config along with the hash of the files it was parsed from.
+     *
+     * @throws IllegalArgumentException if the config has a check we don't know how to write.
+     */
+    static void write(final OutputStream rawOut, final byte[] hash, final Config config) throws IOException {
+        write(rawOut, hash, config, MOD_VERSION);
+    }
+
+    /**
+     * @param modVersion the mod version to write the cache as.  For tests.
+     */
+    static void write(final OutputStream rawOut, final byte[] hash, final Config config, final String modVersion) throws IOException {
+        final DataOutputStream out = new DataOutputStream(rawOut);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(modVersion);
+        out.writeByte(hash.length);
+        out.write(hash);
+        out.writeUTF(config.getLogLevel().name());
+        out.writeBoolean(config.isStatsEnabled());
+        out.writeInt(config.getJournalSampleRate());
+        out.writeInt(config.getRules().size());
+        for (final Rule rule : config.getRules()) {
+            out.writeUTF(rule.name());
+            out.writeUTF(rule.action().name());
+            if (rule.throttle() != null) {
+                out.writeDouble(rule.throttle().getRate());
+                out.writeInt(rule.throttle().getBurst());
+                out.writeUTF(rule.throttle().getScope().name());
+            }
+            out.writeShort(rule.checks().size());
+            for (final RuleCheck check : rule.checks()) writeCheck(out, check);
+        }
+        out.flush();
+    }
+
+    // ===================================================================================
+    // Private
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+
+    private static void updateLength(final MessageDigest digest, final int length) {
+        digest.update(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+    }
+
+    /**
+     * @return the mod version that the build wrote into mod-version.txt, or "unknown" if it's missing.
+     */
+    private static String readModVersion() {
+        try (final InputStream in = ConfigCache.class.getResourceAsStream("mod-version.txt")) {
+            return in != null ? new String(in.readAllBytes(), StandardCharsets.UTF_8).trim() : "unknown";
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+
+    private static void writeCheck(final DataOutputStream out, final RuleCheck check) throws IOException {
+        switch (check) {
+            case DimensionCheck c -> writeIds(out, DIMENSION, c.dimensionMatcher());
+            case BiomeCheck c -> writeIds(out, BIOME, c.biomeMatcher());
+            case EntityIdCheck c -> writeIds(out, ENTITY_ID, c.entityMatcher());
+            case BlockIdCheck c -> writeIds(out, BLOCK_ID, c.blockMatcher());
+            case SpawnReasonCheck c -> writeItems(out, SPAWN_REASON, List.copyOf(c.reasons()), Enum::name);
+            case CategoryCheck c -> writeItems(out, CATEGORY, List.copyOf(c.categories()), Enum::name);
+            case MoonPhaseCheck c -> writeItems(out, MOON_PHASE, c.matcher().getItems(), String::valueOf);
+            case WeatherCheck c -> writeItems(out, WEATHER, c.matcher().getItems(), Enum::name);
+            case DifficultyCheck c -> writeItems(out, DIFFICULTY, c.matcher().getItems(), Enum::name);
+            case WorldNameCheck c -> writeItems(out, WORLD_NAME, c.worldNames().getItems(), Function.identity());
+            case BlockPosCheck c -> {
+                out.writeByte(BLOCK_POS);
+                out.writeUTF(c.axis().name());
+                out.writeInt(c.min());
+                out.writeInt(c.max());
+            }
+            case LightLevelCheck c -> {
+                out.writeByte(LIGHT_LEVEL);
+                out.writeInt(c.min());
+                out.writeInt(c.max());
+            }
+            case SkylightLevelCheck c -> {
+                out.writeByte(SKYLIGHT_LEVEL);
+                out.writeInt(c.min());
+                out.writeInt(c.max());
+            }
+            case TimeOfDayCheck c -> {
+                out.writeByte(TIME_OF_DAY);
+                out.writeLong(c.min());
+                out.writeLong(c.max());
+            }
+            case RandomCheck c -> {
+                out.writeByte(RANDOM);
+                out.writeDouble(c.odds());
+            }
+            case NearbyCountCheck c -> {
+                writeItems(out, NEARBY_COUNT, List.copyOf(c.categories()), Enum::name);
+                out.writeInt(c.chunkRadius());
+                out.writeInt(c.min());
+                out.writeInt(c.max());
+            }
+            default -> throw new IllegalArgumentException("Can't cache " + check.getClass().getSimpleName());
+        }
+    }
+
+    private static RuleCheck readCheck(final DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+        return switch (type) {
+            case DIMENSION -> new DimensionCheck(IdMatcher.of(readStrings(in)));
+            case BIOME -> new BiomeCheck(IdMatcher.of(readStrings(in)));
+            case ENTITY_ID -> new EntityIdCheck(IdMatcher.of(readStrings(in)));
+            case BLOCK_ID -> new BlockIdCheck(IdMatcher.of(readStrings(in)));
+            case SPAWN_REASON -> new SpawnReasonCheck(readEnumSet(in, EntitySpawnReason.class));
+            case CATEGORY -> new CategoryCheck(readEnumSet(in, MobCategory.class));
+            case MOON_PHASE -> new MoonPhaseCheck(Matcher.of(Arrays.stream(readStrings(in)).map(Integer::valueOf).toArray(Integer[]::new)));
+            case WEATHER -> new WeatherCheck(Matcher.of(Arrays.stream(readStrings(in)).map(WeatherType::valueOf).toArray(WeatherType[]::new)));
+            case DIFFICULTY -> new DifficultyCheck(Matcher.of(Arrays.stream(readStrings(in)).map(Difficulty::valueOf).toArray(Difficulty[]::new)));
+            case WORLD_NAME -> new WorldNameCheck(Matcher.of(readStrings(in)));
+            case BLOCK_POS -> new BlockPosCheck(Direction.Axis.valueOf(in.readUTF()), in.readInt(), in.readInt());
+            case LIGHT_LEVEL -> new LightLevelCheck(in.readInt(), in.readInt());
+            case SKYLIGHT_LEVEL -> new SkylightLevelCheck(in.readInt(), in.readInt());
+            case TIME_OF_DAY -> new TimeOfDayCheck(in.readLong(), in.readLong());
+            case RANDOM -> new RandomCheck(in.readDouble());
+            case NEARBY_COUNT -> new NearbyCountCheck(readEnumSet(in, MobCategory.class), in.readInt(), in.readInt(), in.readInt());
+            default -> throw new IOException("Unknown check type " + type + " in config cache");
+        };
+    }
+
+    private static void writeIds(final DataOutputStream out, final byte type, final IdMatcher matcher) throws IOException {
+        writeItems(out, type, matcher.getPatterns(), Function.identity());
+    }
+
+    private static <T> void writeItems(final DataOutputStream out, final byte type, final List<T> items,
+                                       final Function<T, String> toString) throws IOException {
+        out.writeByte(type);
+        out.writeInt(items.size());
+        for (final T item : items) out.writeUTF(toString.apply(item));
+    }
+
+    private static String[] readStrings(final DataInputStream in) throws IOException {
+        final String[] out = new String[in.readInt()];
+        for (int i = 0; i < out.length; i++) out[i] = in.readUTF();
+        return out;
+    }
+
+    private static <E extends Enum<E>> EnumSet<E> readEnumSet(final DataInputStream in, final Class<E> enumClass) throws IOException {
+        final EnumSet<E> out = EnumSet.noneOf(enumClass);
+        for (final String name : readStrings(in)) out.add(Enum.valueOf(enumClass, name));
+        return out;
+    }
+}
@@ -1,16 +1,47 @@
 package net.pcal.mobfilter;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.random.WeightedList;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.level.biome.MobSpawnSettings.SpawnerData;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.config.Configurator;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.util.Objects.requireNonNull;
+import static net.pcal.mobfilter.JournalReader.FLAG_STATIC;
+import static net.pcal.mobfilter.JournalReader.VERDICT_ALLOW;
+import static net.pcal.mobfilter.JournalReader.VERDICT_DISALLOW;
+import static net.pcal.mobfilter.JournalReader.VERDICT_VETO;
+
 
 /**
  * Singleton service that manages the mod configuration, including loading the files
@@ -38,10 +69,44 @@ public final class ConfigService {
 
     private static final String SIMPLE_FILENAME = "mobfilter.simple";
     private static final String JSON_FILENAME = "mobfilter.json5";
+    private static final String CACHE_FILENAME = "mobfilter.cache";
+    private static final Path JOURNAL_PATH = Path.of("logs", "mobfilter-journal.bin"); // next to the game's own logs
+    private static final long RELOAD_SETTLE_MILLIS = 500;
     private final Logger logger = LogManager.getLogger(ConfigService.class);
-    private Config config;
-    private Level logLevel = Level.INFO;
-    private String configError = null;
+    private final AtomicReference<LoadedConfig> loaded = new AtomicReference<>();
+    private volatile Level logLevel = Level.INFO;
+    private volatile String configError = null;
+    private volatile DecisionJournal journal = null; // null unless enabled in the config
+    private final ExecutorService reloadExecutor = Executors.newSingleThreadExecutor(r -> {
+        final Thread t = new Thread(r, "MobFilter config reload");
+        t.setDaemon(true);
+        return t;
+    });
+    private WatchService watchService; // guarded by this
+
+    /**
+     * Everything we build from the config files.  Published through a single volatile field, so a
+     * reload swaps the whole thing atomically and spawn evaluation never sees a partial config.
+     */
+    private static final class LoadedConfig {
+        private final Config config;
+        private final RuleIndex ruleIndex; // null if indexing failed
+        private final String error;
+        private final RuleChain allRules; // for when we don't have a RuleIndex
+        private final RuleStats stats; // null unless enabled in the config
+        private final CheckOrder checkOrder;
+        private final Map<ResourceKey<net.minecraft.world.level.Level>, LevelRules> levelRules = new HashMap<>(); // server thread only
+
+        private LoadedConfig(final Config config, final RuleIndex ruleIndex, final String error,
+                             final RuleStats stats, final CheckOrder checkOrder) {
+            this.config = requireNonNull(config);
+            this.ruleIndex = ruleIndex;
+            this.error = error;
+            this.allRules = RuleChain.build(config.getRules());
+            this.stats = stats;
+            this.checkOrder = requireNonNull(checkOrder);
+        }
+    }
 
     // ===================================================================================
     // Public methods
@@ -49,11 +114,30 @@ public final class ConfigService {
     /**
      * Called just as entities are being added to the world to determine whether they should
      * be allowed.
+     *
+     * @param serverLevel the level the spawn is happening in.  Pass null if not running on the
+     * server thread; the level-independent rules will be used.
      */
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
-    public boolean isSpawnAllowed(final SpawnAttempt att) {
-        if (this.config == null) return true;
-        final boolean allowSpawn = isSpawnAllowed(att, this.config.getRules());
+    public boolean isSpawnAllowed(final ServerLevel serverLevel, final SpawnAttempt att) {
+        final LoadedConfig lc = this.loaded.get();
+        if (lc == null) return true;
+        final RuleStats stats = lc.stats;
+        final boolean isSampled = stats != null && stats.shouldSample();
+        final long start = isSampled ? System.nanoTime() : 0;
+        final CheckOrder checkOrder = lc.checkOrder.shouldSample() ? lc.checkOrder : null;
+        final LevelRules lr = getLevelRules(lc, serverLevel);
+        final RuleIndex index = lr != null ? lr.getRuleIndex() : lc.ruleIndex;
+        final RuleChain rules = index != null ? index.getRules(att.getEntityType()) : lc.allRules;
+        final byte[] tickStates = lr != null ? lr.getTickStates(serverLevel) : null;
+        final Rule decidingRule = getDecidingRule(att, rules, tickStates, stats, checkOrder);
+        final boolean allowSpawn = isAllowedBy(decidingRule);
+        if (isSampled) stats.recordLatency(System.nanoTime() - start);
+        final DecisionJournal journal = this.journal;
+        if (journal != null && journal.shouldSample()) {
+            journal.record(att, decidingRule != null ? decidingRule.ordinal() : -1, allowSpawn ? VERDICT_ALLOW : VERDICT_DISALLOW, (byte) 0);
+        }
+        if (checkOrder != null && checkOrder.claimReorder()) this.reloadExecutor.execute(() -> reorderChecks(lc));
         if (this.logLevel.isLessSpecificThan(Level.DEBUG)) { // redundant but this gets called a lot
             if (allowSpawn) {
                 logger.debug(() -> "[MobFilter] ALLOW " + att.getSpawnReason() + " " + att.getEntityId() + " at [" + att.getBlockPos() + "]");
@@ -64,6 +148,119 @@ public final class ConfigService {
         return allowSpawn;
     }
 
+    /**
+     * Called before a SpawnAttempt is built to see whether the rules give a fixed answer for the given
+     * entity type and spawn reason.
+     *
+     * @return whether the spawn is allowed, or null if the rules need to be evaluated against a full
+     * SpawnAttempt.
+     */
+    public Boolean getStaticVerdict(final ServerLevel serverLevel, final EntityType<?> entityType, final EntitySpawnReason reason) {
+        final LoadedConfig lc = this.loaded.get();
+        if (lc == null) return Boolean.TRUE;
+        final RuleStats stats = lc.stats;
+        final boolean isSampled = stats != null && stats.shouldSample();
+        final long start = isSampled ? System.nanoTime() : 0;
+        final RuleIndex index = getRuleIndex(lc, serverLevel);
+        if (index == null) return null;
+        final byte verdict = index.getVerdict(entityType, reason);
+        if (verdict == RuleIndex.VERDICT_DYNAMIC) return null;
+        final boolean allowSpawn = verdict == RuleIndex.VERDICT_ALLOW;
+        if (stats != null) {
+            stats.recordStaticDecision(index.getVerdictRule(entityType, reason), allowSpawn);
+            if (isSampled) stats.recordLatency(System.nanoTime() - start);
+        }
+        final DecisionJournal journal = this.journal;
+        if (journal != null && journal.shouldSample()) {
+            recordStatic(journal, serverLevel, entityType, reason, index.getVerdictRule(entityType, reason), allowSpawn ? VERDICT_ALLOW : VERDICT_DISALLOW);
+        }
+        if (this.logLevel.isLessSpecificThan(Level.DEBUG)) {
+            logger.debug(() -> "[MobFilter] " + (allowSpawn ? "ALLOW " : "DISALLOW ") + reason + " " + entityType + " (static)");
+        }
+        return allowSpawn;
+    }
+
+    /**
+     * Like getStaticVerdict(), but for callers that are going to ask again when the mob is added.  Stats are
+     * only recorded if the spawn is vetoed, since otherwise the spawn hasn't really been decided yet.
+     *
+     * @return whether the spawn is vetoed, or null if the rules need to be evaluated against a full
+     * SpawnAttempt.
+     */
+    public Boolean getStaticVeto(final ServerLevel serverLevel, final EntityType<?> entityType, final EntitySpawnReason reason) {
+        final LoadedConfig lc = this.loaded.get();
+        if (lc == null) return Boolean.FALSE;
+        final RuleIndex index = getRuleIndex(lc, serverLevel);
+        if (index == null) return null;
+        final byte verdict = index.getVerdict(entityType, reason);
+        if (verdict == RuleIndex.VERDICT_DYNAMIC) return null;
+        if (verdict == RuleIndex.VERDICT_ALLOW) return Boolean.FALSE;
+        if (lc.stats != null) lc.stats.recordStaticDecision(index.getVerdictRule(entityType, reason), false);
+        final DecisionJournal journal = this.journal;
+        if (journal != null && journal.shouldSample()) {
+            recordStatic(journal, serverLevel, entityType, reason, index.getVerdictRule(entityType, reason), VERDICT_VETO);
+        }
+        if (this.logLevel.isLessSpecificThan(Level.DEBUG)) {
+            logger.debug(() -> "[MobFilter] VETO " + reason + " " + entityType + " (static)");
+        }
+        return Boolean.TRUE;
+    }
+
+    /**
+     * Called before the game constructs a mob to see whether the spawn can be vetoed before any
+     * work is done.  Returns true only if a rule disallows the spawn; if we reach a rule whose
+     * answer could change by the time the mob is actually added (e.g., a RandomCheck), we return
+     * false and leave the decision to isSpawnAllowed().
+     *
+     * A spawn that isn't vetoed is evaluated again from the first rule when the mob is added, since the mob
+     * doesn't always end up at the position we were asked about.  The repeat is cheap: the spawn attempt's
+     * world lookups come from the EnvironmentCache the second time.  EarlyVetoTest checks that a veto is
+     * always a decision the full evaluation agrees with.
+     */
+    public boolean isSpawnVetoed(final ServerLevel serverLevel, final SpawnAttempt att) {
+        final LoadedConfig lc = this.loaded.get();
+        if (lc == null) return false;
+        final Rule decidingRule = getEarlyDecidingRule(att, getRules(lc, serverLevel, att));
+        if (decidingRule == null || decidingRule.action() == Rule.RuleAction.ALLOW_SPAWN) return false;
+        if (lc.stats != null) lc.stats.recordDecision(decidingRule.ordinal(), false);
+        final DecisionJournal journal = this.journal;
+        if (journal != null && journal.shouldSample()) journal.record(att, decidingRule.ordinal(), VERDICT_VETO, (byte) 0);
+        if (this.logLevel.isLessSpecificThan(Level.DEBUG)) {
+            logger.debug(() -> "[MobFilter] VETO " + att.getSpawnReason() + " " + att.getEntityId() + " at [" + att.getBlockPos() + "]");
+        }
+        return true;
+    }
+
+    /**
+     * Called when NaturalSpawner looks up which mobs can spawn at a position.  Must only be called on the
+     * server thread.
+     *
+     * @return the given spawners without the ones the rules never allow to spawn naturally in the level.
+     */
+    public WeightedList<SpawnerData> getNaturalSpawners(final ServerLevel serverLevel, final WeightedList<SpawnerData> spawners) {
+        final LoadedConfig lc = this.loaded.get();
+        if (lc == null) return spawners;
+        final RuleIndex index = getRuleIndex(lc, serverLevel);
+        return index != null ? index.getNaturalSpawners(spawners) : spawners;
+    }
+
+    /**
+     * @return the stats for the active config, or null if stats aren't enabled.
+     */
+    RuleStats getStats() {
+        final LoadedConfig lc = this.loaded.get();
+        return lc != null ? lc.stats : null;
+    }
+
+    /**
+     * Stop the decision journal, if it's running, and flush it to disk.  Called on server stop.
+     */
+    public synchronized void stopJournal() {
+        if (this.journal == null) return;
+        this.journal.close();
+        this.journal = null;
+    }
+
     /**
      * Write a default configuration file if none exists.
      */
@@ -119,82 +316,457 @@ public final class ConfigService {
     }
 
     /**
-     * Re/loads mobfilter.json5 and initializes a new FilterRuleList.
+     * Loads the config files and makes them the active configuration.  Called on server start.
      */
     public void loadConfig(final Path configDirPath) {
+        setLogLevel(Level.INFO);
+        ensureConfigFilesExists(configDirPath);
+        publish(readConfig(configDirPath));
+    }
+
+    /**
+     * Loads and compiles the config files on a background thread, then swaps them in.  If the new
+     * config has errors, the current one stays in effect.
+     *
+     * @return a future that completes with the error message, or null if the reload succeeded.
+     */
+    public CompletableFuture<String> reloadConfig(final Path configDirPath) {
+        return CompletableFuture.supplyAsync(() -> {
+            final LoadedConfig lc = readConfig(configDirPath);
+            if (lc.error != null) {
+                logger.error("[MobFilter] Not reloading because of configuration errors; previous configuration is still active");
+                return lc.error;
+            }
+            publish(lc);
+            return null;
+        }, this.reloadExecutor);
+    }
+
+    /**
+     * Start watching the config directory and reload whenever one of our files changes.
+     */
+    public synchronized void startWatching(final Path configDirPath) {
+        stopWatching();
+        try {
+            final WatchService ws = configDirPath.getFileSystem().newWatchService();
+            configDirPath.register(ws, ENTRY_CREATE, ENTRY_MODIFY);
+            final Thread watcher = new Thread(() -> watchConfigFiles(ws, configDirPath), "MobFilter config watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+            this.watchService = ws;
+        } catch (IOException e) {
+            logger.catching(Level.WARN, e);
+            logger.warn(() -> "[MobFilter] Unable to watch " + configDirPath + " for changes; use '/mobfilter reload' instead");
+        }
+    }
+
+    /**
+     * Stop watching the config directory.
+     */
+    public synchronized void stopWatching() {
+        if (this.watchService == null) return;
+        try {
+            this.watchService.close(); // the watcher thread exits when this happens
+        } catch (IOException e) {
+            logger.catching(Level.WARN, e);
+        }
+        this.watchService = null;
+    }
+
+    // ===================================================================================
+    // Private
 
+    /**
+     * Parse and compile the config files.  Doesn't change any of our state, so it's safe to call from any thread.
+     */
+    private LoadedConfig readConfig(final Path configDirPath) {
         final File jsonConfigFile = configDirPath.resolve(JSON_FILENAME).toFile();
         final File simpleConfigFile = configDirPath.resolve(SIMPLE_FILENAME).toFile();
+        final Path cacheFile = configDirPath.resolve(CACHE_FILENAME);
+        String error = null;
+        this.logger.info(()->"[MobFilter] Loading configuration");
         //
-        // Clean the slate
+        // Use the cached rules if the files haven't changed since we last parsed them.  The files are hashed
+        // separately from parsing them so that neither has to hold a whole file in memory.
         //
-        this.configError = null;
-        this.config = null;
-        setLogLevel(Level.INFO);
-        ensureConfigFilesExists(configDirPath);
-        final Config.Builder configBuilder = Config.builder();
-        this.logger.info(()->"[MobFilter] Loading configuration");
-
+        final byte[] hash = hashConfigFiles(jsonConfigFile, simpleConfigFile);
+        Config loadedConfig = hash != null ? readConfigCache(cacheFile, hash) : null;
+        if (loadedConfig == null) {
+            final Config.Builder configBuilder = Config.builder();
+            //
+            // Load json config file
+            //
+            try {
+                this.logger.debug(()->"[MobFilter] Loading config from " + jsonConfigFile.getAbsolutePath());
+                try (final InputStream in = new FileInputStream(jsonConfigFile)) {
+                    JsonConfigLoader.loadRules(in, configBuilder);
+                }
+            } catch (Exception e) {
+                error = e.getMessage();
+                logger.catching(Level.ERROR, e);
+                logger.error(()->"[MobFilter] Failed to load " + jsonConfigFile.getAbsolutePath());
+            }
+            //
+            // Load simple config file
+            //
+            try {
+                this.logger.debug(()->"[MobFilter] Loading config from " + simpleConfigFile.getAbsolutePath());
+                try (final InputStream in = new FileInputStream(simpleConfigFile)) {
+                    SimpleConfigLoader.loadRules(in, configBuilder);
+                }
+            } catch (Exception e) {
+                error = e.getMessage();
+                logger.catching(Level.ERROR, e);
+                logger.error(()->"[MobFilter] Failed to load config from " + simpleConfigFile.getAbsolutePath());
+            }
+            loadedConfig = configBuilder.build();
+            // don't cache what we parsed under the old hash if a file was edited in the meantime
+            if (error == null && hash != null && Arrays.equals(hash, hashConfigFiles(jsonConfigFile, simpleConfigFile))) {
+                writeConfigCache(cacheFile, hash, loadedConfig);
+            }
+        }
         //
-        // Load json config file
+        // Compile the rules
         //
+        final CheckOrder checkOrder = new CheckOrder(loadedConfig.getRules());
+        final List<Rule> reordered = checkOrder.reorder(loadedConfig.getRules());
+        final Config config = reordered == null ? loadedConfig : loadedConfig.withRules(reordered);
+        RuleIndex ruleIndex = null;
         try {
-            this.logger.debug(()->"[MobFilter] Loading config from " + jsonConfigFile.getAbsolutePath());
-            try (final InputStream in = new FileInputStream(jsonConfigFile)) {
-                JsonConfigLoader.loadRules(in, configBuilder);
-            }
+            ruleIndex = RuleIndex.build(config.getRules());
         } catch (Exception e) {
-            this.configError = e.getMessage();
             logger.catching(Level.ERROR, e);
-            logger.error(()->"[MobFilter] Failed to load " + jsonConfigFile.getAbsolutePath());
+            logger.error("[MobFilter] Failed to index rules, falling back to unindexed evaluation");
         }
-        //
-        // Load simple config file
-        //
+        final RuleStats stats = config.isStatsEnabled() ? new RuleStats(config.getRules()) : null;
+        return new LoadedConfig(config, ruleIndex, error, stats, checkOrder);
+    }
+
+    /**
+     * @return a hash of the contents of the config files, or null if they can't be read.  In that case we
+     * skip the cache and let parsing report the problem.
+     */
+    private byte[] hashConfigFiles(final File jsonConfigFile, final File simpleConfigFile) {
+        try {
+            return ConfigCache.hash(jsonConfigFile.toPath(), simpleConfigFile.toPath());
+        } catch (Exception e) {
+            logger.debug(() -> "[MobFilter] Not using config cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the config from the cache file, or null if there isn't a usable one.
+     */
+    private Config readConfigCache(final Path cacheFile, final byte[] hash) {
+        if (!Files.exists(cacheFile)) return null;
+        try (final InputStream in = new BufferedInputStream(Files.newInputStream(cacheFile))) {
+            final Config config = ConfigCache.read(in, hash);
+            if (config == null) {
+                logger.debug(() -> "[MobFilter] Config cache is out of date");
+            } else {
+                logger.info(() -> "[MobFilter] Loaded " + config.getRules().size() + " rule(s) from " + cacheFile);
+            }
+            return config;
+        } catch (Exception e) {
+            logger.catching(Level.WARN, e);
+            logger.warn(() -> "[MobFilter] Ignoring unreadable config cache " + cacheFile);
+            return null;
+        }
+    }
+
+    /**
+     * Save the parsed config so the next start can skip parsing.  Failure just means a slower start next time.
+     */
+    private void writeConfigCache(final Path cacheFile, final byte[] hash, final Config config) {
+        final Path tempFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
         try {
-            this.logger.debug(()->"[MobFilter] Loading config from " + simpleConfigFile.getAbsolutePath());
-            try (final InputStream in = new FileInputStream(simpleConfigFile)) {
-                SimpleConfigLoader.loadRules(in, configBuilder);
+            try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+                ConfigCache.write(out, hash, config);
             }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (Exception e) {
-            this.configError = e.getMessage();
-            logger.catching(Level.ERROR, e);
-            logger.error(()->"[MobFilter] Failed to load config from " + simpleConfigFile.getAbsolutePath());
+            logger.debug(() -> "[MobFilter] Not caching config: " + e.getMessage());
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException ignored) {
+            }
         }
-        //
-        // Assemble Config object
-        //
-        this.config = configBuilder.build();
+    }
+
+    /**
+     * Put the checks in each rule in a better order based on what we've seen so far, and swap in the result
+     * if anything changed.  Runs on the reload thread, but configs are also published from other threads (e.g.,
+     * on server start), so the swap only happens if lc is still the active config.  It doesn't go through
+     * publish(), since nothing but the order of the checks has changed.
+     */
+    private void reorderChecks(final LoadedConfig lc) {
+        try {
+            if (this.loaded.get() != lc) return; // reloaded in the meantime
+            final List<Rule> reordered = lc.checkOrder.reorder(lc.config.getRules());
+            if (reordered == null) return;
+            final Config config = lc.config.withRules(reordered);
+            final RuleIndex ruleIndex = lc.ruleIndex != null ? RuleIndex.build(reordered) : null;
+            if (!this.loaded.compareAndSet(lc, new LoadedConfig(config, ruleIndex, lc.error, lc.stats, lc.checkOrder))) return;
+            if (this.logLevel.isLessSpecificThan(Level.DEBUG)) {
+                for (final Rule rule : reordered) logger.debug(() -> "[MobFilter] Reordered checks: " + rule);
+            }
+        } catch (Exception e) {
+            logger.catching(Level.WARN, e);
+            logger.warn("[MobFilter] Failed to reorder rule checks");
+        } finally {
+            lc.checkOrder.reorderDone();
+        }
+    }
+
+    /**
+     * Make the given config the active one.
+     */
+    private void publish(final LoadedConfig lc) {
+        this.loaded.set(lc);
+        this.configError = lc.error;
+        final Config config = lc.config;
         if (config.getLogLevel() != null) setLogLevel(config.getLogLevel());
+        updateJournal(config.getJournalSampleRate());
         logger.info(()->"[MobFilter] Log level is " + logger.getLevel());
-        if (this.config.getRules().isEmpty()) {
+        if (config.getRules().isEmpty()) {
             this.logger.warn("[MobFilter] No rules configured");
         } else {
-            this.logger.info(()->"[MobFilter] " + this.config.getRules().size() + " rule(s) loaded:");
-            for (final Rule rule : this.config.getRules()) {
+            this.logger.info(()->"[MobFilter] " + config.getRules().size() + " rule(s) loaded:");
+            for (final Rule rule : config.getRules()) {
                 this.logger.info(()->"[MobFilter] - " + rule.toString());
             }
         }
     }
 
-    // ===================================================================================
-    // Private
+    /**
+     * Start, stop or adjust the decision journal to match the config.  A reload that keeps the journal on keeps
+     * writing to the same file.
+     */
+    private synchronized void updateJournal(final int sampleRate) {
+        if (sampleRate == 0) {
+            stopJournal();
+        } else if (this.journal != null) {
+            this.journal.setSampleRate(sampleRate);
+        } else {
+            try {
+                this.journal = DecisionJournal.open(JOURNAL_PATH, sampleRate);
+                logger.info(() -> "[MobFilter] Writing 1 in " + sampleRate + " spawn decisions to " + JOURNAL_PATH.toAbsolutePath());
+            } catch (IOException e) {
+                logger.catching(Level.WARN, e);
+                logger.warn(() -> "[MobFilter] Unable to open decision journal " + JOURNAL_PATH.toAbsolutePath());
+            }
+        }
+    }
+
+    private static void recordStatic(final DecisionJournal journal, final ServerLevel serverLevel, final EntityType<?> entityType,
+                                     final EntitySpawnReason reason, final int ruleOrdinal, final byte verdict) {
+        if (serverLevel != null) {
+            journal.record(serverLevel.getGameTime(), serverLevel.dimension().identifier(), entityType, reason, ruleOrdinal, verdict, FLAG_STATIC);
+        } else {
+            journal.record(JournalReader.UNKNOWN, null, entityType, reason, ruleOrdinal, verdict, FLAG_STATIC);
+        }
+    }
+
+    /**
+     * Body of the config watcher thread.
+     */
+    private void watchConfigFiles(final WatchService ws, final Path configDirPath) {
+        try {
+            while (true) {
+                final WatchKey key = ws.take();
+                boolean isChanged = false;
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path changed) {
+                        final String name = changed.getFileName().toString();
+                        if (name.equals(JSON_FILENAME) || name.equals(SIMPLE_FILENAME)) isChanged = true;
+                    }
+                }
+                key.reset();
+                if (!isChanged) continue;
+                // Editors often write a file in several steps.  Let things settle before we read it.
+                Thread.sleep(RELOAD_SETTLE_MILLIS);
+                for (WatchKey pending = ws.poll(); pending != null; pending = ws.poll()) {
+                    pending.pollEvents();
+                    pending.reset();
+                }
+                logger.info("[MobFilter] Configuration changed, reloading");
+                reloadConfig(configDirPath);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.debug("[MobFilter] Config watcher stopped");
+        }
+    }
+
+    /**
+     * @return the rules that need to be evaluated for the given spawn attempt.
+     */
+    private RuleChain getRules(final LoadedConfig lc, final ServerLevel serverLevel, final SpawnAttempt att) {
+        final RuleIndex index = getRuleIndex(lc, serverLevel);
+        return index != null ? index.getRules(att.getEntityType()) : lc.allRules;
+    }
+
+    /**
+     * @return the compiled rules for the given level, building them if this is the first spawn in the level
+     * or its difficulty has changed.  If the level is null, returns the level-independent rules.  Must only
+     * be called with a non-null level on the server thread.
+     */
+    private RuleIndex getRuleIndex(final LoadedConfig lc, final ServerLevel serverLevel) {
+        final LevelRules lr = getLevelRules(lc, serverLevel);
+        return lr != null ? lr.getRuleIndex() : lc.ruleIndex;
+    }
+
+    /**
+     * @return the rules for the given level, building them if this is the first spawn in the level or its
+     * difficulty has changed, or null if the level is null or they couldn't be built.  Must only be called
+     * with a non-null level on the server thread.
+     */
+    private LevelRules getLevelRules(final LoadedConfig lc, final ServerLevel serverLevel) {
+        if (serverLevel == null || lc.ruleIndex == null) return null;
+        LevelRules lr = lc.levelRules.get(serverLevel.dimension());
+        if (lr == null || lr.isStale(serverLevel)) {
+            try {
+                lr = LevelRules.build(lc.config.getRules(), serverLevel);
+            } catch (Exception e) {
+                logger.catching(Level.ERROR, e);
+                logger.error("[MobFilter] Failed to compile rules for " + serverLevel.dimension().identifier());
+                return null;
+            }
+            lc.levelRules.put(serverLevel.dimension(), lr);
+            logger.debug(() -> "[MobFilter] Compiled rules for " + serverLevel.dimension().identifier());
+        }
+        return lr;
+    }
+
+    /**
+     * @return whether the spawn attempt should be allowed according the rules in the given chain.
+     */
+    static boolean isSpawnAllowed(final SpawnAttempt att, final RuleChain rules) {
+        return isAllowedBy(getDecidingRule(att, rules, null, null, null));
+    }
 
     /**
-     * @return whether the spawn attempt should be allowed according the rules in the given list.
+     * @return whether the spawn attempt can be vetoed before the mob is constructed according to the rules in
+     * the given chain.
      */
-    private static boolean isSpawnAllowed(final SpawnAttempt att, final List<Rule> rules) {
-        att.getLogger().trace(() -> "[MobFilter] IS_SPAWN_ALLOWED " + att);
-        for (final Rule rule : rules) {
-            att.getLogger().trace(() -> "[MobFilter]   RULE '" + rule.getName() + "'");
-            Boolean isSpawnAllowed = rule.isSpawnAllowed(att);
+    static boolean isSpawnVetoed(final SpawnAttempt att, final RuleChain rules) {
+        final Rule decidingRule = getEarlyDecidingRule(att, rules);
+        return decidingRule != null && decidingRule.action() != Rule.RuleAction.ALLOW_SPAWN;
+    }
+
+    /**
+     * @return whether the spawn attempt should be allowed according to the given index, decided the way
+     * isSpawnAllowed() would without a level.  Used to replay captured spawns.
+     */
+    static boolean isSpawnAllowed(final SpawnAttempt att, final RuleIndex index) {
+        final byte verdict = index.getVerdict(att.getEntityType(), att.getSpawnReason());
+        if (verdict != RuleIndex.VERDICT_DYNAMIC) return verdict == RuleIndex.VERDICT_ALLOW;
+        return isSpawnAllowed(att, index.getRules(att.getEntityType()));
+    }
+
+    /**
+     * @return whether a spawn is allowed if the given rule decided it.  Null means no rule matched.
+     */
+    private static boolean isAllowedBy(final Rule decidingRule) {
+        return decidingRule == null || decidingRule.action() == Rule.RuleAction.ALLOW_SPAWN;
+    }
+
+    /**
+     * @param tickStates the LevelRules tick states for this tick, or null to evaluate every check.
+     * @param stats where to record what the rules did, or null if stats are off.
+     * @param checkOrder where to sample check selectivity, or null if this decision isn't being sampled.
+     * @return the rule that decided the spawn attempt, or null if no rule matched and it should be allowed.  This
+     * is the hot path, so it's written to not allocate anything unless trace logging is on.
+     *
+     * THROTTLE rules that match and have a token to spare are remembered, and take their tokens only if the spawn
+     * ends up being allowed.
+     */
+    private static Rule getDecidingRule(final SpawnAttempt att, final RuleChain rules, final byte[] tickStates,
+                                        final RuleStats stats, final CheckOrder checkOrder) {
+        final Logger attLogger = att.getLogger();
+        final boolean isTrace = attLogger.isTraceEnabled();
+        if (isTrace) attLogger.trace(() -> "[MobFilter] IS_SPAWN_ALLOWED " + att);
+        final int[] unboxed = rules.getUnboxedPositions();
+        final int[] boxed = rules.getBoxedAt(att.getBlockPos());
+        long matchedThrottles = 0; // bits are RuleChain throttle indexes
+        int u = 0, b = 0;
+        while (true) { // merge the two sorted lists of positions so we still go in rule order
+            final int nextUnboxed = u < unboxed.length ? unboxed[u] : RuleChain.END;
+            final int nextBoxed = b < boxed.length ? rules.getBoxedPosition(boxed[b]) : RuleChain.END;
+            final int position;
+            if (nextUnboxed < nextBoxed) {
+                position = nextUnboxed;
+                u++;
+            } else if (nextBoxed != RuleChain.END) {
+                position = nextBoxed;
+                b++;
+            } else {
+                break;
+            }
+            final Rule rule = rules.get(position);
+            if (isTrace) attLogger.trace(() -> "[MobFilter]   RULE '" + rule.getName() + "'");
+            if (stats != null) stats.recordEvaluation(rule.ordinal());
+            final byte tickState = tickStates != null ? tickStates[rule.ordinal()] : LevelRules.TICK_EVALUATE;
+            if (tickState == LevelRules.TICK_DEAD) continue;
+            final Rule effective = tickState == LevelRules.TICK_FOLDED ? rules.getTickFolded(position) : rule;
+            if (checkOrder != null) checkOrder.sample(effective, att); // only the checks we're actually going to run
+            final Boolean isSpawnAllowed;
+            if (effective.throttle() == null) {
+                isSpawnAllowed = effective.isSpawnAllowed(att);
+            } else if (!effective.isMatch(att)) {
+                isSpawnAllowed = null;
+            } else {
+                final int throttleIndex = rules.getThrottleIndex(position);
+                if (throttleIndex < 0) { // too many to keep track of, so just take it now
+                    isSpawnAllowed = effective.throttle().tryAcquire(att) ? null : Boolean.FALSE;
+                } else if (effective.throttle().hasToken(att)) {
+                    matchedThrottles |= 1L << throttleIndex;
+                    isSpawnAllowed = null;
+                } else {
+                    isSpawnAllowed = Boolean.FALSE;
+                }
+            }
             if (isSpawnAllowed != null) {
-                att.getLogger().trace(() -> "[MobFilter]   SpawnAllowed: " + isSpawnAllowed);
-                return isSpawnAllowed;
+                if (isTrace) attLogger.trace(() -> "[MobFilter]   SpawnAllowed: " + isSpawnAllowed);
+                if (stats != null) stats.recordDecision(rule.ordinal(), isSpawnAllowed);
+                if (isSpawnAllowed && matchedThrottles != 0) takeThrottleTokens(att, rules, matchedThrottles);
+                return rule;
             }
         }
-        att.getLogger().trace(() -> "[MobFilter]   RETURN true (no rules matched)");
-        return true;
+        if (isTrace) attLogger.trace("[MobFilter]   RETURN true (no rules matched)");
+        if (stats != null) stats.recordDecision(-1, true);
+        if (matchedThrottles != 0) takeThrottleTokens(att, rules, matchedThrottles);
+        return null;
+    }
+
+    /**
+     * Take a token from each of the given THROTTLE rules for a spawn that's been allowed.  Another thread might
+     * have taken the last one since we checked, in which case the spawn goes ahead anyway.
+     */
+    private static void takeThrottleTokens(final SpawnAttempt att, final RuleChain rules, long throttleIndexes) {
+        while (throttleIndexes != 0) {
+            final int throttleIndex = Long.numberOfTrailingZeros(throttleIndexes);
+            throttleIndexes &= throttleIndexes - 1;
+            rules.get(rules.getThrottlePosition(throttleIndex)).throttle().tryAcquire(att);
+        }
+    }
+
+    /**
+     * @return the first rule in the chain that matches the spawn attempt, or null if none does or a
+     * non-deterministic rule is reached first.
+     */
+    private static Rule getEarlyDecidingRule(final SpawnAttempt att, final RuleChain rules) {
+        if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] IS_SPAWN_VETOED " + att);
+        final List<Rule> ruleList = rules.getRules();
+        final int end = Math.min(ruleList.size(), rules.getFirstNondeterministicPosition());
+        for (int i = 0; i < end; i++) { // no iterator, this is the hot path
+            final Rule rule = ruleList.get(i);
+            if (rule.isSpawnAllowed(att) != null) return rule;
+        }
+        if (end < ruleList.size() && att.getLogger().isTraceEnabled()) {
+            att.getLogger().trace(() -> "[MobFilter]   DEFER (rule '" + ruleList.get(end).getName() + "' is not deterministic)");
+        }
+        return null;
     }
 
     /**
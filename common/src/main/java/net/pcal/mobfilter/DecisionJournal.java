@@ -0,0 +1,321 @@
+package net.pcal.mobfilter;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.Identifier;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.EntityType;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+import static java.util.Objects.requireNonNull;
+import static net.pcal.mobfilter.JournalReader.FORMAT_VERSION;
+import static net.pcal.mobfilter.JournalReader.HEADER_DROPPED;
+import static net.pcal.mobfilter.JournalReader.HEADER_SIZE;
+import static net.pcal.mobfilter.JournalReader.HEADER_START_MILLIS;
+import static net.pcal.mobfilter.JournalReader.HEADER_WRITTEN;
+import static net.pcal.mobfilter.JournalReader.KIND_DECISION;
+import static net.pcal.mobfilter.JournalReader.KIND_NAME;
+import static net.pcal.mobfilter.JournalReader.MAGIC;
+import static net.pcal.mobfilter.JournalReader.NAME_CHARS;
+import static net.pcal.mobfilter.JournalReader.RECORD_SIZE;
+import static net.pcal.mobfilter.JournalReader.TABLE_ENTITY_TYPE;
+import static net.pcal.mobfilter.JournalReader.TABLE_LEVEL;
+import static net.pcal.mobfilter.JournalReader.TABLE_SPAWN_REASON;
+import static net.pcal.mobfilter.JournalReader.UNKNOWN;
+import static net.pcal.mobfilter.JournalReader.UNKNOWN_POS;
+import static net.pcal.mobfilter.JournalReader.packPos;
+
+/**
+ * Records spawn decisions to a binary file for diagnosing rules on a busy server, where TRACE logging would be
+ * far too slow.  Only created when the config sets journalSampleRate; otherwise ConfigService holds a null.
+ *
+ * Deciding threads (the server thread and worldgen threads) put fixed-width records into a bounded lock-free
+ * ring, and never block: if the ring is full, the decision is dropped and counted.  A background thread drains
+ * the ring into a memory-mapped file, which is itself a ring of FILE_RECORDS records, so the file has a fixed
+ * size and always holds the most recent decisions.  It also writes the names the records refer to.  See
+ * JournalReader for the file format and for decoding it.
+ *
+ * The ring is the bounded MPSC queue from Dmitry Vyukov: each slot has a sequence number that tells producers
+ * when it's free and the consumer when it's been filled.
+ */
+final class DecisionJournal implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger(DecisionJournal.class);
+
+    private static final int RING_SLOTS = 1 << 16; // must be a power of two
+    private static final int RING_MASK = RING_SLOTS - 1;
+    private static final int LONGS_PER_SLOT = 4;
+    static final int FILE_RECORDS = 1 << 20; // 32MB
+    private static final long IDLE_NANOS = 10_000_000;
+    private static final EntitySpawnReason[] REASONS = EntitySpawnReason.values();
+
+    // Shared
+    private final long[] slots = new long[RING_SLOTS * LONGS_PER_SLOT];
+    private final AtomicLongArray sequences = new AtomicLongArray(RING_SLOTS);
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final Map<Identifier, Integer> levelIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> levelNames = new ConcurrentHashMap<>();
+    private final AtomicInteger nextLevelId = new AtomicInteger();
+    private volatile int sampleRate;
+    private volatile boolean isClosed = false;
+
+    // Drain thread only
+    private final IntFunction<String> entityTypeNames;
+    private final FileChannel channel;
+    private final MappedByteBuffer file;
+    private final Thread drainThread;
+    private final IntOpenHashSet[] named = {new IntOpenHashSet(), new IntOpenHashSet(), new IntOpenHashSet()};
+    private long head = 0;
+    private long written = 0;
+
+    /**
+     * Create the journal file and start writing to it.  An existing journal is first moved aside to a file
+     * with '.old' appended to its name, replacing any older one, if it can be.
+     *
+     * @param sampleRate record one in this many decisions.
+     */
+    static DecisionJournal open(final Path path, final int sampleRate) throws IOException {
+        return new DecisionJournal(path, sampleRate, id -> {
+            final EntityType<?> type = BuiltInRegistries.ENTITY_TYPE.byId(id);
+            return type != null ? BuiltInRegistries.ENTITY_TYPE.getKey(type).toString() : null;
+        });
+    }
+
+    /**
+     * @param entityTypeNames gives the name of an entity type from its registry id.
+     */
+    DecisionJournal(final Path path, final int sampleRate, final IntFunction<String> entityTypeNames) throws IOException {
+        setSampleRate(sampleRate);
+        this.entityTypeNames = requireNonNull(entityTypeNames);
+        for (int i = 0; i < RING_SLOTS; i++) this.sequences.set(i, i);
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        if (Files.exists(path)) {
+            try {
+                Files.move(path, path.resolveSibling(path.getFileName() + ".old"), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                // e.g., on Windows while an earlier journal in this process is still mapped; just replace it
+            }
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.file = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) FILE_RECORDS * RECORD_SIZE);
+        this.file.order(ByteOrder.LITTLE_ENDIAN);
+        this.file.putInt(0, MAGIC);
+        this.file.putInt(4, FORMAT_VERSION);
+        this.file.putInt(8, RECORD_SIZE);
+        this.file.putInt(12, FILE_RECORDS);
+        this.file.putLong(HEADER_START_MILLIS, System.currentTimeMillis());
+        this.drainThread = new Thread(this::drain, "MobFilter journal");
+        this.drainThread.setDaemon(true);
+        this.drainThread.start();
+    }
+
+    void setSampleRate(final int sampleRate) {
+        if (sampleRate < 1) throw new IllegalArgumentException("Journal sample rate must be at least 1: " + sampleRate);
+        this.sampleRate = sampleRate;
+    }
+
+    // ===================================================================================
+    // Recording
+
+    /**
+     * @return whether the caller should record the decision it's making.
+     */
+    boolean shouldSample() {
+        final int rate = this.sampleRate;
+        return rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0;
+    }
+
+    void record(final SpawnAttempt att, final int ruleOrdinal, final byte verdict, final byte flags) {
+        final Long gameTime = att.getGameTime();
+        final BlockPos pos = att.getBlockPos();
+        record(gameTime != null ? gameTime : UNKNOWN, getLevelId(att.getDimensionId()), att.getEntityType(),
+                att.getSpawnReason(), pos != null ? packPos(pos.getX(), pos.getY(), pos.getZ()) : UNKNOWN_POS,
+                ruleOrdinal, verdict, flags);
+    }
+
+    /**
+     * @param dimensionId the level's dimension, or null if unknown.
+     */
+    void record(final long gameTime, final Identifier dimensionId, final EntityType<?> entityType,
+                final EntitySpawnReason reason, final int ruleOrdinal, final byte verdict, final byte flags) {
+        record(gameTime, getLevelId(dimensionId), entityType, reason, UNKNOWN_POS, ruleOrdinal, verdict, flags);
+    }
+
+    // ===================================================================================
+    // Closing
+
+    /**
+     * Write out whatever is still in the ring and close the file.
+     */
+    @Override
+    public void close() {
+        this.isClosed = true;
+        LockSupport.unpark(this.drainThread);
+        try {
+            this.drainThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final long dropped = this.dropped.sum();
+        if (dropped > 0) LOGGER.info(() -> "[MobFilter] Decision journal dropped " + dropped + " decision(s) because it couldn't keep up");
+    }
+
+    // ===================================================================================
+    // Private - producers
+
+    private int getLevelId(final Identifier dimensionId) {
+        if (dimensionId == null) return UNKNOWN;
+        final Integer id = this.levelIds.get(dimensionId);
+        return id != null ? id : this.levelIds.computeIfAbsent(dimensionId, k -> {
+            final int newId = this.nextLevelId.getAndIncrement();
+            this.levelNames.put(newId, k.toString());
+            return newId;
+        });
+    }
+
+    private void record(final long gameTime, final int levelId, final EntityType<?> entityType,
+                        final EntitySpawnReason reason, final long pos, final int ruleOrdinal,
+                        final byte verdict, final byte flags) {
+        if (this.isClosed) return;
+        long claimed;
+        while (true) {
+            claimed = this.tail.get();
+            final long sequence = this.sequences.get((int) (claimed & RING_MASK));
+            if (sequence == claimed) {
+                if (this.tail.compareAndSet(claimed, claimed + 1)) break;
+            } else if (sequence < claimed) {
+                this.dropped.increment(); // full
+                return;
+            }
+        }
+        final int entityTypeId = entityType != null ? BuiltInRegistries.ENTITY_TYPE.getId(entityType) : UNKNOWN;
+        final int i = (int) (claimed & RING_MASK) * LONGS_PER_SLOT;
+        this.slots[i] = (verdict & 0xFFL) | (flags & 0xFFL) << 8 | (reason != null ? reason.ordinal() : 0xFFL) << 16 | (levelId & 0xFFFFFFFFL) << 32;
+        this.slots[i + 1] = (entityTypeId & 0xFFFFFFFFL) | (long) ruleOrdinal << 32;
+        this.slots[i + 2] = gameTime;
+        this.slots[i + 3] = pos;
+        this.sequences.set((int) (claimed & RING_MASK), claimed + 1); // publishes the slot to the drain thread
+    }
+
+    // ===================================================================================
+    // Private - drain thread
+
+    private void drain() {
+        try {
+            while (true) {
+                final boolean isClosing = this.isClosed; // read before draining so we don't miss the last records
+                int drained = 0;
+                while (drainOne()) drained++;
+                if (drained > 0) {
+                    this.file.putLong(HEADER_WRITTEN, this.written);
+                    this.file.putLong(HEADER_DROPPED, this.dropped.sum());
+                }
+                if (isClosing) break;
+                if (drained == 0) LockSupport.parkNanos(IDLE_NANOS);
+            }
+            this.file.putLong(HEADER_DROPPED, this.dropped.sum());
+            this.file.force();
+        } catch (Exception e) {
+            LOGGER.catching(Level.WARN, e);
+            LOGGER.warn("[MobFilter] Decision journal stopped");
+            this.isClosed = true;
+        } finally {
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                LOGGER.catching(Level.WARN, e);
+            }
+        }
+    }
+
+    /**
+     * Move one decision from the ring to the file.
+     *
+     * @return false if the ring is empty.
+     */
+    private boolean drainOne() {
+        final int slot = (int) (this.head & RING_MASK);
+        if (this.sequences.get(slot) != this.head + 1) return false;
+        final int i = slot * LONGS_PER_SLOT;
+        final long a = this.slots[i], b = this.slots[i + 1], gameTime = this.slots[i + 2], pos = this.slots[i + 3];
+        this.sequences.set(slot, this.head + RING_SLOTS); // free for the producer's next lap
+        this.head++;
+
+        final int levelId = (int) (a >>> 32);
+        final int reason = (int) (a >>> 16) & 0xFF;
+        final int entityTypeId = (int) b;
+        if (levelId != UNKNOWN) writeName(TABLE_LEVEL, levelId, this.levelNames.get(levelId));
+        if (entityTypeId != UNKNOWN) writeName(TABLE_ENTITY_TYPE, entityTypeId, null);
+        if (reason != 0xFF) writeName(TABLE_SPAWN_REASON, reason, REASONS[reason].name());
+        final int at = nextRecord();
+        this.file.put(at, KIND_DECISION);
+        this.file.put(at + 1, (byte) a);
+        this.file.put(at + 2, (byte) (a >>> 8));
+        this.file.put(at + 3, (byte) reason);
+        this.file.putInt(at + 4, levelId);
+        this.file.putInt(at + 8, entityTypeId);
+        this.file.putInt(at + 12, (int) (b >>> 32));
+        this.file.putLong(at + 16, gameTime);
+        this.file.putLong(at + 24, pos);
+        return true;
+    }
+
+    /**
+     * Write the name for an id if we haven't yet in this pass around the file.
+     */
+    private void writeName(final byte table, final int id, String name) {
+        if (!this.named[table].add(id)) return;
+        if (name == null && table == TABLE_ENTITY_TYPE) name = this.entityTypeNames.apply(id);
+        if (name == null) return;
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        final int parts = Math.min(255, Math.max(1, (bytes.length + NAME_CHARS - 1) / NAME_CHARS));
+        for (int part = 0; part < parts; part++) {
+            final int at = nextRecord();
+            this.file.put(at, KIND_NAME);
+            this.file.put(at + 1, table);
+            this.file.put(at + 2, (byte) part);
+            this.file.put(at + 3, (byte) parts);
+            this.file.putInt(at + 4, id);
+            for (int c = 0; c < NAME_CHARS; c++) {
+                final int from = part * NAME_CHARS + c;
+                this.file.put(at + 8 + c, from < bytes.length ? bytes[from] : 0);
+            }
+        }
+    }
+
+    /**
+     * @return the file offset of the next record to write.
+     */
+    private int nextRecord() {
+        final int index = (int) (this.written % FILE_RECORDS);
+        if (index == 0 && this.written > 0) {
+            for (final IntOpenHashSet set : this.named) set.clear(); // names from the last pass will be overwritten
+        }
+        this.written++;
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,178 @@
+package net.pcal.mobfilter;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.LightLayer;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.Block;
+import net.pcal.mobfilter.RuleCheck.WeatherType;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Remembers the world lookups made for spawn attempts during the current tick, so spawns at the same position
+ * (e.g., the early veto and then addFreshEntity for the same mob, or a pack spawning around one spot) don't
+ * repeat them.  Everything is keyed by packed block position; biomes can't be shared across a quart or section
+ * because the game fuzzes biome lookups between neighboring quarts.
+ *
+ * The day and game times are kept boxed, so that handing them out as Longs doesn't allocate every time.
+ *
+ * Everything else is forgotten when the game time or the level changes.  Each map is also cleared if it reaches
+ * MAX_ENTRIES, which only happens with a lot of spawning in one tick.  The level is only held weakly, and
+ * MixinService calls clear() when the server stops, so a cache that's no longer used doesn't keep an unloaded
+ * world alive.
+ *
+ * Not thread-safe; MixinService keeps one per thread.
+ */
+final class EnvironmentCache {
+
+    static final int MAX_ENTRIES = 4096;
+    private static final int UNSET = -1;
+
+    private final Long2ObjectOpenHashMap<Holder<Biome>> biomes = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectOpenHashMap<Block> blocks = new Long2ObjectOpenHashMap<>();
+    private final Long2IntOpenHashMap rawBrightness = new Long2IntOpenHashMap();
+    private final Long2IntOpenHashMap skyBrightness = new Long2IntOpenHashMap();
+    private final Long2ObjectOpenHashMap<WeatherType> weatherTypes = new Long2ObjectOpenHashMap<>();
+    private WeakReference<Object> level;
+    private long gameTime;
+    private Long boxedDayTime;
+    private Long boxedGameTime;
+
+    EnvironmentCache() {
+        this.rawBrightness.defaultReturnValue(UNSET);
+        this.skyBrightness.defaultReturnValue(UNSET);
+    }
+
+    Holder<Biome> getBiome(final ServerLevel level, final BlockPos pos) {
+        validate(level);
+        final long key = pos.asLong();
+        Holder<Biome> out = this.biomes.get(key);
+        if (out == null) {
+            out = level.getBiome(pos);
+            //noinspection ConstantValue
+            if (out != null) put(this.biomes, key, out);
+        }
+        return out;
+    }
+
+    /**
+     * @return the block at the given position (not the one below it).
+     */
+    Block getBlock(final ServerLevel level, final BlockPos pos) {
+        validate(level);
+        final long key = pos.asLong();
+        Block out = this.blocks.get(key);
+        if (out == null) {
+            out = level.getBlockState(pos).getBlock();
+            put(this.blocks, key, out);
+        }
+        return out;
+    }
+
+    int getMaxLocalRawBrightness(final ServerLevel level, final BlockPos pos) {
+        validate(level);
+        final long key = pos.asLong();
+        int out = this.rawBrightness.get(key);
+        if (out == UNSET) {
+            out = level.getMaxLocalRawBrightness(pos);
+            if (this.rawBrightness.size() >= MAX_ENTRIES) this.rawBrightness.clear();
+            this.rawBrightness.put(key, out);
+        }
+        return out;
+    }
+
+    int getSkyBrightness(final ServerLevel level, final BlockPos pos) {
+        validate(level);
+        final long key = pos.asLong();
+        int out = this.skyBrightness.get(key);
+        if (out == UNSET) {
+            out = level.getBrightness(LightLayer.SKY, pos);
+            if (this.skyBrightness.size() >= MAX_ENTRIES) this.skyBrightness.clear();
+            this.skyBrightness.put(key, out);
+        }
+        return out;
+    }
+
+    /**
+     * @return the weather at the attempt's position, working it out from the attempt if we don't know it yet.
+     */
+    WeatherType getWeatherType(final ServerLevel level, final SpawnAttempt att) {
+        return getWeatherType(level, level.getGameTime(), att);
+    }
+
+    /**
+     * Same as getWeatherType(ServerLevel, SpawnAttempt), with the level's game time already read.  The level is
+     * only used to tell levels apart, so tests can pass any object.
+     */
+    WeatherType getWeatherType(final Object level, final long gameTime, final SpawnAttempt att) {
+        validate(level, gameTime);
+        final long key = att.getBlockPos().asLong();
+        WeatherType out = this.weatherTypes.get(key);
+        if (out == null) {
+            out = RuleCheck.WeatherCheck.computeWeatherType(att);
+            if (out != null) put(this.weatherTypes, key, out);
+        }
+        return out;
+    }
+
+    Long getDayTime(final ServerLevel level) {
+        return boxDayTime(level.getOverworldClockTime());
+    }
+
+    Long getGameTime(final ServerLevel level) {
+        final long gameTime = level.getGameTime();
+        final Long out = this.boxedGameTime;
+        if (out != null && out == gameTime) return out;
+        return this.boxedGameTime = gameTime;
+    }
+
+    /**
+     * @return the given day time boxed, reusing the last box if the time hasn't changed.
+     */
+    Long boxDayTime(final long dayTime) {
+        final Long out = this.boxedDayTime;
+        if (out != null && out == dayTime) return out;
+        return this.boxedDayTime = dayTime;
+    }
+
+    /**
+     * Forget everything, including the level.
+     */
+    void clear() {
+        clearMaps();
+        this.level = null;
+        this.boxedDayTime = null;
+        this.boxedGameTime = null;
+    }
+
+    // ===================================================================================
+    // Private
+
+    private void validate(final ServerLevel level) {
+        validate(level, level.getGameTime());
+    }
+
+    private void validate(final Object level, final long gameTime) {
+        if (this.level != null && level == this.level.get() && gameTime == this.gameTime) return;
+        clearMaps();
+        if (this.level == null || level != this.level.get()) this.level = new WeakReference<>(level);
+        this.gameTime = gameTime;
+    }
+
+    private void clearMaps() {
+        this.biomes.clear();
+        this.blocks.clear();
+        this.rawBrightness.clear();
+        this.skyBrightness.clear();
+        this.weatherTypes.clear();
+    }
+
+    private static <T> void put(final Long2ObjectOpenHashMap<T> map, final long key, final T value) {
+        if (map.size() >= MAX_ENTRIES) map.clear();
+        map.put(key, value);
+    }
+}
@@ -1,48 +1,110 @@
 package net.pcal.mobfilter;
 
+import net.minecraft.core.Registry;
 import net.minecraft.resources.Identifier;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Determines whether a given minecraft id matches a configured list.  Supports
  * - exact string matching (e.g., "minecraft:cobblestone")
  * - anything-in-a-namespace matching (e.g., "minecraft:*")
- * and nothing else.
+ * - globs, where '*' matches any run of characters other than ':' and '?' matches one (e.g., "minecraft:*_zombie")
+ * - regular expressions between slashes, matched against the whole id (e.g., "/mymod:boss_[0-9]+/")
+ *
+ * All of the globs and regexes in a matcher are combined into a single Pattern, so an id is only scanned
+ * once no matter how many of them there are.  For entity, block and biome checks, the rules are compiled
+ * down to registry bitsets with toBitSet() anyway, so the pattern only runs when the rules are compiled.
  */
 interface IdMatcher {
 
     boolean isMatch(final Identifier id);
 
+    /**
+     * @return the patterns this matcher was created with.
+     */
+    List<String> getPatterns();
+
+    /**
+     * @return the raw ids of every entry in the registry whose id matches.  Only call this once the registry
+     * is frozen, since entries registered later won't be in the set.
+     */
+    default <T> BitSet toBitSet(final Registry<T> registry) {
+        final BitSet out = new BitSet(registry.size());
+        for (final T entry : registry) {
+            final Identifier id = registry.getKey(entry);
+            if (id != null && isMatch(id)) out.set(registry.getId(entry));
+        }
+        return out;
+    }
+
     static IdMatcher of(final String[] patterns) {
 
+        final List<String> trimmed = new ArrayList<>();
         final List<String> namespaces = new ArrayList<>();
         final List<Identifier> ids = new ArrayList<>();
+        final List<String> regexes = new ArrayList<>();
 
         for (String pattern : patterns) {
             pattern = pattern.trim();
-            if (pattern.endsWith(":*")) {
+            trimmed.add(pattern);
+            if (pattern.length() > 1 && pattern.startsWith("/") && pattern.endsWith("/")) {
+                final String regex = pattern.substring(1, pattern.length() - 1);
+                try {
+                    Pattern.compile(regex);
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("Invalid id regex: " + pattern, e);
+                }
+                regexes.add(regex);
+            } else if (!pattern.contains(":")) {
+                throw new IllegalArgumentException("Invalid id pattern: " + pattern);
+            } else if (pattern.endsWith(":*") && pattern.indexOf('*') == pattern.length() - 1) {
                 namespaces.add(pattern.substring(0, pattern.length() - 2));
-            } else if (pattern.contains(":")) {
-                ids.add(Identifier.parse(pattern));
+            } else if (pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0) {
+                regexes.add(globToRegex(pattern));
             } else {
-                throw new IllegalArgumentException("Invalid id pattern: " + pattern);
+                ids.add(Identifier.parse(pattern));
             }
         }
         final Matcher<String> namespaceMatchers = Matcher.of(namespaces.toArray(new String[]{}));
         final Matcher<Identifier> idMatchers = Matcher.of(ids.toArray(new Identifier[]{}));
+        final Pattern combined = regexes.isEmpty() ? null : Pattern.compile("(?:" + String.join(")|(?:", regexes) + ")");
 
         return new IdMatcher() {
             @Override
             public boolean isMatch(final Identifier id) {
-                return namespaceMatchers.isMatch(id.getNamespace()) || idMatchers.isMatch(id);
+                return namespaceMatchers.isMatch(id.getNamespace()) || idMatchers.isMatch(id) ||
+                        (combined != null && combined.matcher(id.toString()).matches());
+            }
+
+            @Override
+            public List<String> getPatterns() {
+                return trimmed;
             }
 
             @Override
             public String toString() {
-                return idMatchers.toString() + namespaceMatchers.toString();
+                return idMatchers.toString() + namespaceMatchers.toString() + (combined != null ? "/" + combined + "/" : "");
             }
         };
     }
+
+    private static String globToRegex(final String glob) {
+        final StringBuilder out = new StringBuilder();
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literalStart) out.append(Pattern.quote(glob.substring(literalStart, i)));
+                out.append(c == '*' ? "[^:]*" : "[^:]");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < glob.length()) out.append(Pattern.quote(glob.substring(literalStart)));
+        return out.toString();
+    }
 }
@@ -0,0 +1,155 @@
+package net.pcal.mobfilter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes a decision journal written by DecisionJournal into one line of text per decision.  Runs outside the
+ * game, so it must not touch any Minecraft classes:
+ *
+ *   java -cp mobfilter.jar net.pcal.mobfilter.JournalReader logs/mobfilter-journal.bin
+ *
+ * The file is a HEADER_SIZE byte header followed by a ring of RECORD_SIZE byte records, all little-endian.
+ * The header holds MAGIC, FORMAT_VERSION, the record size, the ring capacity, the number of records written
+ * so far (which may be more than the capacity, in which case the oldest ones were overwritten), the time the
+ * journal was started, and how many decisions were dropped because the writer couldn't keep up.
+ *
+ * Decision records hold ids rather than names.  The names are given by NAME records, which the writer emits
+ * the first time it uses an id in each pass around the ring, split into NAME_CHARS byte parts.  Ids are only
+ * meaningful within one journal file.
+ */
+public final class JournalReader {
+
+    static final int MAGIC = 0x4D46444A; // 'MFDJ'
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 32;
+    static final int HEADER_WRITTEN = 16;
+    static final int HEADER_START_MILLIS = 24;
+    static final int HEADER_DROPPED = 32;
+
+    static final byte KIND_DECISION = 1;
+    static final byte KIND_NAME = 2;
+
+    static final byte VERDICT_DISALLOW = 0;
+    static final byte VERDICT_ALLOW = 1;
+    static final byte VERDICT_VETO = 2;
+    static final byte FLAG_STATIC = 1;
+
+    static final byte TABLE_LEVEL = 0;
+    static final byte TABLE_ENTITY_TYPE = 1;
+    static final byte TABLE_SPAWN_REASON = 2;
+    static final int NAME_CHARS = RECORD_SIZE - 8;
+
+    static final int UNKNOWN = -1;
+    static final long UNKNOWN_POS = Long.MIN_VALUE;
+
+    private static final String[] VERDICTS = {"DISALLOW", "ALLOW", "VETO"};
+    private static final String[] TABLES = {"level", "entity", "reason"};
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: java -cp mobfilter.jar " + JournalReader.class.getName() + " <journal file>");
+            System.exit(1);
+        }
+        read(Path.of(args[0]), System.out);
+    }
+
+    /**
+     * Decode the given journal, oldest decision first.
+     *
+     * @throws IOException if the file can't be read or isn't a journal.
+     */
+    static void read(final Path file, final PrintStream out) throws IOException {
+        final ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC) throw new IOException("Not a decision journal: " + file);
+        if (buf.getInt(4) != FORMAT_VERSION) throw new IOException("Unsupported journal version " + buf.getInt(4) + ": " + file);
+        if (buf.getInt(8) != RECORD_SIZE) throw new IOException("Unexpected record size " + buf.getInt(8) + ": " + file);
+        final int capacity = buf.getInt(12);
+        final long written = buf.getLong(HEADER_WRITTEN);
+        out.println("# started " + Instant.ofEpochMilli(buf.getLong(HEADER_START_MILLIS)) + ", " + written +
+                " records written, " + buf.getLong(HEADER_DROPPED) + " decisions dropped");
+        if (buf.limit() < HEADER_SIZE + (long) capacity * RECORD_SIZE) throw new IOException("Truncated journal: " + file);
+        final long first = Math.max(0, written - capacity);
+        //
+        // Names can be anywhere in the ring, so collect them all first
+        //
+        final Map<Long, String[]> nameParts = new HashMap<>();
+        for (long i = first; i < written; i++) {
+            final int at = HEADER_SIZE + (int) (i % capacity) * RECORD_SIZE;
+            if (buf.get(at) != KIND_NAME) continue;
+            final String[] parts = nameParts.computeIfAbsent(getNameKey(buf.get(at + 1), buf.getInt(at + 4)), k -> new String[buf.get(at + 3) & 0xFF]);
+            final int part = buf.get(at + 2) & 0xFF;
+            if (part < parts.length) {
+                int length = 0;
+                while (length < NAME_CHARS && buf.get(at + 8 + length) != 0) length++;
+                final byte[] bytes = new byte[length];
+                buf.get(at + 8, bytes);
+                parts[part] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        final Map<Long, String> names = new HashMap<>();
+        nameParts.forEach((key, parts) -> {
+            for (final String part : parts) if (part == null) return; // lost some of it to the ring
+            names.put(key, String.join("", parts));
+        });
+        //
+        // Then print the decisions in order
+        //
+        for (long i = first; i < written; i++) {
+            final int at = HEADER_SIZE + (int) (i % capacity) * RECORD_SIZE;
+            if (buf.get(at) != KIND_DECISION) continue;
+            final int verdict = buf.get(at + 1);
+            final int flags = buf.get(at + 2);
+            final long pos = buf.getLong(at + 24);
+            out.println("tick=" + buf.getLong(at + 16) +
+                    " level=" + getName(names, TABLE_LEVEL, buf.getInt(at + 4)) +
+                    " entity=" + getName(names, TABLE_ENTITY_TYPE, buf.getInt(at + 8)) +
+                    " reason=" + getName(names, TABLE_SPAWN_REASON, buf.get(at + 3)) +
+                    " pos=" + (pos == UNKNOWN_POS ? "?" : "[" + getX(pos) + ", " + getY(pos) + ", " + getZ(pos) + "]") +
+                    " rule=" + (buf.getInt(at + 12) == UNKNOWN ? "none" : buf.getInt(at + 12)) +
+                    " " + (verdict >= 0 && verdict < VERDICTS.length ? VERDICTS[verdict] : "?" + verdict) +
+                    ((flags & FLAG_STATIC) != 0 ? " (static)" : ""));
+        }
+    }
+
+    // ===================================================================================
+    // Positions.  Same layout as BlockPos.asLong(), but ours so the file doesn't depend on it.
+
+    static long packPos(final int x, final int y, final int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    static int getX(final long pos) {
+        return (int) (pos >> 38);
+    }
+
+    static int getY(final long pos) {
+        return (int) (pos << 52 >> 52);
+    }
+
+    static int getZ(final long pos) {
+        return (int) (pos << 26 >> 38);
+    }
+
+    // ===================================================================================
+    // Private
+
+    private static long getNameKey(final byte table, final int id) {
+        return ((long) table << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    private static String getName(final Map<Long, String> names, final byte table, final int id) {
+        if (id == UNKNOWN) return "?";
+        final String name = names.get(getNameKey(table, id));
+        return name != null ? name : TABLES[table] + "#" + id;
+    }
+}
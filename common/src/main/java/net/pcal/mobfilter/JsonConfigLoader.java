@@ -11,6 +11,7 @@ import com.google.gson.TypeAdapter;
 import com.google.gson.TypeAdapterFactory;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 import net.minecraft.core.Direction;
 import net.minecraft.world.Difficulty;
@@ -26,6 +27,7 @@ import net.pcal.mobfilter.RuleCheck.DimensionCheck;
 import net.pcal.mobfilter.RuleCheck.EntityIdCheck;
 import net.pcal.mobfilter.RuleCheck.LightLevelCheck;
 import net.pcal.mobfilter.RuleCheck.MoonPhaseCheck;
+import net.pcal.mobfilter.RuleCheck.NearbyCountCheck;
 import net.pcal.mobfilter.RuleCheck.RandomCheck;
 import net.pcal.mobfilter.RuleCheck.SkylightLevelCheck;
 import net.pcal.mobfilter.RuleCheck.SpawnReasonCheck;
@@ -35,8 +37,12 @@ import net.pcal.mobfilter.RuleCheck.WeatherType;
 import net.pcal.mobfilter.RuleCheck.WorldNameCheck;
 import org.apache.logging.log4j.Level;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
@@ -49,142 +55,243 @@ import java.util.EnumSet;
 class JsonConfigLoader {
 
     /**
-     * Build the runtime rule structures from the configuration.  Returns null if the configuration contains
-     * no rules.
+     * Build the runtime rule structures from the configuration.  This streams through the file, binding and
+     * building one rule at a time, so that a config with a huge number of rules doesn't have to be held in
+     * memory as both json and JsonRules.
      */
     static void loadRules(final InputStream in, final Config.Builder configBuilder) throws IOException {
-        final JsonConfiguration fromConfig = loadFromJson(in);
-        if (fromConfig != null && fromConfig.rules != null) {
-            loadRules(fromConfig ,configBuilder);
+        final Gson gson = createGson();
+        final JsonReader reader = new TypoCatchingJsonReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        try {
+            reader.peek();
+        } catch (EOFException e) {
+            return; // empty document, e.g., everything is commented out
         }
+        if (reader.peek() == JsonToken.NULL) return;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            switch (name) {
+                case "rules" -> loadRules(reader, gson, configBuilder);
+                case "logLevel" -> setLogLevel(gson.fromJson(reader, String.class), configBuilder);
+                case "stats" -> setStatsEnabled(gson.fromJson(reader, Boolean.class), configBuilder);
+                case "journalSampleRate" -> setJournalSampleRate(gson.fromJson(reader, Integer.class), configBuilder);
+                default -> reader.skipValue(); // fails with a message pointing at the typo
+            }
+        }
+        reader.endObject();
     }
 
     static void loadRules(final JsonConfiguration fromConfig, final Config.Builder configBuilder) {
+        if (fromConfig.rules != null) {
+            int i = -1;
+            for (final JsonRule configRule : fromConfig.rules) {
+                i++;
+                if (configRule == null) continue; // common with json trailing comma in list
+                configBuilder.addRule(buildRule(configRule, i));
+            }
+        }
+        setLogLevel(fromConfig.logLevel, configBuilder);
+        setStatsEnabled(fromConfig.stats, configBuilder);
+        setJournalSampleRate(fromConfig.journalSampleRate, configBuilder);
+    }
+
+    /**
+     * Bind the whole file to a JsonConfiguration.
+     */
+    static JsonConfiguration loadFromJson(final InputStream in) throws IOException {
+        final String rawJson = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        return createGson().fromJson(new TypoCatchingJsonReader(new StringReader(rawJson)), TypeToken.get(JsonConfiguration.class));
+    }
+
+    private static void loadRules(final JsonReader reader, final Gson gson, final Config.Builder configBuilder) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        reader.beginArray();
         int i = -1;
-        for (final JsonRule configRule : fromConfig.rules) {
+        while (reader.hasNext()) {
             i++;
+            final JsonRule configRule = gson.fromJson(reader, TypeToken.get(JsonRule.class));
             if (configRule == null) continue; // common with json trailing comma in list
-            final ImmutableList.Builder<RuleCheck> checks = ImmutableList.builder();
-            final String ruleName = configRule.name != null ? configRule.name : "rule" + i;
-            if (configRule.what == null) {
-                throw new IllegalArgumentException("'what' must be specified on " + ruleName);
-            }
-            final JsonWhen when = configRule.when;
-            if (when == null) {
-                throw new IllegalArgumentException("'when' must be specified on " + ruleName);
-            }
-            if (when.spawnReason != null && when.spawnReason.length > 0) {
-                final EnumSet<EntitySpawnReason> enumSet = EnumSet.copyOf(Arrays.asList(when.spawnReason));
-                checks.add(new SpawnReasonCheck(enumSet));
-            } else if (when.spawnType != null && when.spawnType.length > 0) {
-                // legacy support for old name 'spawnType'
-                final EnumSet<EntitySpawnReason> enumSet = EnumSet.copyOf(Arrays.asList(when.spawnType));
-                checks.add(new SpawnReasonCheck(enumSet));
-            }
-            if (when.category != null && when.category.length > 0) {
-                final EnumSet<MobCategory> enumSet = EnumSet.copyOf(Arrays.asList(when.category));
-                checks.add(new CategoryCheck(enumSet));
-            } else if (when.spawnGroup != null && when.spawnGroup.length > 0) {
-                // legacy support for old name 'spawnGroup'
-                final EnumSet<MobCategory> enumSet = EnumSet.copyOf(Arrays.asList(when.spawnGroup));
-                checks.add(new CategoryCheck(enumSet));
-            }
-            if (when.entityId != null) {
-                checks.add(new EntityIdCheck(IdMatcher.of(when.entityId)));
-            }
-            if (when.worldName != null) {
-                checks.add(new WorldNameCheck(Matcher.of(when.worldName)));
-            }
-            if (when.dimensionId != null) {
-                checks.add(new DimensionCheck(IdMatcher.of(when.dimensionId)));
-            }
-            if (when.biomeId != null) {
-                checks.add(new BiomeCheck(IdMatcher.of(when.biomeId)));
-            }
-            if (when.blockId != null) {
-                checks.add(new BlockIdCheck(IdMatcher.of(when.blockId)));
-            }
-            if (when.blockX != null) {
-                int[] range = parseRange(when.blockX);
-                checks.add(new BlockPosCheck(Direction.Axis.X, range[0], range[1]));
-            }
-            if (when.blockY != null) {
-                int[] range = parseRange(when.blockY);
-                checks.add(new BlockPosCheck(Direction.Axis.Y, range[0], range[1]));
-            }
-            if (when.blockZ != null) {
-                int[] range = parseRange(when.blockZ);
-                checks.add(new BlockPosCheck(Direction.Axis.Z, range[0], range[1]));
-            }
-            if (when.timeOfDay != null) {
-                int[] range = parseRange(when.timeOfDay);
-                checks.add(new TimeOfDayCheck(range[0], range[1]));
-            }
-            if (when.lightLevel != null) {
-                int[] range = parseRange(when.lightLevel);
-                checks.add(new LightLevelCheck(range[0], range[1]));
-            }
-            if (when.skylightLevel != null) {
-                int[] range = parseRange(when.skylightLevel);
-                checks.add(new SkylightLevelCheck(range[0], range[1]));
-            }
-            if (when.moonPhase != null) {
-                checks.add(new MoonPhaseCheck(Matcher.of(when.moonPhase)));
-            }
-            if (when.weather != null) {
-                checks.add(new WeatherCheck(Matcher.of(when.weather)));
-            }
-            if (when.difficulty != null) {
-                checks.add(new DifficultyCheck(Matcher.of(when.difficulty)));
+            configBuilder.addRule(buildRule(configRule, i));
+        }
+        reader.endArray();
+    }
+
+    private static net.pcal.mobfilter.Rule buildRule(final JsonRule configRule, final int i) {
+        final ImmutableList.Builder<RuleCheck> checks = ImmutableList.builder();
+        final String ruleName = configRule.name != null ? configRule.name : "rule" + i;
+        if (configRule.what == null) {
+            throw new IllegalArgumentException("'what' must be specified on " + ruleName);
+        }
+        final JsonWhen when = configRule.when;
+        if (when == null) {
+            throw new IllegalArgumentException("'when' must be specified on " + ruleName);
+        }
+        if (when.spawnReason != null && when.spawnReason.length > 0) {
+            final EnumSet<EntitySpawnReason> enumSet = EnumSet.copyOf(Arrays.asList(when.spawnReason));
+            checks.add(new SpawnReasonCheck(enumSet));
+        } else if (when.spawnType != null && when.spawnType.length > 0) {
+            // legacy support for old name 'spawnType'
+            final EnumSet<EntitySpawnReason> enumSet = EnumSet.copyOf(Arrays.asList(when.spawnType));
+            checks.add(new SpawnReasonCheck(enumSet));
+        }
+        if (when.category != null && when.category.length > 0) {
+            final EnumSet<MobCategory> enumSet = EnumSet.copyOf(Arrays.asList(when.category));
+            checks.add(new CategoryCheck(enumSet));
+        } else if (when.spawnGroup != null && when.spawnGroup.length > 0) {
+            // legacy support for old name 'spawnGroup'
+            final EnumSet<MobCategory> enumSet = EnumSet.copyOf(Arrays.asList(when.spawnGroup));
+            checks.add(new CategoryCheck(enumSet));
+        }
+        if (when.entityId != null) {
+            checks.add(new EntityIdCheck(IdMatcher.of(when.entityId)));
+        }
+        if (when.worldName != null) {
+            checks.add(new WorldNameCheck(Matcher.of(when.worldName)));
+        }
+        if (when.dimensionId != null) {
+            checks.add(new DimensionCheck(IdMatcher.of(when.dimensionId)));
+        }
+        if (when.biomeId != null) {
+            checks.add(new BiomeCheck(IdMatcher.of(when.biomeId)));
+        }
+        if (when.blockId != null) {
+            checks.add(new BlockIdCheck(IdMatcher.of(when.blockId)));
+        }
+        if (when.blockX != null) {
+            int[] range = parseRange(when.blockX);
+            checks.add(new BlockPosCheck(Direction.Axis.X, range[0], range[1]));
+        }
+        if (when.blockY != null) {
+            int[] range = parseRange(when.blockY);
+            checks.add(new BlockPosCheck(Direction.Axis.Y, range[0], range[1]));
+        }
+        if (when.blockZ != null) {
+            int[] range = parseRange(when.blockZ);
+            checks.add(new BlockPosCheck(Direction.Axis.Z, range[0], range[1]));
+        }
+        if (when.timeOfDay != null) {
+            int[] range = parseRange(when.timeOfDay);
+            checks.add(new TimeOfDayCheck(range[0], range[1]));
+        }
+        if (when.lightLevel != null) {
+            int[] range = parseRange(when.lightLevel);
+            checks.add(new LightLevelCheck(range[0], range[1]));
+        }
+        if (when.skylightLevel != null) {
+            int[] range = parseRange(when.skylightLevel);
+            checks.add(new SkylightLevelCheck(range[0], range[1]));
+        }
+        if (when.moonPhase != null) {
+            checks.add(new MoonPhaseCheck(Matcher.of(when.moonPhase)));
+        }
+        if (when.weather != null) {
+            checks.add(new WeatherCheck(Matcher.of(when.weather)));
+        }
+        if (when.difficulty != null) {
+            checks.add(new DifficultyCheck(Matcher.of(when.difficulty)));
+        }
+        if (when.random != null) {
+            checks.add(new RandomCheck(when.random));
+        }
+        if (when.nearbyCount != null) {
+            checks.add(buildNearbyCountCheck(when.nearbyCount, ruleName));
+        }
+        return new net.pcal.mobfilter.Rule(ruleName, checks.build(), configRule.what, -1, buildThrottle(configRule, ruleName));
+    }
+
+    private static Throttle buildThrottle(final JsonRule configRule, final String ruleName) {
+        if (configRule.what != RuleAction.THROTTLE) {
+            if (configRule.throttle != null) {
+                throw new IllegalArgumentException("'throttle' can only be specified on THROTTLE rules: " + ruleName);
             }
-            if (when.random != null) {
-                checks.add(new RandomCheck(when.random));
+            return null;
+        }
+        final JsonThrottle jt = configRule.throttle;
+        if (jt == null || jt.rate == null) {
+            throw new IllegalArgumentException("'throttle' with a 'rate' must be specified on " + ruleName);
+        }
+        final int burst = jt.burst != null ? jt.burst : (int) Math.min(Throttle.MAX_BURST, Math.max(1, Math.ceil(jt.rate)));
+        return new Throttle(jt.rate, burst, jt.per);
+    }
+
+    private static NearbyCountCheck buildNearbyCountCheck(final JsonNearbyCount jnc, final String ruleName) {
+        if (jnc.radius == null || jnc.radius < 0 || jnc.radius > MobCounts.MAX_RADIUS) {
+            throw new IllegalArgumentException("'nearbyCount' must have a 'radius' between 0 and " + MobCounts.MAX_RADIUS + " on " + ruleName);
+        }
+        if (jnc.count == null) {
+            throw new IllegalArgumentException("'nearbyCount' must have a 'count' on " + ruleName);
+        }
+        final int[] range = parseRange(jnc.count);
+        final EnumSet<MobCategory> categories;
+        if (jnc.category != null && jnc.category.length > 0) {
+            categories = EnumSet.copyOf(Arrays.asList(jnc.category));
+            if (categories.contains(MobCategory.MISC)) {
+                throw new IllegalArgumentException("'nearbyCount' can't count MISC entities on " + ruleName);
             }
-            configBuilder.addRule(new net.pcal.mobfilter.Rule(ruleName, checks.build(), configRule.what));
+        } else {
+            categories = EnumSet.complementOf(EnumSet.of(MobCategory.MISC));
         }
-        if (fromConfig.logLevel != null) {
+        return new NearbyCountCheck(categories, jnc.radius, range[0], range[1]);
+    }
+
+    private static void setLogLevel(final String logLevel, final Config.Builder configBuilder) {
+        if (logLevel != null) {
             try {
-                configBuilder.setLogLevel(Level.getLevel(fromConfig.logLevel));
+                configBuilder.setLogLevel(Level.getLevel(logLevel));
             } catch (IllegalArgumentException e) {
-                throw new IllegalArgumentException("Invalid logLevel value: " + fromConfig.logLevel, e);
+                throw new IllegalArgumentException("Invalid logLevel value: " + logLevel, e);
             }
         }
     }
 
-    static JsonConfiguration loadFromJson(final InputStream in) throws IOException {
-        final String rawJson = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    private static void setJournalSampleRate(final Integer journalSampleRate, final Config.Builder configBuilder) {
+        if (journalSampleRate != null) {
+            configBuilder.setJournalSampleRate(journalSampleRate);
+        }
+    }
 
-        final Gson gson = new GsonBuilder().
+    private static void setStatsEnabled(final Boolean stats, final Config.Builder configBuilder) {
+        if (stats != null) {
+            configBuilder.setStatsEnabled(stats);
+        }
+    }
+
+    private static Gson createGson() {
+        return new GsonBuilder().
                 setLenient().
                 registerTypeAdapterFactory(new ValidatingEnumAdapterFactory()).
                 create();
-        class TypoCatchingJsonReader extends JsonReader {
-            public TypoCatchingJsonReader(StringReader in) {
-                super(in);
-                super.setStrictness(Strictness.LENIENT);
-            }
+    }
 
-            @Override
-            public void skipValue()  {
-                // GSon calls this to silently ignore json keys that don't bind to anything.  People then get
-                // confused about why their configuration isn't fully working.  So here we just fail loudly instead.
-                // Note we don't throw IOException because GSon tries to handle that in a waysthat obscures the message.
-                throw new RuntimeException("Unexpected configuration names at: "+this.toString());
-            }
+    private static class TypoCatchingJsonReader extends JsonReader {
+        TypoCatchingJsonReader(Reader in) {
+            super(in);
+            super.setStrictness(Strictness.LENIENT);
+        }
 
-            /**
-             * The base class doesn't expose useful info like line number except via toString().
-             * Hack it up to make it a little less ugly.
-             */
-            @Override
-            public String toString() {
-                String out = super.toString();
-                String possiblePrefix = getClass().getSimpleName() + " at ";
-                if (out.startsWith(possiblePrefix)) out = out.substring(possiblePrefix.length());
-                return out;
-            }
+        @Override
+        public void skipValue()  {
+            // GSon calls this to silently ignore json keys that don't bind to anything.  People then get
+            // confused about why their configuration isn't fully working.  So here we just fail loudly instead.
+            // Note we don't throw IOException because GSon tries to handle that in a waysthat obscures the message.
+            throw new RuntimeException("Unexpected configuration names at: "+this.toString());
+        }
+
+        /**
+         * The base class doesn't expose useful info like line number except via toString().
+         * Hack it up to make it a little less ugly.
+         */
+        @Override
+        public String toString() {
+            String out = super.toString();
+            String possiblePrefix = getClass().getSimpleName() + " at ";
+            if (out.startsWith(possiblePrefix)) out = out.substring(possiblePrefix.length());
+            return out;
         }
-        return gson.fromJson(new TypoCatchingJsonReader(new StringReader(rawJson)), TypeToken.get(JsonConfiguration.class));
     }
 
     /**
@@ -246,12 +353,27 @@ class JsonConfigLoader {
     public static class JsonConfiguration {
         public JsonRule[] rules;
         public String logLevel;
+        public Boolean stats;
+        public Integer journalSampleRate;
     }
 
     public static class JsonRule {
         public String name;
         public RuleAction what;
         public JsonWhen when;
+        public JsonThrottle throttle;
+    }
+
+    public static class JsonThrottle {
+        public Double rate;
+        public Integer burst;
+        public Throttle.Scope per;
+    }
+
+    public static class JsonNearbyCount {
+        public MobCategory[] category;
+        public Integer radius;
+        public String[] count;
     }
 
     public static class JsonWhen {
@@ -273,6 +395,7 @@ class JsonConfigLoader {
         public WeatherType[] weather;
         public Difficulty[] difficulty;
         public Double random;
+        public JsonNearbyCount nearbyCount;
 
         // for backwards compatibility:
         @Deprecated // use spawnReason instead
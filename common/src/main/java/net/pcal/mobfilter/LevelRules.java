@@ -0,0 +1,157 @@
+package net.pcal.mobfilter;
+
+import com.google.common.collect.ImmutableList;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.Difficulty;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.storage.ServerLevelData;
+import net.pcal.mobfilter.RuleCheck.BiomeCheck;
+import net.pcal.mobfilter.RuleCheck.BiomeSetCheck;
+import net.pcal.mobfilter.RuleCheck.DifficultyCheck;
+import net.pcal.mobfilter.RuleCheck.DimensionCheck;
+import net.pcal.mobfilter.RuleCheck.TickScopedCheck;
+import net.pcal.mobfilter.RuleCheck.WorldNameCheck;
+
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The rules as they apply to a single ServerLevel.  WorldNameChecks, DimensionChecks and DifficultyChecks
+ * give the same answer for every spawn in a level, so we answer them once here: rules where one of them
+ * fails are dropped, and the rest have them removed.  The result is then indexed like the full rule list.
+ *
+ * Biome registries belong to the level, so this is also where BiomeChecks get compiled to biome id bitsets.
+ *
+ * Difficulty can change while the level is loaded, so callers need to check isStale() and rebuild.
+ *
+ * TimeOfDayChecks and WeatherChecks can't be folded in permanently, but they're the same for every spawn
+ * until the next tick.  getTickStates() answers them once per tick for every rule that has them.
+ */
+final class LevelRules {
+
+    static final byte TICK_EVALUATE = 0; // no tick-scoped checks, or one depends on the spawn
+    static final byte TICK_FOLDED = 1;   // all of the tick-scoped checks pass; evaluate the rest
+    static final byte TICK_DEAD = 2;     // a tick-scoped check fails; the rule can't match this tick
+
+    private final Difficulty difficulty;
+    private final RuleIndex ruleIndex;
+    private final List<Rule> tickScopedRules;
+    private final byte[] tickStates; // by rule ordinal; server thread only
+    private long tickStatesTime = Long.MIN_VALUE;
+
+    private LevelRules(final Difficulty difficulty, final RuleIndex ruleIndex, final List<Rule> tickScopedRules, final int ruleCount) {
+        this.difficulty = requireNonNull(difficulty);
+        this.ruleIndex = requireNonNull(ruleIndex);
+        this.tickScopedRules = requireNonNull(tickScopedRules);
+        this.tickStates = new byte[ruleCount];
+    }
+
+    /**
+     * Must be called on the server thread.
+     */
+    static LevelRules build(final List<Rule> rules, final ServerLevel serverLevel) {
+        final String worldName = serverLevel.getLevelData() instanceof ServerLevelData sld ? sld.getLevelName() : null;
+        return build(rules, worldName, serverLevel.dimension().identifier(), serverLevel.getDifficulty(),
+                serverLevel.registryAccess().lookupOrThrow(Registries.BIOME));
+    }
+
+    /**
+     * Same as build(List, ServerLevel), with what we need from the level already read from it.  Package-private
+     * for tests.
+     */
+    static LevelRules build(final List<Rule> rules, final String worldName, final Identifier dimensionId,
+                            final Difficulty difficulty, final Registry<Biome> biomeRegistry) {
+        final ImmutableList.Builder<Rule> levelRules = ImmutableList.builder();
+        final ImmutableList.Builder<Rule> tickScopedRules = ImmutableList.builder();
+        for (final Rule rule : rules) {
+            final Rule specialized = specialize(rule, worldName, dimensionId, difficulty, biomeRegistry);
+            if (specialized == null) continue;
+            levelRules.add(specialized);
+            if (specialized.checks().stream().anyMatch(TickScopedCheck.class::isInstance)) tickScopedRules.add(specialized);
+        }
+        return new LevelRules(difficulty, RuleIndex.build(levelRules.build()), tickScopedRules.build(), rules.size());
+    }
+
+    /**
+     * @return true if the level has changed in a way that means these rules need to be rebuilt.
+     */
+    boolean isStale(final ServerLevel serverLevel) {
+        return serverLevel.getDifficulty() != this.difficulty;
+    }
+
+    RuleIndex getRuleIndex() {
+        return this.ruleIndex;
+    }
+
+    /**
+     * Must be called on the server thread.  The returned array is overwritten on the next tick, so don't
+     * hold on to it.
+     *
+     * @return one of the TICK_ constants for each rule ordinal, or null if none of the rules have
+     * tick-scoped checks.
+     */
+    byte[] getTickStates(final ServerLevel serverLevel) {
+        if (this.tickScopedRules.isEmpty()) return null;
+        final long gameTime = serverLevel.getGameTime();
+        if (gameTime == this.tickStatesTime) return this.tickStates;
+        return getTickStates(gameTime, serverLevel.getOverworldClockTime(), serverLevel.isThundering());
+    }
+
+    /**
+     * Same as getTickStates(ServerLevel), with the level's state already read from it.  The day time and
+     * weather are only looked at if gameTime is a new tick.  Package-private for tests.
+     */
+    byte[] getTickStates(final long gameTime, final long dayTime, final boolean isThundering) {
+        if (this.tickScopedRules.isEmpty()) return null;
+        if (gameTime != this.tickStatesTime) {
+            for (final Rule rule : this.tickScopedRules) {
+                this.tickStates[rule.ordinal()] = getTickState(rule, dayTime, isThundering);
+            }
+            this.tickStatesTime = gameTime;
+        }
+        return this.tickStates;
+    }
+
+    private static byte getTickState(final Rule rule, final long dayTime, final boolean isThundering) {
+        byte out = TICK_FOLDED;
+        for (final RuleCheck check : rule.checks()) {
+            if (check instanceof TickScopedCheck tsc) {
+                final Boolean isMatch = tsc.isMatch(dayTime, isThundering);
+                if (isMatch == null) {
+                    out = TICK_EVALUATE;
+                } else if (!isMatch) {
+                    return TICK_DEAD;
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return a copy of the rule with the level-wide checks removed, or null if one of them fails in this level.
+     * BiomeChecks are compiled against the level's biome registry.
+     */
+    private static Rule specialize(final Rule rule, final String worldName, final Identifier dimensionId,
+                                   final Difficulty difficulty, final Registry<Biome> biomeRegistry) {
+        final ImmutableList.Builder<RuleCheck> residual = ImmutableList.builder();
+        for (final RuleCheck check : rule.checks()) {
+            if (check instanceof WorldNameCheck wnc) {
+                final boolean isMatch = worldName == null ? ConfigService.get().getDefaultRuleCheckResult() : wnc.worldNames().isMatch(worldName);
+                if (!isMatch) return null;
+            } else if (check instanceof DimensionCheck dc) {
+                if (!dc.dimensionMatcher().isMatch(dimensionId)) return null;
+            } else if (check instanceof DifficultyCheck dc) {
+                if (!dc.matcher().isMatch(difficulty)) return null;
+            } else if (check instanceof BiomeCheck bc) {
+                residual.add(new BiomeSetCheck(bc.biomeMatcher().toBitSet(biomeRegistry), biomeRegistry, bc));
+            } else {
+                residual.add(check);
+            }
+        }
+        return rule.withChecks(residual.build());
+    }
+}
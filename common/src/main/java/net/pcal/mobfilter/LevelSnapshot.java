@@ -0,0 +1,96 @@
+package net.pcal.mobfilter;
+
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.Difficulty;
+import net.minecraft.world.level.storage.ServerLevelData;
+
+import java.util.Objects;
+
+/**
+ * The level-wide facts that worldgen threads need but aren't allowed to read from the ServerLevel.  The server
+ * thread updates one of these at the start of every level tick and publishes it on the level through
+ * LevelSnapshotHolder, so worldgen spawns see the level as it was at the start of the current tick.
+ *
+ * The times change every tick, so they're updated in place rather than costing a new snapshot per tick.  A new
+ * snapshot is only made when one of the other facts changes, which is rare.  A worldgen thread can see the
+ * times of one tick and the weather of the next, which doesn't matter for spawning.
+ */
+public final class LevelSnapshot {
+
+    private final String worldName;
+    private final Difficulty difficulty;
+    private final boolean isRaining;
+    private final boolean isThundering;
+    private volatile long gameTime;
+    private volatile long dayTime;
+
+    LevelSnapshot(final String worldName,
+                  final Difficulty difficulty,
+                  final long gameTime,
+                  final long dayTime,
+                  final boolean isRaining,
+                  final boolean isThundering) {
+        this.worldName = worldName;
+        this.difficulty = difficulty;
+        this.gameTime = gameTime;
+        this.dayTime = dayTime;
+        this.isRaining = isRaining;
+        this.isThundering = isThundering;
+    }
+
+    /**
+     * Must be called on the server thread.
+     *
+     * @param previous the level's current snapshot, or null if it doesn't have one yet.
+     * @return previous with its times updated if nothing else has changed, otherwise a new snapshot.
+     */
+    static LevelSnapshot of(final ServerLevel serverLevel, final LevelSnapshot previous) {
+        final String worldName = serverLevel.getLevelData() instanceof ServerLevelData sld ? sld.getLevelName() : null;
+        return of(previous, worldName, serverLevel.getDifficulty(), serverLevel.getGameTime(),
+                serverLevel.getOverworldClockTime(), serverLevel.isRaining(), serverLevel.isThundering());
+    }
+
+    /**
+     * Same as of(ServerLevel, LevelSnapshot), with the facts already read from the level.  Package-private for
+     * tests.
+     */
+    static LevelSnapshot of(final LevelSnapshot previous,
+                            final String worldName,
+                            final Difficulty difficulty,
+                            final long gameTime,
+                            final long dayTime,
+                            final boolean isRaining,
+                            final boolean isThundering) {
+        if (previous == null || !Objects.equals(previous.worldName, worldName) || previous.difficulty != difficulty ||
+                previous.isRaining != isRaining || previous.isThundering != isThundering) {
+            return new LevelSnapshot(worldName, difficulty, gameTime, dayTime, isRaining, isThundering);
+        }
+        previous.gameTime = gameTime;
+        previous.dayTime = dayTime;
+        return previous;
+    }
+
+    public String worldName() {
+        return this.worldName;
+    }
+
+    public Difficulty difficulty() {
+        return this.difficulty;
+    }
+
+    public long gameTime() {
+        return this.gameTime;
+    }
+
+    public long dayTime() {
+        return this.dayTime;
+    }
+
+    public boolean isRaining() {
+        return this.isRaining;
+    }
+
+    public boolean isThundering() {
+        return this.isThundering;
+    }
+}
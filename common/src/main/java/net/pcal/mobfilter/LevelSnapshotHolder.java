@@ -0,0 +1,15 @@
+package net.pcal.mobfilter;
+
+/**
+ * Implemented on ServerLevel by ServerLevelMixin, so that worldgen threads can see a recent LevelSnapshot
+ * without touching the level itself.  Cast any ServerLevel to this to get at it.
+ */
+public interface LevelSnapshotHolder {
+
+    /**
+     * @return the snapshot taken at the start of the level's most recent tick, or null if it hasn't ticked yet.
+     */
+    LevelSnapshot mf_getLevelSnapshot();
+
+    void mf_setLevelSnapshot(LevelSnapshot snapshot);
+}
@@ -2,6 +2,7 @@ package net.pcal.mobfilter;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
@@ -13,6 +14,11 @@ public interface Matcher<T> {
 
     boolean isMatch(final T value);
 
+    /**
+     * @return the items this matcher was created with.
+     */
+    List<T> getItems();
+
     static <T> Matcher<T> of(final T[] matchItems) {
         final int HASH_CUTOFF = 3; // arrays bigger than this will go in a hashset
         if (matchItems.length == 0) {
@@ -22,6 +28,10 @@ public interface Matcher<T> {
                     return false;
                 }
                 @Override
+                public List<T> getItems() {
+                    return Arrays.asList(matchItems);
+                }
+                @Override
                 public String toString() {
                     return "[]";
                 }
@@ -33,6 +43,10 @@ public interface Matcher<T> {
                     return s != null && s.equals(matchItems[0]);
                 }
                 @Override
+                public List<T> getItems() {
+                    return Arrays.asList(matchItems);
+                }
+                @Override
                 public String toString() {
                     return "[" + matchItems[0] + "]";
                 }
@@ -46,6 +60,10 @@ public interface Matcher<T> {
                     return false;
                 }
                 @Override
+                public List<T> getItems() {
+                    return Arrays.asList(matchItems);
+                }
+                @Override
                 public String toString() {
                     return Arrays.toString(matchItems);
                 }
@@ -59,6 +77,10 @@ public interface Matcher<T> {
                     return set.contains(s);
                 }
                 @Override
+                public List<T> getItems() {
+                    return Arrays.asList(matchItems);
+                }
+                @Override
                 public String toString() {
                     return Arrays.toString(matchItems);
                 }
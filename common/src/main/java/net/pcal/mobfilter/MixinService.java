@@ -1,18 +1,31 @@
 package net.pcal.mobfilter;
 
+import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.WorldGenRegion;
+import net.minecraft.util.random.WeightedList;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.EntitySpawnReason;
 import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.entity.Mob;
+import net.minecraft.world.entity.MobCategory;
 import net.minecraft.world.level.Level;
+import net.minecraft.world.level.biome.MobSpawnSettings;
 import net.pcal.mobfilter.SpawnAttempt.MainThreadSpawnAttempt;
 import net.pcal.mobfilter.SpawnAttempt.WorldgenThreadSpawnAttempt;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
 import static net.pcal.mobfilter.MixinService.MinecraftThreadType.SERVER;
 import static net.pcal.mobfilter.MixinService.MinecraftThreadType.WORLDGEN;
 
@@ -41,17 +54,99 @@ public class MixinService {
     // Fields
 
     /**
-     * Because the spawnReason is not available at out interception point in the minecraft code,
-     * we track it in a ThreadLocal.  Basically best-effort but it seems to work.
+     * EntityTypes that we've seen create a Mob.  Every type outside of the MISC category is a Mob, but
+     * MISC is a mix of mobs (e.g., villagers) and non-mobs (e.g., boats), and the type alone doesn't tell
+     * us which.  So we remember what actually came out of EntityType.create.
      */
-    private final ThreadLocal<EntitySpawnReason> spawnReason = new ThreadLocal<>();
+    private final Set<EntityType<?>> miscMobTypes = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
     private final Logger logger = LogManager.getLogger(MixinService.class);
 
+    /**
+     * The server's main thread, or null if the server isn't running.  Lets us classify threads with a single
+     * reference comparison.
+     */
+    private volatile Thread serverThread = null;
+
+    /**
+     * Registered by other mods with registerWorldgenThreads().  Replaced rather than modified, so the spawn
+     * path can walk it without locking or allocating an iterator.
+     */
+    @SuppressWarnings("unchecked")
+    private volatile Predicate<Thread>[] worldgenThreads = new Predicate[0];
+
+    /**
+     * Reusable SpawnAttempts, one per thread, so that we don't allocate one for every spawn.  They share a
+     * per-thread EnvironmentCache.
+     */
+    private final ThreadLocal<EnvironmentCache> environmentCaches = ThreadLocal.withInitial(EnvironmentCache::new);
+    private final ThreadLocal<MainThreadSpawnAttempt> mainThreadAttempts = ThreadLocal.withInitial(() -> new MainThreadSpawnAttempt(this.logger, this.environmentCaches.get()));
+    private final ThreadLocal<WorldgenThreadSpawnAttempt> worldgenThreadAttempts = ThreadLocal.withInitial(() -> new WorldgenThreadSpawnAttempt(this.logger));
+
+    /**
+     * Where we're recording spawn attempts, or null if we aren't.  See startCapture().
+     */
+    private volatile SpawnCapture capture = null;
 
     // ===================================================================================
     // Public
 
+    /**
+     * Tell us which thread is the server's main thread.  The loaders call this as the server starts, and with
+     * null once it has stopped, on the server thread.  Any other thread is treated as a worldgen thread.
+     */
+    public void setServerThread(final Thread serverThread) {
+        this.serverThread = serverThread;
+        if (serverThread == null) this.environmentCaches.get().clear(); // don't hang on to the stopped server's world
+    }
+
+    /**
+     * For mods that run worldgen in their own thread pools, or on the server thread.  Spawns on threads matching
+     * the predicate are always treated as worldgen spawns, even on the server thread, and even if we don't know
+     * which thread is the server thread.  The predicate is tested on every spawn, so it needs to be cheap.
+     */
+    public synchronized void registerWorldgenThreads(final Predicate<Thread> isWorldgenThread) {
+        requireNonNull(isWorldgenThread);
+        final Predicate<Thread>[] out = Arrays.copyOf(this.worldgenThreads, this.worldgenThreads.length + 1);
+        out[out.length - 1] = isWorldgenThread;
+        this.worldgenThreads = out;
+    }
+
+    /**
+     * Start recording every spawn attempt that reaches addFreshEntity to the given file, replacing it, so
+     * they can be replayed offline against other configs.  Stops any capture that's already running.
+     *
+     * While a capture is running, we don't veto spawns early or prune the natural spawn lists, so that the
+     * spawns the current config blocks still get as far as addFreshEntity and are captured.  They're still
+     * blocked there.
+     *
+     * @throws IOException if the file can't be created.
+     */
+    public synchronized void startCapture(final Path path) throws IOException {
+        stopCapture();
+        this.capture = SpawnCapture.open(path);
+        logger.info(() -> "[MobFilter] Capturing spawn attempts to " + path.toAbsolutePath());
+    }
+
+    /**
+     * Stop recording spawn attempts, if we are, and flush the file.  Called on server stop.
+     *
+     * @return the number of attempts captured, or -1 if there was no capture running.
+     */
+    public synchronized long stopCapture() {
+        final SpawnCapture capture = this.capture;
+        if (capture == null) return -1;
+        this.capture = null;
+        try {
+            capture.close();
+        } catch (IOException e) {
+            logger.warn("[MobFilter] Failed to close spawn capture " + capture.getPath().toAbsolutePath(), e);
+        }
+        final long count = capture.getCount();
+        logger.info(() -> "[MobFilter] Captured " + count + " spawn attempts to " + capture.getPath().toAbsolutePath());
+        return count;
+    }
+
     /**
      * Broad categories of vanilla minecraft thready types.  We care because some kinds of filtering
      * can't be done in the worldgen thread.
@@ -63,33 +158,96 @@ public class MixinService {
 
 
     public void WorldGenRegion_addFreshEntity(WorldGenRegion worldGenRegion, Entity entity, CallbackInfoReturnable<Boolean> cir) {
-        if (!this.isSpawnAllowed(worldGenRegion.getLevel(), entity, WORLDGEN)) {
+        if (!this.isSpawnAllowed(worldGenRegion.getLevel(), worldGenRegion, entity, WORLDGEN)) {
             entity.remove(Entity.RemovalReason.DISCARDED);
             cir.setReturnValue(false);
         }
     }
 
     public void ServerLevel_addFreshEntity(ServerLevel serverLevel, Entity entity, CallbackInfoReturnable<Boolean> cir) {
-        if (!this.isSpawnAllowed(serverLevel, entity, SERVER)) {
+        if (!this.isSpawnAllowed(serverLevel, null, entity, SERVER)) {
             entity.remove(Entity.RemovalReason.DISCARDED);
             cir.setReturnValue(false);
         }
     }
 
     /**
-     * Intercept calls to EntityType.create so we can try to track EntitySpawnReason.
+     * Publish the level's state for worldgen threads to use during this tick.
+     */
+    public void ServerLevel_tick(ServerLevel serverLevel) {
+        final LevelSnapshotHolder holder = (LevelSnapshotHolder) serverLevel;
+        final LevelSnapshot previous = holder.mf_getLevelSnapshot();
+        final LevelSnapshot snapshot = LevelSnapshot.of(serverLevel, previous);
+        if (snapshot != previous) holder.mf_setLevelSnapshot(snapshot);
+    }
+
+    /**
+     * Keep the level's MobCounts up to date.  Tracking starts when an entity is added or its chunk is loaded,
+     * and ends when it's removed or its chunk is unloaded.
+     */
+    public void EntityCallbacks_onTrackingStart(ServerLevel serverLevel, Entity entity) {
+        ((MobCountsHolder) serverLevel).mf_getMobCounts().add(entity);
+    }
+
+    public void EntityCallbacks_onTrackingEnd(ServerLevel serverLevel, Entity entity) {
+        ((MobCountsHolder) serverLevel).mf_getMobCounts().remove(entity);
+    }
+
+    public void EntityCallbacks_onSectionChange(ServerLevel serverLevel, Entity entity) {
+        ((MobCountsHolder) serverLevel).mf_getMobCounts().move(entity);
+    }
+
+    /**
+     * Intercept NaturalSpawner's position check so that natural spawns we're going to filter anyway are
+     * rejected before the game constructs the mob.  Vanilla just moves on to the next position.
+     */
+    public void NaturalSpawner_isValidSpawnPostionForType(ServerLevel serverLevel, MobSpawnSettings.SpawnerData spawnerData, BlockPos.MutableBlockPos pos, CallbackInfoReturnable<Boolean> cir) {
+        if (!cir.getReturnValueZ()) return; // vanilla already said no
+        if (this.isSpawnVetoed(serverLevel, spawnerData.type(), EntitySpawnReason.NATURAL, pos)) {
+            cir.setReturnValue(false);
+        }
+    }
+
+    /**
+     * Intercept NaturalSpawner's lookup of the mobs that can spawn at a position, which covers both biome
+     * spawns and structure overrides, and drop any mobs that the rules never allow to spawn naturally.
+     * That way NaturalSpawner picks something else instead of spending the attempt on a spawn we're going
+     * to throw away.
+     */
+    public void NaturalSpawner_mobsAt(ServerLevel serverLevel, CallbackInfoReturnable<WeightedList<MobSpawnSettings.SpawnerData>> cir) {
+        if (this.capture != null) return; // let the capture see them
+        if (determineThreadType(SERVER) != SERVER) return; // the level's rules can only be compiled on the server thread
+        final WeightedList<MobSpawnSettings.SpawnerData> spawners = cir.getReturnValue();
+        if (spawners == null) return;
+        final WeightedList<MobSpawnSettings.SpawnerData> filtered = ConfigService.get().getNaturalSpawners(serverLevel, spawners);
+        if (filtered != spawners) cir.setReturnValue(filtered);
+    }
+
+    /**
+     * Intercept the positioned flavor of EntityType.create (spawn eggs, commands, etc.) so that we can
+     * veto before the entity is constructed.  Returning null is how vanilla reports a failed create.
+     */
+    public void EntityType_createAt(EntityType<?> entityType, ServerLevel serverLevel, BlockPos pos, EntitySpawnReason reason, CallbackInfoReturnable<Entity> cir) {
+        if (reason == null) return;
+        if (entityType.getCategory() == MobCategory.MISC && !this.miscMobTypes.contains(entityType)) return;
+        if (this.isSpawnVetoed(serverLevel, entityType, reason, pos)) {
+            cir.setReturnValue(null);
+        }
+    }
+
+    /**
+     * Intercept calls to EntityType.create so we can track EntitySpawnReason.  The spawnReason is not
+     * available where we intercept addFreshEntity, so we stash it on the mob.
      */
     public void EntityType_create(Level level, EntitySpawnReason reason, CallbackInfoReturnable<Entity> cir) {
         if (level.isClientSide()) return;
-        if (!(cir.getReturnValue() instanceof Mob)) return;
+        if (!(cir.getReturnValue() instanceof Mob mob)) return;
+        if (mob.getType().getCategory() == MobCategory.MISC) this.miscMobTypes.add(mob.getType());
         if (reason == null) {
-            logger.debug(() -> "[MobFilter] Ignoring attempt to set null spawnReason");
+            if (logger.isDebugEnabled()) logger.debug(() -> "[MobFilter] Ignoring attempt to set null spawnReason");
             return;
-        } else if (this.spawnReason.get() != null && this.spawnReason.get() != reason) {
-            logger.trace(() -> "[MobFilter] Unexpectedly changing existing spawnReason  " +
-                    " from " + this.spawnReason.get() + " to " + reason);
         }
-        this.spawnReason.set(reason);
+        ((SpawnReasonHolder) mob).mf_setSpawnReason(reason);
     }
 
     // ===================================================================================
@@ -98,53 +256,135 @@ public class MixinService {
     /**
      * Constructs an appropriate SpawnAttempt record, asks the ConfigService if the spawn is allowed, and returns
      * the result.
+     *
+     * @param worldGenRegion the region being generated if this is a worldgen spawn, otherwise null.
      */
     private boolean isSpawnAllowed(final ServerLevel serverLevel,
+                                   final WorldGenRegion worldGenRegion,
                                    final Entity entity,
                                    final MinecraftThreadType threadTypeGuess) {
         if (serverLevel.isClientSide()) return true; // no filtering on client
-        if (!(entity instanceof Mob)) return true; // we only care about mobs
-        final EntitySpawnReason reason = spawnReason.get();
+        if (!(entity instanceof Mob mob)) return true; // we only care about mobs
+        final EntitySpawnReason reason = ((SpawnReasonHolder) mob).mf_getSpawnReason();
         if (reason == null) {
-            logger.debug(() -> "[MobFilter] No spawnReason was set for " + entity.getType());
-        } else {
-            spawnReason.remove();
+            if (logger.isDebugEnabled()) logger.debug(() -> "[MobFilter] No spawnReason was set for " + entity.getType());
         }
-        final EntityType<?> entityType = entity.getType();
-        final SpawnAttempt att;
-        if (determineThreadType(threadTypeGuess) == SERVER) {
-            att = new MainThreadSpawnAttempt(serverLevel, reason, entityType.getCategory(), entityType, entity.blockPosition(), logger);
+        final MinecraftThreadType threadType = determineThreadType(threadTypeGuess);
+        final ServerLevel compileLevel = threadType == SERVER ? serverLevel : null; // only safe to compile on the server thread
+        final SpawnCapture capture = this.capture;
+        if (capture != null) capture(capture, serverLevel, worldGenRegion, entity.getType(), reason, entity.blockPosition(), threadType);
+        final Boolean staticVerdict = ConfigService.get().getStaticVerdict(compileLevel, entity.getType(), reason);
+        if (staticVerdict != null) return staticVerdict;
+        final SpawnAttempt att = createSpawnAttempt(serverLevel, worldGenRegion, entity.getType(), reason, entity.blockPosition(), threadType);
+        try {
+            return ConfigService.get().isSpawnAllowed(compileLevel, att);
+        } finally {
+            releaseSpawnAttempt(att);
+        }
+    }
+
+    /**
+     * Constructs an appropriate SpawnAttempt record for a mob that has not been created yet and asks
+     * the ConfigService whether the spawn can be vetoed early.
+     */
+    private boolean isSpawnVetoed(final ServerLevel serverLevel,
+                                  final EntityType<?> entityType,
+                                  final EntitySpawnReason reason,
+                                  final BlockPos blockPos) {
+        if (serverLevel.isClientSide()) return false;
+        if (this.capture != null) return false; // let it reach addFreshEntity so it gets captured
+        final MinecraftThreadType threadType = determineThreadType(SERVER);
+        final ServerLevel compileLevel = threadType == SERVER ? serverLevel : null;
+        final Boolean staticVeto = ConfigService.get().getStaticVeto(compileLevel, entityType, reason);
+        if (staticVeto != null) return staticVeto;
+        final SpawnAttempt att = createSpawnAttempt(serverLevel, null, entityType, reason, blockPos, threadType);
+        try {
+            return ConfigService.get().isSpawnVetoed(compileLevel, att);
+        } finally {
+            releaseSpawnAttempt(att);
+        }
+    }
+
+    /**
+     * Record a spawn attempt before it's decided.  Captures everything, including spawns that would get a
+     * static verdict, since a different config might not give them one.  If writing fails, we give up on
+     * the capture rather than failing every spawn after it.
+     */
+    private void capture(final SpawnCapture capture,
+                         final ServerLevel serverLevel,
+                         final WorldGenRegion worldGenRegion,
+                         final EntityType<?> entityType,
+                         final EntitySpawnReason reason,
+                         final BlockPos blockPos,
+                         final MinecraftThreadType threadType) {
+        final SpawnAttempt att = createSpawnAttempt(serverLevel, worldGenRegion, entityType, reason, blockPos, threadType);
+        try {
+            capture.write(att);
+        } catch (IOException e) {
+            logger.warn("[MobFilter] Failed to write spawn capture, stopping", e);
+            stopCapture();
+        } finally {
+            releaseSpawnAttempt(att);
+        }
+    }
+
+    /**
+     * Returns this thread's pooled SpawnAttempt, reset for the given spawn.  The caller must pass it to
+     * releaseSpawnAttempt() when done.  Worldgen attempts read the world through worldGenRegion, or not at
+     * all if it's null.
+     */
+    private SpawnAttempt createSpawnAttempt(final ServerLevel serverLevel,
+                                            final WorldGenRegion worldGenRegion,
+                                            final EntityType<?> entityType,
+                                            final EntitySpawnReason reason,
+                                            final BlockPos blockPos,
+                                            final MinecraftThreadType threadType) {
+        if (threadType == SERVER) {
+            MainThreadSpawnAttempt att = this.mainThreadAttempts.get();
+            if (att.isInUse()) att = new MainThreadSpawnAttempt(this.logger, this.environmentCaches.get()); // nested spawn
+            return att.reset(serverLevel, reason, entityType.getCategory(), entityType, blockPos);
         } else {
-            att = new WorldgenThreadSpawnAttempt(reason, entityType.getCategory(), entityType, entity.blockPosition(), logger);
+            WorldgenThreadSpawnAttempt att = this.worldgenThreadAttempts.get();
+            if (att.isInUse()) att = new WorldgenThreadSpawnAttempt(this.logger); // nested spawn
+            return att.reset(serverLevel, worldGenRegion, reason, entityType.getCategory(), entityType, blockPos);
+        }
+    }
+
+    private static void releaseSpawnAttempt(final SpawnAttempt att) {
+        if (att instanceof MainThreadSpawnAttempt mtsa) {
+            mtsa.release();
+        } else if (att instanceof WorldgenThreadSpawnAttempt wtsa) {
+            wtsa.release();
         }
-        return ConfigService.get().isSpawnAllowed(att);
     }
 
     /**
      * Determine which type of thread we're running in.  The 'guess' is based on where in the minecraft code the
      * mixin executed, and it's probably right.  But because the consequence of guessing wrong can cause the entire
-     * game to deadlock, we need to err on the side of caution.
-     */
-    private MinecraftThreadType determineThreadType(final MinecraftThreadType threadTypeGuess) {
-        final String threadName = Thread.currentThread().getName();
-        final boolean threadNameLooksLikeWorldgen = threadName.contains("Worker"); // I guess?
-        if (threadTypeGuess == WORLDGEN) {
-            if (!threadNameLooksLikeWorldgen) {
-                logger.debug(() -> "[MobFilter] Thread guess is " + WORLDGEN + " but the name is " + threadName);
-            }
-            // WORLDGEN is the least-risky case, so let's just go with the guess in any case
+     * game to deadlock, we need to err on the side of caution.  Package-private for tests.
+     */
+    MinecraftThreadType determineThreadType(final MinecraftThreadType threadTypeGuess) {
+        // WORLDGEN is the least-risky case, so let's just go with the guess in any case
+        if (threadTypeGuess == WORLDGEN) return WORLDGEN;
+        final Thread thread = Thread.currentThread();
+        final Predicate<Thread>[] worldgenThreads = this.worldgenThreads;
+        for (int i = 0; i < worldgenThreads.length; i++) { // no iterator, this is on every spawn
+            if (worldgenThreads[i].test(thread)) return WORLDGEN;
+        }
+        final Thread serverThread = this.serverThread;
+        if (serverThread != null) return thread == serverThread ? SERVER : WORLDGEN;
+        return guessThreadType(thread);
+    }
+
+    /**
+     * Classify a thread when we don't know which one is the server thread (which should only happen if the
+     * loader didn't tell us), going by its name.  This is not very robust but it's all we have.
+     */
+    private MinecraftThreadType guessThreadType(final Thread thread) {
+        if (thread.getName().contains("Worker")) { // I guess?
+            if (logger.isDebugEnabled()) logger.debug(() -> "[MobFilter] Overriding guessed MAIN thread to WORLDGEN because current thread name is " + thread.getName());
             return WORLDGEN;
-        } else {
-            // However, if we think we're in the MAIN thread, let's double check the name of the current thread.
-            // It's difficult to be certain whether any of the mixin code is guaranteed to only run in the MAIN thread,
-            // so let's err on the side of caution and double-check the thread name.  This is not very robust
-            // but AFAICT the vanilla code gives us no better way to check.
-            if (threadNameLooksLikeWorldgen) {
-                logger.debug(() -> "[MobFilter] Overriding guessed MAIN thread to WORLDGEN because current thread name is " + threadName);
-                return WORLDGEN;
-            } else {
-                return SERVER;
-            }
         }
+        return SERVER;
     }
 }
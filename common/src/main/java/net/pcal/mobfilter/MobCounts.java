@@ -0,0 +1,124 @@
+package net.pcal.mobfilter;
+
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.MobCategory;
+
+import java.util.EnumSet;
+
+/**
+ * How many entities of each MobCategory are in each chunk of a level, kept up to date as entities are tracked,
+ * untracked and move between chunks, so that NearbyCountCheck can count the mobs around a spawn without
+ * scanning for entities.  MISC entities (items, boats, arrows...) aren't counted.
+ *
+ * We remember which chunk each entity was counted in, since by the time we hear that it moved or went away
+ * its position has already changed.
+ *
+ * Not thread-safe; only the server thread should touch it.  ServerLevelMixin keeps one per level.
+ */
+public final class MobCounts {
+
+    static final int MAX_RADIUS = 8;
+
+    private static final MobCategory[] CATEGORIES = MobCategory.values();
+
+    static {
+        if (CATEGORIES.length > Integer.SIZE) throw new IllegalStateException("too many MobCategories for a mask");
+    }
+
+    private final Long2ObjectOpenHashMap<int[]> countsByChunk = new Long2ObjectOpenHashMap<>();
+    private final Int2LongOpenHashMap chunkByEntity = new Int2LongOpenHashMap();
+
+    // ===================================================================================
+    // Tracking
+
+    void add(final Entity entity) {
+        final MobCategory category = entity.getType().getCategory();
+        if (category == MobCategory.MISC) return;
+        add(entity.getId(), category, getChunkKey(entity.getBlockX() >> 4, entity.getBlockZ() >> 4));
+    }
+
+    void remove(final Entity entity) {
+        remove(entity.getId(), entity.getType().getCategory());
+    }
+
+    void move(final Entity entity) {
+        move(entity.getId(), entity.getType().getCategory(), getChunkKey(entity.getBlockX() >> 4, entity.getBlockZ() >> 4));
+    }
+
+    void add(final int entityId, final MobCategory category, final long chunkKey) {
+        if (this.chunkByEntity.containsKey(entityId)) return; // already counted
+        this.chunkByEntity.put(entityId, chunkKey);
+        increment(chunkKey, category, 1);
+    }
+
+    void remove(final int entityId, final MobCategory category) {
+        if (!this.chunkByEntity.containsKey(entityId)) return;
+        increment(this.chunkByEntity.remove(entityId), category, -1);
+    }
+
+    void move(final int entityId, final MobCategory category, final long chunkKey) {
+        if (!this.chunkByEntity.containsKey(entityId)) return;
+        final long oldKey = this.chunkByEntity.put(entityId, chunkKey);
+        if (oldKey == chunkKey) return;
+        increment(oldKey, category, -1);
+        increment(chunkKey, category, 1);
+    }
+
+    // ===================================================================================
+    // Querying
+
+    /**
+     * @param categoryMask the categories to count, from getCategoryMask().
+     * @return the number of entities in any of the given categories in the square of chunks that extends
+     * chunkRadius chunks in each direction from the given chunk.
+     */
+    int getCount(final int categoryMask, final int chunkX, final int chunkZ, final int chunkRadius) {
+        int out = 0;
+        for (int x = chunkX - chunkRadius; x <= chunkX + chunkRadius; x++) {
+            for (int z = chunkZ - chunkRadius; z <= chunkZ + chunkRadius; z++) {
+                final int[] counts = this.countsByChunk.get(getChunkKey(x, z));
+                if (counts == null) continue;
+                for (int mask = categoryMask; mask != 0; mask &= mask - 1) {
+                    out += counts[Integer.numberOfTrailingZeros(mask)];
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return a mask with the bit for each of the given categories' ordinals set.
+     */
+    static int getCategoryMask(final EnumSet<MobCategory> categories) {
+        int out = 0;
+        for (final MobCategory category : categories) out |= 1 << category.ordinal();
+        return out;
+    }
+
+    static long getChunkKey(final int chunkX, final int chunkZ) {
+        return ((long) chunkX & 0xFFFFFFFFL) | (((long) chunkZ & 0xFFFFFFFFL) << 32); // same as ChunkPos
+    }
+
+    // ===================================================================================
+    // Private
+
+    private void increment(final long chunkKey, final MobCategory category, final int delta) {
+        int[] counts = this.countsByChunk.get(chunkKey);
+        if (counts == null) {
+            if (delta < 0) return;
+            counts = new int[CATEGORIES.length];
+            this.countsByChunk.put(chunkKey, counts);
+        }
+        counts[category.ordinal()] += delta;
+        if (delta < 0 && isEmpty(counts)) this.countsByChunk.remove(chunkKey); // so unloaded chunks don't pile up
+    }
+
+    private static boolean isEmpty(final int[] counts) {
+        for (final int count : counts) {
+            if (count > 0) return false;
+        }
+        return true;
+    }
+}
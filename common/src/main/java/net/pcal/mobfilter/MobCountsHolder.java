@@ -0,0 +1,10 @@
+package net.pcal.mobfilter;
+
+/**
+ * Implemented on ServerLevel by ServerLevelMixin, so that each level has its own MobCounts.  Cast any
+ * ServerLevel to this to get at it.
+ */
+public interface MobCountsHolder {
+
+    MobCounts mf_getMobCounts();
+}
@@ -0,0 +1,105 @@
+package net.pcal.mobfilter;
+
+import com.mojang.brigadier.CommandDispatcher;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.MinecraftServer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Implements the /mobfilter command.  The loader-specific code just needs to call register() when
+ * commands are being registered.
+ */
+public final class MobFilterCommands {
+
+    private static final Path CAPTURE_PATH = Path.of("logs", "mobfilter-capture.bin");
+
+    private MobFilterCommands() {}
+
+    public static void register(final CommandDispatcher<CommandSourceStack> dispatcher, final Path configDirPath) {
+        dispatcher.register(Commands.literal("mobfilter")
+                .requires(Commands.hasPermission(Commands.LEVEL_GAMEMASTERS))
+                .then(Commands.literal("reload").executes(ctx -> reload(ctx.getSource(), configDirPath)))
+                .then(Commands.literal("stats").executes(ctx -> stats(ctx.getSource()))
+                        .then(Commands.literal("reset").executes(ctx -> resetStats(ctx.getSource()))))
+                .then(Commands.literal("capture")
+                        .then(Commands.literal("start").executes(ctx -> startCapture(ctx.getSource())))
+                        .then(Commands.literal("stop").executes(ctx -> stopCapture(ctx.getSource())))));
+    }
+
+    /**
+     * Kick off a reload in the background and report back in chat when it's done.
+     */
+    private static int reload(final CommandSourceStack source, final Path configDirPath) {
+        source.sendSuccess(() -> Component.literal("[MobFilter] Reloading configuration..."), true);
+        final MinecraftServer server = source.getServer();
+        ConfigService.get().reloadConfig(configDirPath).thenAccept(error -> server.execute(() -> {
+            if (error == null) {
+                source.sendSuccess(() -> Component.literal("[MobFilter] Configuration reloaded"), true);
+            } else {
+                source.sendFailure(Component.literal("[MobFilter] Reload failed, previous configuration is still active: " + error));
+            }
+        }));
+        return 1;
+    }
+
+    /**
+     * Print the rule stats in chat.
+     */
+    private static int stats(final CommandSourceStack source) {
+        final RuleStats stats = ConfigService.get().getStats();
+        if (stats == null) {
+            source.sendFailure(Component.literal("[MobFilter] Stats are off.  Add \"stats\": true to mobfilter.json5 to turn them on"));
+            return 0;
+        }
+        final long nanosPerTick = source.getServer().tickRateManager().nanosecondsPerTick();
+        for (final String line : stats.report(nanosPerTick)) {
+            source.sendSuccess(() -> Component.literal("[MobFilter] " + line), false);
+        }
+        return 1;
+    }
+
+    /**
+     * Zero the rule stats.
+     */
+    private static int resetStats(final CommandSourceStack source) {
+        final RuleStats stats = ConfigService.get().getStats();
+        if (stats == null) {
+            source.sendFailure(Component.literal("[MobFilter] Stats are off.  Add \"stats\": true to mobfilter.json5 to turn them on"));
+            return 0;
+        }
+        stats.reset();
+        source.sendSuccess(() -> Component.literal("[MobFilter] Stats reset"), true);
+        return 1;
+    }
+
+    /**
+     * Start recording spawn attempts for offline replay.
+     */
+    private static int startCapture(final CommandSourceStack source) {
+        try {
+            MixinService.get().startCapture(CAPTURE_PATH);
+        } catch (IOException e) {
+            source.sendFailure(Component.literal("[MobFilter] Unable to start capture: " + e.getMessage()));
+            return 0;
+        }
+        source.sendSuccess(() -> Component.literal("[MobFilter] Capturing spawn attempts to " + CAPTURE_PATH), true);
+        return 1;
+    }
+
+    /**
+     * Stop recording spawn attempts.
+     */
+    private static int stopCapture(final CommandSourceStack source) {
+        final long count = MixinService.get().stopCapture();
+        if (count < 0) {
+            source.sendFailure(Component.literal("[MobFilter] No capture is running"));
+            return 0;
+        }
+        source.sendSuccess(() -> Component.literal("[MobFilter] Captured " + count + " spawn attempts to " + CAPTURE_PATH), true);
+        return 1;
+    }
+}
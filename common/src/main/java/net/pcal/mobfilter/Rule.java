@@ -4,18 +4,49 @@ import java.util.List;
 
 import static java.util.Objects.requireNonNull;
 import static net.pcal.mobfilter.Rule.RuleAction.ALLOW_SPAWN;
+import static net.pcal.mobfilter.Rule.RuleAction.THROTTLE;
 
 /**
- * One rule to be evaluated in the filter chain.
+ * One rule to be evaluated in the filter chain.  The ordinal is the rule's position in the Config; it's
+ * assigned by Config.Builder and carried over to the specialized copies we make when compiling the rules,
+ * so that stats can be attributed to the rule the user actually wrote.
+ *
+ * THROTTLE rules have a Throttle, which is shared by all of the copies.  When one matches, it denies the
+ * spawn if the throttle is out of tokens, and otherwise has no opinion, so evaluation continues with the
+ * next rule.  The token isn't taken here; ConfigService takes it once the spawn has actually been allowed,
+ * so that spawns a later rule denies don't use up the throttle.
  */
 record Rule(String name,
             List<RuleCheck> checks,
-            RuleAction action) {
+            RuleAction action,
+            int ordinal,
+            Throttle throttle) {
 
     Rule {
         requireNonNull(name);
         requireNonNull(checks);
         requireNonNull(action);
+        if ((action == THROTTLE) != (throttle != null)) {
+            throw new IllegalArgumentException("throttle settings must be given if and only if the action is THROTTLE on " + name);
+        }
+    }
+
+    Rule(String name, List<RuleCheck> checks, RuleAction action) {
+        this(name, checks, action, -1, null);
+    }
+
+    /**
+     * @return a copy of this rule with different checks.
+     */
+    Rule withChecks(List<RuleCheck> checks) {
+        return new Rule(this.name, checks, this.action, this.ordinal, this.throttle);
+    }
+
+    /**
+     * @return a copy of this rule with a different ordinal.
+     */
+    Rule withOrdinal(int ordinal) {
+        return new Rule(this.name, this.checks, this.action, ordinal, this.throttle);
     }
 
     /**
@@ -23,18 +54,50 @@ record Rule(String name,
      * the rule didn't match).
      */
     public Boolean isSpawnAllowed(final SpawnAttempt att) {
-        for (final RuleCheck check : checks) {
-            if (!check.isMatch(att)) return null;
-        }
+        if (!isMatch(att)) return null;
+        if (this.action == THROTTLE) return this.throttle.hasToken(att) ? null : Boolean.FALSE;
         return this.action == ALLOW_SPAWN;
     }
 
+    /**
+     * Return whether all of the rule's checks match the spawn attempt.
+     */
+    public boolean isMatch(final SpawnAttempt att) {
+        for (int i = 0; i < checks.size(); i++) { // no iterator, this is the hot path
+            if (!checks.get(i).isMatch(att)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Return whether evaluating this rule twice against the same spawn attempt is guaranteed to give the same
+     * answer.  Rules with a RandomCheck are not, and neither are THROTTLE rules, so they can't be safely
+     * evaluated ahead of the real spawn.
+     */
+    public boolean isDeterministic() {
+        if (this.action == THROTTLE) return false;
+        for (int i = 0; i < checks.size(); i++) {
+            if (checks.get(i) instanceof RuleCheck.RandomCheck) return false;
+        }
+        return true;
+    }
+
     public String getName() {
         return this.name;
     }
 
+    /**
+     * Only what the user wrote; the ordinal is ours.
+     */
+    @Override
+    public String toString() {
+        return "Rule[name=" + this.name + ", checks=" + this.checks + ", action=" + this.action +
+                (this.throttle != null ? ", throttle=" + this.throttle : "") + "]";
+    }
+
     public enum RuleAction {
         ALLOW_SPAWN,
-        DISALLOW_SPAWN
+        DISALLOW_SPAWN,
+        THROTTLE
     }
 }
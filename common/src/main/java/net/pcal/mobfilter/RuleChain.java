@@ -0,0 +1,244 @@
+package net.pcal.mobfilter;
+
+import com.google.common.collect.ImmutableList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.pcal.mobfilter.RuleCheck.BlockPosCheck;
+import net.pcal.mobfilter.RuleCheck.TickScopedCheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * An ordered list of rules with a spatial index over the ones that only apply inside a box.
+ *
+ * A rule is 'boxed' if its blockX and blockZ checks confine it to at most MAX_BOX_CHUNKS chunks.  We bucket
+ * the boxed rules by chunk, so a spawn only needs to look at the boxed rules whose boxes overlap its chunk,
+ * plus all the unboxed rules.  Both are kept as sorted positions in the rule list, so merging them gives
+ * the rules in their original order and first-match semantics are unchanged.  The boxed rules still have
+ * their BlockPosChecks; the chunk grid is only a coarse filter.
+ *
+ * RuleIndex builds one of these for every entity type, often with the same boxed rules, so the chunk grids
+ * are shared between chains that have the same boxed rules.
+ *
+ * Each rule also has a tick-folded copy without its TickScopedChecks, for when LevelRules has already
+ * found that they all pass this tick.
+ *
+ * We also remember where the first rule that isn't deterministic is, since the early veto has to stop there,
+ * and number the THROTTLE rules so that a decision can keep track of the ones it matched in a bitmask.
+ */
+final class RuleChain {
+
+    static final int END = Integer.MAX_VALUE;
+    static final int MAX_TRACKED_THROTTLES = Long.SIZE;
+
+    private static final int MAX_BOX_CHUNKS = 4096;
+    private static final int[] NO_RULES = new int[0];
+
+    private final List<Rule> rules;
+    private final List<Rule> tickFoldedRules;
+    private final int[] unboxedPositions;
+    private final int[] boxedPositions;
+    private final int[] allBoxed; // every index into boxedPositions, for spawns without a position
+    private final Long2ObjectMap<int[]> grid; // chunk -> indexes into boxedPositions, or null if nothing is boxed
+    private final int firstNondeterministic;
+    private final int[] throttleIndexes; // position -> index into throttlePositions, or -1
+    private final int[] throttlePositions;
+
+    private RuleChain(final List<Rule> rules, final int[] unboxedPositions, final int[] boxedPositions, final Long2ObjectMap<int[]> grid) {
+        this.rules = requireNonNull(rules);
+        this.tickFoldedRules = foldTickScopedChecks(rules);
+        this.unboxedPositions = requireNonNull(unboxedPositions);
+        this.boxedPositions = requireNonNull(boxedPositions);
+        this.allBoxed = new int[boxedPositions.length];
+        Arrays.setAll(this.allBoxed, i -> i);
+        this.grid = grid;
+        this.firstNondeterministic = findFirstNondeterministic(rules);
+        this.throttleIndexes = new int[rules.size()];
+        final IntArrayList throttles = new IntArrayList();
+        for (int i = 0; i < rules.size(); i++) {
+            final boolean isTracked = rules.get(i).throttle() != null && throttles.size() < MAX_TRACKED_THROTTLES;
+            this.throttleIndexes[i] = isTracked ? throttles.size() : -1;
+            if (isTracked) throttles.add(i);
+        }
+        this.throttlePositions = throttles.toIntArray();
+    }
+
+    /**
+     * Build a chain over the given rules.
+     */
+    static RuleChain build(final List<Rule> rules) {
+        return build(rules, new HashMap<>());
+    }
+
+    /**
+     * Build a chain over the given rules, reusing a chunk grid from gridCache if one has already been built
+     * for the same boxed rules.
+     */
+    static RuleChain build(final List<Rule> rules, final Map<List<Integer>, Long2ObjectMap<int[]>> gridCache) {
+        final IntArrayList unboxed = new IntArrayList();
+        final IntArrayList boxed = new IntArrayList();
+        final List<int[]> boxes = new ArrayList<>();
+        final List<Integer> boxedOrdinals = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++) {
+            final int[] box = getChunkBox(rules.get(i));
+            if (box == null) {
+                unboxed.add(i);
+            } else {
+                boxed.add(i);
+                boxes.add(box);
+                boxedOrdinals.add(rules.get(i).ordinal());
+            }
+        }
+        if (boxed.isEmpty()) return new RuleChain(rules, unboxed.toIntArray(), NO_RULES, null);
+        final Long2ObjectMap<int[]> grid = gridCache.computeIfAbsent(boxedOrdinals, k -> buildGrid(boxes));
+        return new RuleChain(rules, unboxed.toIntArray(), boxed.toIntArray(), grid);
+    }
+
+    /**
+     * @return all of the rules in the chain.
+     */
+    List<Rule> getRules() {
+        return this.rules;
+    }
+
+    Rule get(final int position) {
+        return this.rules.get(position);
+    }
+
+    /**
+     * @return the rule at the given position without its TickScopedChecks.  Only valid when they are all
+     * known to pass.
+     */
+    Rule getTickFolded(final int position) {
+        return this.tickFoldedRules.get(position);
+    }
+
+    /**
+     * @return the positions of the rules that apply everywhere.  Sorted.
+     */
+    int[] getUnboxedPositions() {
+        return this.unboxedPositions;
+    }
+
+    /**
+     * @return the boxed rules that might apply at the given position, as indexes to pass to getBoxedPosition().
+     * Sorted.  If the position isn't known, that's all of them, since their BlockPosChecks will fall back to
+     * the default result.
+     */
+    int[] getBoxedAt(final BlockPos pos) {
+        if (pos == null) return this.allBoxed;
+        if (this.grid == null) return NO_RULES;
+        final int[] out = this.grid.get(chunkKey(pos.getX() >> 4, pos.getZ() >> 4));
+        return out != null ? out : NO_RULES;
+    }
+
+    int getBoxedPosition(final int boxedIndex) {
+        return this.boxedPositions[boxedIndex];
+    }
+
+    /**
+     * @return the position of the first rule that isn't deterministic (see Rule.isDeterministic()), or END if
+     * they all are.
+     */
+    int getFirstNondeterministicPosition() {
+        return this.firstNondeterministic;
+    }
+
+    /**
+     * @return the index of the THROTTLE rule at the given position among the chain's THROTTLE rules, or -1 if
+     * it isn't one or there are more than MAX_TRACKED_THROTTLES ahead of it.
+     */
+    int getThrottleIndex(final int position) {
+        return this.throttleIndexes[position];
+    }
+
+    /**
+     * @return the position of the THROTTLE rule with the given index (see getThrottleIndex()).
+     */
+    int getThrottlePosition(final int throttleIndex) {
+        return this.throttlePositions[throttleIndex];
+    }
+
+    // ===================================================================================
+    // Private
+
+    private static int findFirstNondeterministic(final List<Rule> rules) {
+        for (int i = 0; i < rules.size(); i++) {
+            if (!rules.get(i).isDeterministic()) return i;
+        }
+        return END;
+    }
+
+    private static List<Rule> foldTickScopedChecks(final List<Rule> rules) {
+        final ImmutableList.Builder<Rule> out = ImmutableList.builder();
+        for (final Rule rule : rules) {
+            if (rule.checks().stream().noneMatch(TickScopedCheck.class::isInstance)) {
+                out.add(rule);
+            } else {
+                final List<RuleCheck> residual = rule.checks().stream().filter(c -> !(c instanceof TickScopedCheck)).toList();
+                out.add(rule.withChecks(residual));
+            }
+        }
+        return out.build();
+    }
+
+    private static Long2ObjectMap<int[]> buildGrid(final List<int[]> boxes) {
+        final Long2ObjectOpenHashMap<IntArrayList> cells = new Long2ObjectOpenHashMap<>();
+        for (int k = 0; k < boxes.size(); k++) {
+            final int[] box = boxes.get(k);
+            for (int cx = box[0]; cx <= box[1]; cx++) {
+                for (int cz = box[2]; cz <= box[3]; cz++) {
+                    cells.computeIfAbsent(chunkKey(cx, cz), key -> new IntArrayList()).add(k);
+                }
+            }
+        }
+        final Long2ObjectOpenHashMap<int[]> grid = new Long2ObjectOpenHashMap<>(cells.size());
+        for (final Long2ObjectMap.Entry<IntArrayList> cell : cells.long2ObjectEntrySet()) {
+            grid.put(cell.getLongKey(), cell.getValue().toIntArray());
+        }
+        grid.trim();
+        return grid;
+    }
+
+    /**
+     * @return {minChunkX, maxChunkX, minChunkZ, maxChunkZ} if the rule only applies inside a box of at most
+     * MAX_BOX_CHUNKS chunks, otherwise null.
+     */
+    private static int[] getChunkBox(final Rule rule) {
+        int minX = Integer.MIN_VALUE, maxX = Integer.MAX_VALUE, minZ = Integer.MIN_VALUE, maxZ = Integer.MAX_VALUE;
+        for (final RuleCheck check : rule.checks()) {
+            if (check instanceof BlockPosCheck bpc) {
+                if (bpc.axis() == Direction.Axis.X) {
+                    minX = Math.max(minX, bpc.min());
+                    maxX = Math.min(maxX, bpc.max());
+                } else if (bpc.axis() == Direction.Axis.Z) {
+                    minZ = Math.max(minZ, bpc.min());
+                    maxZ = Math.min(maxZ, bpc.max());
+                }
+            }
+        }
+        if (minX > maxX || minZ > maxZ) return new int[]{0, -1, 0, -1}; // can never match; boxed but in no chunks
+        final long chunks = ((long) (maxX >> 4) - (minX >> 4) + 1) * ((long) (maxZ >> 4) - (minZ >> 4) + 1);
+        if (chunks > MAX_BOX_CHUNKS) return null;
+        return new int[]{minX >> 4, maxX >> 4, minZ >> 4, maxZ >> 4};
+    }
+
+    private static long chunkKey(final int chunkX, final int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public String toString() {
+        return "RuleChain[rules=" + this.rules + ", unboxed=" + Arrays.toString(this.unboxedPositions) +
+                ", boxed=" + Arrays.toString(this.boxedPositions) + "]";
+    }
+}
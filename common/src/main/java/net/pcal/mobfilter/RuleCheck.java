@@ -2,13 +2,19 @@ package net.pcal.mobfilter;
 
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
+import net.minecraft.core.Holder;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.resources.Identifier;
 import net.minecraft.world.Difficulty;
 import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.entity.MobCategory;
 import net.minecraft.world.level.LightLayer;
 import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.Block;
 
+import java.util.BitSet;
 import java.util.EnumSet;
 
 /**
@@ -21,6 +27,32 @@ interface RuleCheck {
      */
     boolean isMatch(SpawnAttempt att);
 
+    /**
+     * A check that was compiled from a check in the config into something faster to evaluate.
+     */
+    interface CompiledCheck extends RuleCheck {
+
+        /**
+         * @return the check this was compiled from.
+         */
+        RuleCheck source();
+    }
+
+    /**
+     * A check whose answer depends only on level state that changes at most once per tick.  LevelRules
+     * answers these once per tick so spawns don't have to.
+     */
+    interface TickScopedCheck extends RuleCheck {
+
+        /**
+         * @param dayTime the level's day time this tick.
+         * @param isThundering whether the level is thundering this tick.
+         * @return whether the check passes for every spawn in the level during the current tick, or null if
+         * the answer depends on the spawn.
+         */
+        Boolean isMatch(long dayTime, boolean isThundering);
+    }
+
     // ======================================================================
     // Implementation classes
 
@@ -29,11 +61,11 @@ interface RuleCheck {
         public boolean isMatch(final SpawnAttempt att) {
             final Identifier dimensionId = att.getDimensionId();
             if (dimensionId == null) {
-                att.getLogger().debug(() -> "[MobFilter] DimensionCheck: dimension ID could not be determined for " + att.getEntityType() + ", assuming match");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] DimensionCheck: dimension ID could not be determined for " + att.getEntityType() + ", assuming match");
                 return true;
             } else {
                 final boolean isMatch = this.dimensionMatcher.isMatch(dimensionId);
-                att.getLogger().trace(() -> "[MobFilter] DimensionCheck " + dimensionId + " in " + dimensionMatcher + " " + isMatch);
+                if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] DimensionCheck " + dimensionId + " in " + dimensionMatcher + " " + isMatch);
                 return isMatch;
             }
         }
@@ -44,11 +76,11 @@ interface RuleCheck {
         public boolean isMatch(final SpawnAttempt att) {
             final Identifier biomeId = att.getBiomeId();
             if (biomeId == null) {
-                att.getLogger().debug(() -> "[MobFilter] BiomeCheck: biome ID could not be determined for " + att.getEntityType() + ", assuming match");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] BiomeCheck: biome ID could not be determined for " + att.getEntityType() + ", assuming match");
                 return true;
             } else {
                 final boolean isMatch = this.biomeMatcher.isMatch(biomeId);
-                att.getLogger().trace(() -> "[MobFilter] BiomeCheck " + biomeId + " in " + biomeMatcher + " " + isMatch);
+                if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] BiomeCheck " + biomeId + " in " + biomeMatcher + " " + isMatch);
                 return isMatch;
             }
         }
@@ -60,12 +92,12 @@ interface RuleCheck {
             final EntitySpawnReason spawnReason = att.getSpawnReason();
             final boolean isMatch;
             if (spawnReason == null) {
-                att.getLogger().debug(() -> "[MobFilter] SpawnReasonCheck: reason could not be determined for " + att.getEntityType() + ", assuming match");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] SpawnReasonCheck: reason could not be determined for " + att.getEntityType() + ", assuming match");
                 isMatch = ConfigService.get().getDefaultRuleCheckResult();
             } else {
                 isMatch = this.reasons.contains(spawnReason);
             }
-            att.getLogger().trace(() -> "[MobFilter] SpawnReasonCheck: " + this.reasons + " " + spawnReason + " " + isMatch + " " + isMatch);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] SpawnReasonCheck: " + this.reasons + " " + spawnReason + " " + isMatch + " " + isMatch);
             return isMatch;
         }
     }
@@ -76,12 +108,12 @@ interface RuleCheck {
             final MobCategory mobCategory = att.getMobCategory();
             final boolean isMatch;
             if (mobCategory == null) {
-                att.getLogger().debug(() -> "[MobFilter] CategoryCheck: category could not be determined for " + att.getEntityType() + ", assuming match");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] CategoryCheck: category could not be determined for " + att.getEntityType() + ", assuming match");
                 isMatch = ConfigService.get().getDefaultRuleCheckResult();
             } else {
                 isMatch = this.categories.contains(mobCategory);
             }
-            att.getLogger().trace(() -> "[MobFilter] CategoryCheck: " + this.categories + " " + mobCategory + " " + isMatch + " " + isMatch);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] CategoryCheck: " + this.categories + " " + mobCategory + " " + isMatch + " " + isMatch);
             return isMatch;
         }
     }
@@ -92,47 +124,103 @@ interface RuleCheck {
             final Identifier entityId = att.getEntityId();
             final boolean isMatch;
             if (entityId == null) {
-                att.getLogger().debug(() -> "[MobFilter] EntityIdCheck: entity ID could not be determined for " + att.getEntityType() + ", assuming match");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] EntityIdCheck: entity ID could not be determined for " + att.getEntityType() + ", assuming match");
                 isMatch = ConfigService.get().getDefaultRuleCheckResult();
             } else {
                 isMatch = this.entityMatcher.isMatch(entityId);
             }
-            att.getLogger().trace(() -> "[MobFilter] EntityNameCheck: " + entityId + " in " + entityMatcher + " " + isMatch);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] EntityNameCheck: " + entityId + " in " + entityMatcher + " " + isMatch);
             return isMatch;
         }
     }
 
+    /**
+     * EntityIdCheck compiled to the raw ids of the matching entity types.
+     */
+    record EntityTypeSetCheck(BitSet entityTypes, EntityIdCheck source) implements CompiledCheck {
+        @Override
+        public boolean isMatch(final SpawnAttempt att) {
+            final EntityType<?> entityType = att.getEntityType();
+            final int id = entityType == null ? -1 : BuiltInRegistries.ENTITY_TYPE.getId(entityType);
+            if (id < 0) return this.source.isMatch(att);
+            final boolean isMatch = this.entityTypes.get(id);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] EntityTypeSetCheck: " + entityType + " in " + source.entityMatcher() + " " + isMatch);
+            return isMatch;
+        }
+
+        @Override
+        public String toString() {
+            return this.source.toString();
+        }
+    }
+
     record BlockIdCheck(IdMatcher blockMatcher) implements RuleCheck {
         @Override
         public boolean isMatch(final SpawnAttempt att) {
             final Identifier blockId = att.getBlockId();
             final boolean isMatch;
             if (blockId == null) {
-                att.getLogger().debug(() -> "[MobFilter] BlockIdCheck: block ID could not be determined for " + att.getEntityType() + ", assuming match");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] BlockIdCheck: block ID could not be determined for " + att.getEntityType() + ", assuming match");
                 isMatch = ConfigService.get().getDefaultRuleCheckResult();
             } else {
                 isMatch = this.blockMatcher.isMatch(blockId);
             }
-            att.getLogger().trace(() -> "[MobFilter] BlockIdCheck: " + blockId + " in " + blockMatcher + " " + isMatch);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] BlockIdCheck: " + blockId + " in " + blockMatcher + " " + isMatch);
             return isMatch;
         }
     }
 
+    /**
+     * BlockIdCheck compiled to the raw ids of the matching blocks.
+     */
+    record BlockSetCheck(BitSet blocks, BlockIdCheck source) implements CompiledCheck {
+        @Override
+        public boolean isMatch(final SpawnAttempt att) {
+            final Block block = att.getBlock();
+            final int id = block == null ? -1 : BuiltInRegistries.BLOCK.getId(block);
+            if (id < 0) return this.source.isMatch(att);
+            final boolean isMatch = this.blocks.get(id);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] BlockSetCheck: " + block + " in " + source.blockMatcher() + " " + isMatch);
+            return isMatch;
+        }
+
+        @Override
+        public String toString() {
+            return this.source.toString();
+        }
+    }
+
+    /**
+     * BiomeCheck compiled to the raw ids of the matching biomes in one level's biome registry.
+     */
+    record BiomeSetCheck(BitSet biomes, Registry<Biome> biomeRegistry, BiomeCheck source) implements CompiledCheck {
+        @Override
+        public boolean isMatch(final SpawnAttempt att) {
+            final Holder<Biome> biome = att.getBiomeHolder();
+            final int id = biome == null ? -1 : this.biomeRegistry.getId(biome.value());
+            if (id < 0) return this.source.isMatch(att);
+            final boolean isMatch = this.biomes.get(id);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] BiomeSetCheck: " + biome + " in " + source.biomeMatcher() + " " + isMatch);
+            return isMatch;
+        }
+
+        @Override
+        public String toString() {
+            return this.source.toString();
+        }
+    }
+
     record BlockPosCheck(Direction.Axis axis, int min, int max) implements RuleCheck {
         @Override
         public boolean isMatch(final SpawnAttempt att) {
             final BlockPos blockPos = att.getBlockPos();
-            final Integer val;
-            final boolean isMatch;
             if (blockPos == null) {
-                att.getLogger().debug(() -> "[MobFilter] BlockPosCheck: no block position, assuming match");
-                isMatch = ConfigService.get().getDefaultRuleCheckResult();
-                val = null;
-            } else {
-                val = att.getBlockPos().get(this.axis);
-                isMatch = min <= val && val <= max;
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] BlockPosCheck: no block position, assuming match");
+                return ConfigService.get().getDefaultRuleCheckResult();
             }
-            att.getLogger().trace(() -> "[MobFilter] BlockPosCheck: " + axis + " " + min + " <= " + val + " <= " + max + " " + isMatch);
+            final int val = blockPos.get(this.axis);
+            final boolean isMatch = min <= val && val <= max;
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] BlockPosCheck: " + axis + " " + min + " <= " + val + " <= " + max + " " + isMatch);
             return isMatch;
         }
     }
@@ -143,12 +231,12 @@ interface RuleCheck {
             final Integer val = att.getMaxLocalRawBrightness(att.getBlockPos());
             final boolean isMatch;
             if (val == null) {
-                att.getLogger().debug(() -> "[MobFilter] LightLevelCheck: light level could not be determined, assuming match");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] LightLevelCheck: light level could not be determined, assuming match");
                 isMatch = ConfigService.get().getDefaultRuleCheckResult();
             } else {
                 isMatch = min <= val && val <= max;
             }
-            att.getLogger().trace(() -> "[MobFilter] LightLevelCheck: " + min + " <= " + val + " <= " + max + " " + isMatch);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] LightLevelCheck: " + min + " <= " + val + " <= " + max + " " + isMatch);
             return isMatch;
         }
     }
@@ -159,12 +247,12 @@ interface RuleCheck {
             final Integer val = att.getBrightness(LightLayer.SKY, att.getBlockPos());
             final boolean isMatch;
             if (val == null) {
-                att.getLogger().debug(() -> "[MobFilter] SkylightLevelCheck: skylight level could not be determined, assuming match");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] SkylightLevelCheck: skylight level could not be determined, assuming match");
                 isMatch = ConfigService.get().getDefaultRuleCheckResult();
             } else {
                 isMatch = min <= val && val <= max;
             }
-            att.getLogger().trace(() -> "[MobFilter] SkylightLevelCheck: " + min + " <= " + val + " <= " + max + " " + isMatch);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] SkylightLevelCheck: " + min + " <= " + val + " <= " + max + " " + isMatch);
             return isMatch;
         }
     }
@@ -175,12 +263,12 @@ interface RuleCheck {
             final Integer val = att.getMoonPhase();
             final boolean isMatch;
             if (val == null) {
-                att.getLogger().debug(() -> "[MobFilter] MoonPhaseCheck: moon phase could not be determined, assuming match");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] MoonPhaseCheck: moon phase could not be determined, assuming match");
                 isMatch = ConfigService.get().getDefaultRuleCheckResult();
             } else {
                 isMatch = matcher.isMatch(val);
             }
-            att.getLogger().trace(() -> "[MobFilter] MoonPhaseCheck: " + matcher + " contains " + val + " " + isMatch);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] MoonPhaseCheck: " + matcher + " contains " + val + " " + isMatch);
             return isMatch;
         }
     }
@@ -192,43 +280,60 @@ interface RuleCheck {
         SNOW
     }
 
-    record WeatherCheck(Matcher<WeatherType> matcher) implements RuleCheck {
+    record WeatherCheck(Matcher<WeatherType> matcher) implements TickScopedCheck {
         @Override
         public boolean isMatch(final SpawnAttempt att) {
-            final WeatherType weather = getWeatherType(att);
+            final WeatherType weather = att.getWeatherType();
             final boolean isMatch;
             if (weather == null) {
-                att.getLogger().debug(() -> "[MobFilter] WeatherCheck: weather could not be determined, assuming match");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] WeatherCheck: weather could not be determined, assuming match");
                 isMatch = ConfigService.get().getDefaultRuleCheckResult();
             } else {
                 isMatch = matcher.isMatch(weather);
             }
-            att.getLogger().trace(() -> "[MobFilter] WeatherCheck: " + matcher + " contains " + weather + ": " + isMatch);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] WeatherCheck: " + matcher + " contains " + weather + ": " + isMatch);
             return isMatch;
         }
 
-        private static WeatherType getWeatherType(final SpawnAttempt att) {
+        /**
+         * Thunder is level-wide, so during a thunderstorm we know the answer for the whole level.  Otherwise
+         * it's rain, snow or clear depending on the position, unless the matcher gives the same answer for
+         * all three.
+         */
+        @Override
+        public Boolean isMatch(final long dayTime, final boolean isThundering) {
+            if (isThundering) return matcher.isMatch(WeatherType.THUNDER);
+            final boolean isClear = matcher.isMatch(WeatherType.CLEAR);
+            if (isClear == matcher.isMatch(WeatherType.RAIN) && isClear == matcher.isMatch(WeatherType.SNOW)) return isClear;
+            return null;
+        }
+
+        /**
+         * Work out the weather at the spawn position.  SpawnAttempt implementations call this so they can
+         * remember the answer.
+         */
+        static WeatherType computeWeatherType(final SpawnAttempt att) {
             final BlockPos blockpos = att.getBlockPos();
             if (blockpos == null) {
-                att.getLogger().debug(() -> "[MobFilter] WeatherCheck: no block position");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] WeatherCheck: no block position");
                 return null;
             }
             final Boolean isThundering = att.isThundering();
             if (isThundering == null) {
-                att.getLogger().debug(() -> "[MobFilter] WeatherCheck: isThundering could not be determined");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] WeatherCheck: isThundering could not be determined");
                 return null;
             } else if (isThundering) {
                 return WeatherType.THUNDER;
             }
             final Boolean isRaining = att.isRainingAt(att.getBlockPos());
             if (isRaining == null) {
-                att.getLogger().debug(() -> "[MobFilter] WeatherCheck: isRaining could not be determined");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] WeatherCheck: isRaining could not be determined");
                 return null;
             } else if (isRaining) {
                 // Check for snow
                 final Biome biome = att.getBiome(att.getBlockPos());
                 if (biome == null) {
-                    att.getLogger().debug(() -> "[MobFilter] WeatherCheck: biome could not be determined");
+                    if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] WeatherCheck: biome could not be determined");
                     return null;
                 } else if (biome.hasPrecipitation() && biome.coldEnoughToSnow(att.getBlockPos(), att.getBlockPos().getY())) {
                     return WeatherType.SNOW;
@@ -240,24 +345,30 @@ interface RuleCheck {
         }
     }
 
-    record TimeOfDayCheck(long min, long max) implements RuleCheck {
+    record TimeOfDayCheck(long min, long max) implements TickScopedCheck {
+        private static final long TICKS_PER_DAY = 24000;
+
         @Override
         public boolean isMatch(final SpawnAttempt att) {
             final Long dayTime = att.getDayTime();
-            final Long val;
-            final boolean isMatch;
             if (dayTime == null) {
-                att.getLogger().debug(() -> "[MobFilter] TimeOfDayCheck: day time could not be determined, assuming match");
-                isMatch = ConfigService.get().getDefaultRuleCheckResult();
-                val = null;
-            } else {
-                final long TICKS_PER_DAY = 24000;
-                val = dayTime % TICKS_PER_DAY; // apparently getDayTime() is same as getWorldTime()?
-                isMatch = min <= val && val <= max;
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] TimeOfDayCheck: day time could not be determined, assuming match");
+                return ConfigService.get().getDefaultRuleCheckResult();
             }
-            att.getLogger().trace(() -> "[MobFilter] TimeOfDayCheck: " + min + " <= " + val + " <= " + max + " " + isMatch);
+            final boolean isMatch = isMatch(dayTime);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] TimeOfDayCheck: " + min + " <= " + (dayTime % TICKS_PER_DAY) + " <= " + max + " " + isMatch);
             return isMatch;
         }
+
+        @Override
+        public Boolean isMatch(final long dayTime, final boolean isThundering) {
+            return isMatch(dayTime);
+        }
+
+        private boolean isMatch(final long dayTime) {
+            final long val = dayTime % TICKS_PER_DAY; // apparently getDayTime() is same as getWorldTime()?
+            return min <= val && val <= max;
+        }
     }
 
     record RandomCheck(double odds) implements RuleCheck {
@@ -265,7 +376,7 @@ interface RuleCheck {
         public boolean isMatch(SpawnAttempt att) {
             double r = Math.random();
             boolean isMatch = r < odds;
-            att.getLogger().trace(() -> "[MobFilter] RadomCheck: " + r + " < " + odds + " " + isMatch);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] RadomCheck: " + r + " < " + odds + " " + isMatch);
             return isMatch;
         }
     }
@@ -276,19 +387,56 @@ interface RuleCheck {
             final Difficulty val = att.getDifficulty();
             final boolean isMatch;
             if (val == null) {
-                att.getLogger().debug(() -> "[MobFilter] DifficultyCheck: difficulty could not be determined, assuming match");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] DifficultyCheck: difficulty could not be determined, assuming match");
                 isMatch = ConfigService.get().getDefaultRuleCheckResult();
             } else {
                 isMatch = matcher.isMatch(val);
             }
-            att.getLogger().trace(() -> "[MobFilter] DifficultyCheck: " + matcher + " contains " + val + ": " + isMatch);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] DifficultyCheck: " + matcher + " contains " + val + ": " + isMatch);
             return isMatch;
         }
     }
 
     /**
-     * TODO this one really could be evaluated statically at world initialization.  But the code doesn't have support
-     * for anything like that right now.
+     * How many mobs of the given categories are within chunkRadius chunks of the spawn, counted from the
+     * level's MobCounts.  The mob being spawned isn't counted.
+     */
+    /**
+     * categoryMask has a bit set for the ordinal of each of the categories, so that counting doesn't have to
+     * iterate the EnumSet.
+     */
+    record NearbyCountCheck(EnumSet<MobCategory> categories, int chunkRadius, int min, int max, int categoryMask) implements RuleCheck {
+
+        NearbyCountCheck(final EnumSet<MobCategory> categories, final int chunkRadius, final int min, final int max) {
+            this(categories, chunkRadius, min, max, MobCounts.getCategoryMask(categories));
+        }
+
+        @Override
+        public boolean isMatch(final SpawnAttempt att) {
+            final Integer val = att.getNearbyCount(this.categoryMask, this.chunkRadius);
+            final boolean isMatch;
+            if (val == null) {
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] NearbyCountCheck: nearby count could not be determined, assuming match");
+                isMatch = ConfigService.get().getDefaultRuleCheckResult();
+            } else {
+                isMatch = min <= val && val <= max;
+            }
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] NearbyCountCheck: " + min + " <= " + val + " " + categories + " within " + chunkRadius + " <= " + max + " " + isMatch);
+            return isMatch;
+        }
+
+        /**
+         * The mask is just another form of the categories.
+         */
+        @Override
+        public String toString() {
+            return "NearbyCountCheck[categories=" + this.categories + ", chunkRadius=" + this.chunkRadius +
+                    ", min=" + this.min + ", max=" + this.max + "]";
+        }
+    }
+
+    /**
+     * LevelRules folds this away for each level, so it's only evaluated here when there's no level to fold it for.
      */
     record WorldNameCheck(Matcher<String> worldNames) implements RuleCheck {
 
@@ -297,12 +445,12 @@ interface RuleCheck {
             final String worldName = att.getWorldName();
             final boolean isMatch;
             if (worldName == null) {
-                att.getLogger().debug(() -> "[MobFilter] WorldNameCheck: world name could not be determined for " + att.getEntityType() + ", assuming match");
+                if (att.getLogger().isDebugEnabled()) att.getLogger().debug(() -> "[MobFilter] WorldNameCheck: world name could not be determined for " + att.getEntityType() + ", assuming match");
                 isMatch = ConfigService.get().getDefaultRuleCheckResult();
             } else {
                 isMatch = worldNames.isMatch(worldName);
             }
-            att.getLogger().trace(() -> "[MobFilter] WorldNameCheck: " + worldName + " in " + worldNames + " " + isMatch);
+            if (att.getLogger().isTraceEnabled()) att.getLogger().trace(() -> "[MobFilter] WorldNameCheck: " + worldName + " in " + worldNames + " " + isMatch);
             return isMatch;
         }
     }
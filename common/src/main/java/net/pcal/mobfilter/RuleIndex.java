@@ -0,0 +1,237 @@
+package net.pcal.mobfilter;
+
+import com.google.common.collect.ImmutableList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.util.random.Weighted;
+import net.minecraft.util.random.WeightedList;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.level.biome.MobSpawnSettings.SpawnerData;
+import net.pcal.mobfilter.RuleCheck.CategoryCheck;
+import net.pcal.mobfilter.RuleCheck.BlockIdCheck;
+import net.pcal.mobfilter.RuleCheck.BlockSetCheck;
+import net.pcal.mobfilter.RuleCheck.EntityIdCheck;
+import net.pcal.mobfilter.RuleCheck.EntityTypeSetCheck;
+import net.pcal.mobfilter.RuleCheck.SpawnReasonCheck;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static java.util.Objects.requireNonNull;
+import static net.pcal.mobfilter.Rule.RuleAction.ALLOW_SPAWN;
+import static net.pcal.mobfilter.Rule.RuleAction.THROTTLE;
+
+/**
+ * The rule list, compiled into per-EntityType sub-lists so that a spawn only has to look at the
+ * rules that could possibly match it.  Built once the entity registry is frozen.
+ *
+ * We also partially evaluate each sub-list for every spawn reason.  For a lot of configs (and every
+ * mobfilter.simple config), the answer for a given (EntityType, EntitySpawnReason) is fixed, in which
+ * case it goes in a table and the rules never need to be evaluated at spawn time.
+ *
+ * Each sub-list is a RuleChain, so region rules are also indexed by chunk.  Entity and block id checks
+ * are compiled to bitsets over registry ids, so they never need to look up an Identifier.
+ *
+ * The NATURAL verdicts are also used to prune the spawner lists NaturalSpawner picks from; see
+ * getNaturalSpawners().
+ */
+final class RuleIndex {
+
+    static final byte VERDICT_DYNAMIC = 0;
+    static final byte VERDICT_ALLOW = 1;
+    static final byte VERDICT_DISALLOW = 2;
+
+    private static final EntitySpawnReason[] REASONS = EntitySpawnReason.values();
+    private static final int REASON_COLUMNS = REASONS.length + 1; // last column is for unknown reasons
+
+    private final RuleChain allRules;
+    private static final int NO_MATCH = -1;
+    private static final int DYNAMIC = -2;
+
+    private final RuleChain[] rulesByEntityType;
+    private final byte[] verdicts;
+    private final int[] verdictRules; // ordinal of the rule that decided each verdict, or -1
+
+    /**
+     * Spawner lists we've already pruned.  Weak so that lists from biomes and structures that go away (e.g.,
+     * on datapack reload) don't pile up.  Lists we didn't need to change map to UNCHANGED, since a value that
+     * refers to its own key would never be collected.
+     */
+    private static final WeightedList<SpawnerData> UNCHANGED = WeightedList.of();
+    private final Map<WeightedList<SpawnerData>, WeightedList<SpawnerData>> naturalSpawners = new WeakHashMap<>();
+
+    private RuleIndex(final RuleChain allRules, final RuleChain[] rulesByEntityType, final byte[] verdicts, final int[] verdictRules) {
+        this.allRules = requireNonNull(allRules);
+        this.rulesByEntityType = requireNonNull(rulesByEntityType);
+        this.verdicts = requireNonNull(verdicts);
+        this.verdictRules = requireNonNull(verdictRules);
+    }
+
+    /**
+     * Build an index over all registered entity types.  For each type, we keep (in order) the rules whose
+     * EntityIdChecks and CategoryChecks pass for that type, with those checks removed since they've already
+     * been answered.  Rules that fail one of them can never match the type and are dropped.
+     */
+    static RuleIndex build(final List<Rule> configRules) {
+        final List<Rule> rules = compile(configRules);
+        final Map<List<Integer>, Long2ObjectMap<int[]>> gridCache = new HashMap<>();
+        final RuleChain[] byType = new RuleChain[BuiltInRegistries.ENTITY_TYPE.size()];
+        final byte[] verdicts = new byte[byType.length * REASON_COLUMNS];
+        final int[] verdictRules = new int[verdicts.length];
+        for (final EntityType<?> entityType : BuiltInRegistries.ENTITY_TYPE) {
+            final int id = BuiltInRegistries.ENTITY_TYPE.getId(entityType);
+            if (id < 0 || id >= byType.length) continue;
+            final ImmutableList.Builder<Rule> typeRules = ImmutableList.builder();
+            for (final Rule rule : rules) {
+                final Rule specialized = specialize(rule, entityType, id);
+                if (specialized != null) typeRules.add(specialized);
+            }
+            final List<Rule> typeList = typeRules.build();
+            byType[id] = RuleChain.build(typeList, gridCache);
+            for (int r = 0; r < REASON_COLUMNS; r++) {
+                final int decider = findDecidingRule(typeList, r < REASONS.length ? REASONS[r] : null);
+                final int cell = id * REASON_COLUMNS + r;
+                if (decider == DYNAMIC) {
+                    verdicts[cell] = VERDICT_DYNAMIC;
+                    verdictRules[cell] = NO_MATCH;
+                } else if (decider == NO_MATCH) {
+                    verdicts[cell] = VERDICT_ALLOW;
+                    verdictRules[cell] = NO_MATCH;
+                } else {
+                    final Rule rule = typeList.get(decider);
+                    verdicts[cell] = rule.action() == ALLOW_SPAWN ? VERDICT_ALLOW : VERDICT_DISALLOW;
+                    verdictRules[cell] = rule.ordinal();
+                }
+            }
+        }
+        return new RuleIndex(RuleChain.build(rules, gridCache), byType, verdicts, verdictRules);
+    }
+
+    /**
+     * @return one of the VERDICT_ constants for the given entity type and spawn reason.
+     */
+    byte getVerdict(final EntityType<?> entityType, final EntitySpawnReason reason) {
+        if (entityType == null) return VERDICT_DYNAMIC;
+        final int id = BuiltInRegistries.ENTITY_TYPE.getId(entityType);
+        if (id < 0 || id >= this.rulesByEntityType.length) return VERDICT_DYNAMIC;
+        return this.verdicts[id * REASON_COLUMNS + (reason == null ? REASONS.length : reason.ordinal())];
+    }
+
+    /**
+     * @return the ordinal of the rule behind a static verdict, or -1 if no rule matched (or the verdict
+     * is dynamic).
+     */
+    int getVerdictRule(final EntityType<?> entityType, final EntitySpawnReason reason) {
+        if (entityType == null) return NO_MATCH;
+        final int id = BuiltInRegistries.ENTITY_TYPE.getId(entityType);
+        if (id < 0 || id >= this.rulesByEntityType.length) return NO_MATCH;
+        return this.verdictRules[id * REASON_COLUMNS + (reason == null ? REASONS.length : reason.ordinal())];
+    }
+
+    /**
+     * @return the rules to evaluate for the given entity type.  Falls back to the full chain for types we
+     * don't know about.
+     */
+    RuleChain getRules(final EntityType<?> entityType) {
+        if (entityType == null) return this.allRules;
+        final int id = BuiltInRegistries.ENTITY_TYPE.getId(entityType);
+        if (id < 0 || id >= this.rulesByEntityType.length) return this.allRules;
+        final RuleChain out = this.rulesByEntityType[id];
+        return out != null ? out : this.allRules;
+    }
+
+    /**
+     * @return the given spawner list minus the entries that the rules disallow for every NATURAL spawn, so
+     * that NaturalSpawner never spends a spawn attempt on them.  The list is returned as-is if nothing needed
+     * to be removed.  Server thread only.
+     */
+    WeightedList<SpawnerData> getNaturalSpawners(final WeightedList<SpawnerData> spawners) {
+        WeightedList<SpawnerData> out = this.naturalSpawners.get(spawners);
+        if (out == null) {
+            out = prune(spawners);
+            this.naturalSpawners.put(spawners, out);
+        }
+        return out == UNCHANGED ? spawners : out;
+    }
+
+    /**
+     * @return the spawners whose NATURAL verdict isn't DISALLOW, or UNCHANGED if that's all of them.
+     */
+    private WeightedList<SpawnerData> prune(final WeightedList<SpawnerData> spawners) {
+        final List<Weighted<SpawnerData>> kept = new ArrayList<>();
+        for (final Weighted<SpawnerData> spawner : spawners.unwrap()) {
+            if (getVerdict(spawner.value().type(), EntitySpawnReason.NATURAL) != VERDICT_DISALLOW) kept.add(spawner);
+        }
+        return kept.size() == spawners.unwrap().size() ? UNCHANGED : WeightedList.of(kept);
+    }
+
+    /**
+     * Walk the rules for one entity type as though we were evaluating them for the given spawn reason.
+     * We can keep going as long as every check we hit is a SpawnReasonCheck; as soon as a rule needs
+     * anything else, or we reach a matching THROTTLE rule, the answer depends on the spawn and we have to
+     * give up.
+     *
+     * @return the index in typeRules of the rule that decides the spawn, NO_MATCH if none would match, or
+     * DYNAMIC if we can't tell.
+     */
+    private static int findDecidingRule(final List<Rule> typeRules, final EntitySpawnReason reason) {
+        for (int i = 0; i < typeRules.size(); i++) {
+            final Rule rule = typeRules.get(i);
+            boolean isMatch = true;
+            for (final RuleCheck check : rule.checks()) {
+                if (!(check instanceof SpawnReasonCheck src)) return DYNAMIC;
+                if (reason == null) {
+                    isMatch = ConfigService.get().getDefaultRuleCheckResult();
+                } else {
+                    isMatch = src.reasons().contains(reason);
+                }
+                if (!isMatch) break;
+            }
+            if (isMatch) return rule.action() == THROTTLE ? DYNAMIC : i; // throttles depend on what's spawned lately
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * @return the rules with the id checks that can be answered from registry ids compiled into bitsets.
+     */
+    private static List<Rule> compile(final List<Rule> rules) {
+        final ImmutableList.Builder<Rule> out = ImmutableList.builder();
+        for (final Rule rule : rules) {
+            final ImmutableList.Builder<RuleCheck> checks = ImmutableList.builder();
+            for (final RuleCheck check : rule.checks()) {
+                if (check instanceof EntityIdCheck eic) {
+                    checks.add(new EntityTypeSetCheck(eic.entityMatcher().toBitSet(BuiltInRegistries.ENTITY_TYPE), eic));
+                } else if (check instanceof BlockIdCheck bic) {
+                    checks.add(new BlockSetCheck(bic.blockMatcher().toBitSet(BuiltInRegistries.BLOCK), bic));
+                } else {
+                    checks.add(check);
+                }
+            }
+            out.add(rule.withChecks(checks.build()));
+        }
+        return out.build();
+    }
+
+    /**
+     * @return a copy of the rule with the checks that depend only on the entity type removed, or null
+     * if one of those checks fails for the given type.
+     */
+    private static Rule specialize(final Rule rule, final EntityType<?> entityType, final int entityTypeId) {
+        final ImmutableList.Builder<RuleCheck> residual = ImmutableList.builder();
+        for (final RuleCheck check : rule.checks()) {
+            if (check instanceof EntityTypeSetCheck etc) {
+                if (!etc.entityTypes().get(entityTypeId)) return null;
+            } else if (check instanceof CategoryCheck cc) {
+                if (!cc.categories().contains(entityType.getCategory())) return null;
+            } else {
+                residual.add(check);
+            }
+        }
+        return rule.withChecks(residual.build());
+    }
+}
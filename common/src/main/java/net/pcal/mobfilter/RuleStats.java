@@ -0,0 +1,181 @@
+package net.pcal.mobfilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Counters for figuring out which rules are doing the work.  Only created when the config turns stats on;
+ * otherwise ConfigService holds a null and the hot path pays for a single null check.
+ *
+ * Per rule, we count evaluations (times we had to look at the rule) and the allows and denies it decided.  Static verdicts from the RuleIndex count as a single evaluation of the rule that decided them.
+ * Decision latency is too expensive to time on every spawn, so we time one in SAMPLE_INTERVAL and keep a
+ * log2 histogram of those.
+ *
+ * Everything is a LongAdder because spawns are decided on the server thread and the worldgen threads at the
+ * same time.
+ */
+final class RuleStats {
+
+    private static final int SAMPLE_INTERVAL = 64;
+    private static final int HISTOGRAM_BUCKETS = 40; // bucket i holds latencies in [2^i, 2^(i+1)) ns
+    private static final int TOP_RULES = 10;
+    private static final int DEAD_RULES = 20;
+
+    private final List<Rule> rules;
+    private final LongAdder[] evaluations;
+    private final LongAdder[] allows;
+    private final LongAdder[] denies;
+    private final LongAdder defaultAllows = new LongAdder();
+    private final LongAdder staticDecisions = new LongAdder();
+    private final LongAdder decisions = new LongAdder();
+    private final LongAdder sampledNanos = new LongAdder();
+    private final LongAdder[] latencyHistogram = newAdders(HISTOGRAM_BUCKETS);
+    private volatile long startNanos = System.nanoTime();
+
+    RuleStats(final List<Rule> rules) {
+        this.rules = requireNonNull(rules);
+        this.evaluations = newAdders(rules.size());
+        this.allows = newAdders(rules.size());
+        this.denies = newAdders(rules.size());
+    }
+
+    // ===================================================================================
+    // Recording
+
+    /**
+     * @return true if the caller should time this decision and report it with recordLatency().
+     */
+    boolean shouldSample() {
+        return ThreadLocalRandom.current().nextInt(SAMPLE_INTERVAL) == 0;
+    }
+
+    void recordEvaluation(final int ruleOrdinal) {
+        if (isValid(ruleOrdinal)) this.evaluations[ruleOrdinal].increment();
+    }
+
+    /**
+     * Record a spawn decided by a static verdict.  ruleOrdinal is -1 if no rule matched.
+     */
+    void recordStaticDecision(final int ruleOrdinal, final boolean isSpawnAllowed) {
+        this.staticDecisions.increment();
+        recordEvaluation(ruleOrdinal);
+        recordDecision(ruleOrdinal, isSpawnAllowed);
+    }
+
+    /**
+     * Record that the given rule matched and decided the spawn, or that no rule matched if ruleOrdinal
+     * is -1.
+     */
+    void recordDecision(final int ruleOrdinal, final boolean isSpawnAllowed) {
+        this.decisions.increment();
+        if (isValid(ruleOrdinal)) {
+            (isSpawnAllowed ? this.allows : this.denies)[ruleOrdinal].increment();
+        } else {
+            this.defaultAllows.increment();
+        }
+    }
+
+    void recordLatency(final long nanos) {
+        this.sampledNanos.add(nanos);
+        final int bucket = 63 - Long.numberOfLeadingZeros(Math.max(1, nanos));
+        this.latencyHistogram[Math.min(bucket, HISTOGRAM_BUCKETS - 1)].increment();
+    }
+
+    // ===================================================================================
+    // Reporting
+
+    void reset() {
+        for (final LongAdder[] adders : List.of(this.evaluations, this.allows, this.denies, this.latencyHistogram)) {
+            for (final LongAdder adder : adders) adder.reset();
+        }
+        this.defaultAllows.reset();
+        this.staticDecisions.reset();
+        this.decisions.reset();
+        this.sampledNanos.reset();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * @param nanosPerTick how long a tick is supposed to take, so we can express decision time per tick.
+     * @return human-readable summary lines for the /mobfilter stats command.
+     */
+    List<String> report(final long nanosPerTick) {
+        final List<String> out = new ArrayList<>();
+        final long elapsedNanos = System.nanoTime() - this.startNanos;
+        final long decisionCount = this.decisions.sum();
+        final long staticCount = this.staticDecisions.sum();
+        out.add(String.format("%d decisions in %.1fs (%d static, %d by default)",
+                decisionCount, elapsedNanos / 1e9, staticCount, this.defaultAllows.sum()));
+
+        final long[] histogram = new long[HISTOGRAM_BUCKETS];
+        long samples = 0;
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) samples += (histogram[i] = this.latencyHistogram[i].sum());
+        if (samples > 0) {
+            final double meanNanos = (double) this.sampledNanos.sum() / samples;
+            final double ticks = Math.max(1.0, (double) elapsedNanos / nanosPerTick);
+            out.add(String.format("latency (%d sampled): mean %.0fns, p50 <%s, p90 <%s, p99 <%s",
+                    samples, meanNanos, percentile(histogram, samples, 0.50), percentile(histogram, samples, 0.90),
+                    percentile(histogram, samples, 0.99)));
+            out.add(String.format("decision time: ~%.1fus per tick", meanNanos * decisionCount / ticks / 1000.0));
+        }
+
+        final Integer[] byMatches = new Integer[this.rules.size()];
+        for (int i = 0; i < byMatches.length; i++) byMatches[i] = i;
+        final long[] matchCounts = new long[byMatches.length];
+        for (int i = 0; i < byMatches.length; i++) matchCounts[i] = this.allows[i].sum() + this.denies[i].sum();
+        Arrays.sort(byMatches, Comparator.comparingLong((Integer i) -> matchCounts[i]).reversed());
+        out.add("top rules:");
+        for (int i = 0; i < Math.min(TOP_RULES, byMatches.length) && matchCounts[byMatches[i]] > 0; i++) {
+            final int r = byMatches[i];
+            out.add(String.format("  '%s': %d evaluated, %d allowed, %d denied", this.rules.get(r).getName(),
+                    this.evaluations[r].sum(), this.allows[r].sum(), this.denies[r].sum()));
+        }
+        final List<String> dead = new ArrayList<>();
+        for (int r = 0; r < byMatches.length; r++) {
+            if (matchCounts[r] == 0) dead.add("'" + this.rules.get(r).getName() + "'");
+        }
+        if (!dead.isEmpty()) {
+            final String names = String.join(", ", dead.subList(0, Math.min(DEAD_RULES, dead.size())));
+            out.add("dead rules (" + dead.size() + "): " + names + (dead.size() > DEAD_RULES ? ", ..." : ""));
+        }
+        return out;
+    }
+
+    // ===================================================================================
+    // Private
+
+    private boolean isValid(final int ruleOrdinal) {
+        return ruleOrdinal >= 0 && ruleOrdinal < this.evaluations.length;
+    }
+
+    /**
+     * @return the upper bound of the histogram bucket containing the given percentile.
+     */
+    private static String percentile(final long[] histogram, final long samples, final double p) {
+        final long target = (long) Math.ceil(samples * p);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= target) return formatNanos(1L << (i + 1));
+        }
+        return formatNanos(1L << histogram.length);
+    }
+
+    private static String formatNanos(final long nanos) {
+        if (nanos < 10_000) return nanos + "ns";
+        if (nanos < 10_000_000) return (nanos / 1000) + "us";
+        return (nanos / 1_000_000) + "ms";
+    }
+
+    private static LongAdder[] newAdders(final int count) {
+        final LongAdder[] out = new LongAdder[count];
+        for (int i = 0; i < count; i++) out[i] = new LongAdder();
+        return out;
+    }
+}
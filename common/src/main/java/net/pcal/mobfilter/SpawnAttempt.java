@@ -1,11 +1,13 @@
 package net.pcal.mobfilter;
 
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
 import net.minecraft.core.Holder;
 import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.core.registries.Registries;
 import net.minecraft.resources.Identifier;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.WorldGenRegion;
 import net.minecraft.world.Difficulty;
 import net.minecraft.world.attribute.EnvironmentAttributes;
 import net.minecraft.world.entity.EntitySpawnReason;
@@ -15,7 +17,7 @@ import net.minecraft.world.level.LightLayer;
 import net.minecraft.world.level.MoonPhase;
 import net.minecraft.world.level.biome.Biome;
 import net.minecraft.world.level.block.Block;
-import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.levelgen.Heightmap;
 import net.minecraft.world.level.storage.ServerLevelData;
 import org.apache.logging.log4j.Logger;
 
@@ -111,6 +113,33 @@ interface SpawnAttempt {
      */
     Long getDayTime();
 
+    /**
+     * Returns the number of ticks the level has been running.
+     */
+    Long getGameTime();
+
+    /**
+     * Returns the weather at the spawn position.
+     */
+    RuleCheck.WeatherType getWeatherType();
+
+    /**
+     * Returns the block below the spawn position.
+     */
+    Block getBlock();
+
+    /**
+     * Returns the biome at the spawn position.
+     */
+    Holder<Biome> getBiomeHolder();
+
+    /**
+     * Returns the number of mobs in the given categories within chunkRadius chunks of the spawn position.
+     *
+     * @param categoryMask the categories to count, as made by MobCounts.getCategoryMask().
+     */
+    Integer getNearbyCount(int categoryMask, int chunkRadius);
+
     /**
      * Returns a logger instance for MobFilter-specific messages .
      */
@@ -122,28 +151,86 @@ interface SpawnAttempt {
 
     /**
      * Implementation of SpawnAttempt for the main game thread.  All attributes of the world are available.
+     *
+     * The more expensive world lookups are done lazily and remembered, so each one happens at most once per
+     * spawn attempt no matter how many rules ask for it.  They go through an EnvironmentCache, so other spawns
+     * at the same position in the same tick can reuse them.  Lookups at positions other than the spawn position
+     * aren't cached.
+     *
+     * Instances are mutable so that they can be reused for each spawn on a given thread; see reset() and
+     * release().
      */
     class MainThreadSpawnAttempt implements SpawnAttempt {
 
-        private final ServerLevel serverWorld;
-        private final EntitySpawnReason spawnReason;
-        private final MobCategory category;
-        private final EntityType<?> entityType;
-        private final BlockPos blockPos;
+        private static final int UNSET = -1;
+
         private final Logger logger;
+        private final EnvironmentCache environmentCache;
+        private final BlockPos.MutableBlockPos blockPos = new BlockPos.MutableBlockPos();
+        private final BlockPos.MutableBlockPos belowPos = new BlockPos.MutableBlockPos();
+        private ServerLevel serverWorld;
+        private EntitySpawnReason spawnReason;
+        private MobCategory category;
+        private EntityType<?> entityType;
+        private boolean inUse;
+
+        private Holder<Biome> biomeHolder;
+        private boolean biomeIdResolved;
+        private Identifier biomeId;
+        private Block block;
+        private Identifier blockId;
+        private int rawBrightness = UNSET;
+        private int skyBrightness = UNSET;
+        private RuleCheck.WeatherType weatherType;
+
+        MainThreadSpawnAttempt(final Logger logger, final EnvironmentCache environmentCache) {
+            this.logger = requireNonNull(logger);
+            this.environmentCache = requireNonNull(environmentCache);
+        }
 
-        MainThreadSpawnAttempt(final ServerLevel serverWorld,
-                               final EntitySpawnReason spawnReason,
-                               final MobCategory category,
-                               final EntityType<?> entityType,
-                               final BlockPos blockPos,
-                               final Logger logger) {
+        /**
+         * Prepare this instance to describe a new spawn attempt, forgetting anything from the previous one.
+         */
+        MainThreadSpawnAttempt reset(final ServerLevel serverWorld,
+                                     final EntitySpawnReason spawnReason,
+                                     final MobCategory category,
+                                     final EntityType<?> entityType,
+                                     final BlockPos blockPos) {
             this.serverWorld = requireNonNull(serverWorld);
             this.spawnReason = spawnReason;
             this.category = category;
             this.entityType = entityType;
-            this.blockPos = blockPos;
-            this.logger = requireNonNull(logger);
+            this.blockPos.set(blockPos);
+            this.biomeHolder = null;
+            this.biomeIdResolved = false;
+            this.biomeId = null;
+            this.block = null;
+            this.blockId = null;
+            this.rawBrightness = UNSET;
+            this.skyBrightness = UNSET;
+            this.weatherType = null;
+            this.inUse = true;
+            return this;
+        }
+
+        /**
+         * Called when the spawn decision has been made.  Drops our references to the world so that a pooled
+         * instance doesn't keep it alive.
+         */
+        void release() {
+            this.serverWorld = null;
+            this.entityType = null;
+            this.biomeHolder = null;
+            this.block = null;
+            this.inUse = false;
+        }
+
+        /**
+         * @return true if this instance is currently describing a spawn.  Spawns can nest (e.g., if a rule
+         * check causes a chunk to generate), in which case the caller needs to use a fresh instance.
+         */
+        boolean isInUse() {
+            return this.inUse;
         }
 
         @Override
@@ -176,9 +263,18 @@ interface SpawnAttempt {
 
         @Override
         public Identifier getBlockId() {
-            final BlockState bs = serverWorld.getBlockState(this.blockPos.below());
-            final Block block = bs.getBlock();
-            return BuiltInRegistries.BLOCK.getKey(block);
+            if (this.blockId == null) {
+                this.blockId = BuiltInRegistries.BLOCK.getKey(getBlock());
+            }
+            return this.blockId;
+        }
+
+        @Override
+        public Block getBlock() {
+            if (this.block == null) {
+                this.block = this.environmentCache.getBlock(serverWorld, this.belowPos.setWithOffset(this.blockPos, Direction.DOWN));
+            }
+            return this.block;
         }
 
         @Override
@@ -209,12 +305,22 @@ interface SpawnAttempt {
 
         @Override
         public Integer getBrightness(LightLayer lightLayer, BlockPos blockPos) {
-            return serverWorld.getBrightness(lightLayer, blockPos);
+            if (lightLayer != LightLayer.SKY || !this.blockPos.equals(blockPos)) {
+                return serverWorld.getBrightness(lightLayer, blockPos);
+            }
+            if (this.skyBrightness == UNSET) {
+                this.skyBrightness = this.environmentCache.getSkyBrightness(serverWorld, this.blockPos);
+            }
+            return this.skyBrightness;
         }
 
         @Override
         public Integer getMaxLocalRawBrightness(BlockPos blockPos) {
-            return serverWorld.getMaxLocalRawBrightness(blockPos);
+            if (!this.blockPos.equals(blockPos)) return serverWorld.getMaxLocalRawBrightness(blockPos);
+            if (this.rawBrightness == UNSET) {
+                this.rawBrightness = this.environmentCache.getMaxLocalRawBrightness(serverWorld, this.blockPos);
+            }
+            return this.rawBrightness;
         }
 
         @Override
@@ -234,52 +340,149 @@ interface SpawnAttempt {
 
         @Override
         public Biome getBiome(BlockPos blockPos) {
-            final Holder<Biome> holder = serverWorld.getBiome(this.blockPos);
-            //noinspection ConstantValue
-            if (holder == null) {
-                this.logger.debug(()->"[MobFilter] null biome returned at " + this.blockPos);
-                return null;
-            } else {
-                return holder.value();
+            final Holder<Biome> holder = getBiomeHolder();
+            return holder != null ? holder.value() : null;
+        }
+
+        @Override
+        public Holder<Biome> getBiomeHolder() {
+            if (this.biomeHolder == null) {
+                this.biomeHolder = this.environmentCache.getBiome(serverWorld, this.blockPos);
+                //noinspection ConstantValue
+                if (this.biomeHolder == null) {
+                    this.logger.debug(()->"[MobFilter] null biome returned at " + this.blockPos);
+                }
             }
+            return this.biomeHolder;
         }
 
         @Override
         public Identifier getBiomeId() {
-            final Biome biome = this.getBiome(blockPos);
-            if (biome == null) return null;
-            // FIXME? I'm not entirely sure this is correct
-            return serverWorld.registryAccess().lookupOrThrow(Registries.BIOME).getKey(biome);
+            if (!this.biomeIdResolved) {
+                final Biome biome = this.getBiome(blockPos);
+                if (biome != null) {
+                    // FIXME? I'm not entirely sure this is correct
+                    this.biomeId = serverWorld.registryAccess().lookupOrThrow(Registries.BIOME).getKey(biome);
+                }
+                this.biomeIdResolved = true;
+            }
+            return this.biomeId;
         }
 
         @Override
         public Long getDayTime() {
-            return serverWorld.getOverworldClockTime();
+            return this.environmentCache.getDayTime(serverWorld);
+        }
+
+        @Override
+        public Long getGameTime() {
+            return this.environmentCache.getGameTime(serverWorld);
+        }
+
+        @Override
+        public RuleCheck.WeatherType getWeatherType() {
+            if (this.weatherType == null) {
+                this.weatherType = this.environmentCache.getWeatherType(serverWorld, this);
+            }
+            return this.weatherType;
+        }
+
+        @Override
+        public Integer getNearbyCount(int categoryMask, int chunkRadius) {
+            return ((MobCountsHolder) serverWorld).mf_getMobCounts().getCount(categoryMask, blockPos.getX() >> 4, blockPos.getZ() >> 4, chunkRadius);
         }
     }
 
     /**
-     * Implementation of SpawnAttempt for the world generation thread.  Because we cannot safely access the world
-     * state during worldgen, many of the attributes here must return null.
+     * Implementation of SpawnAttempt for the world generation thread.  We can't touch the ServerLevel from here
+     * without risking a deadlock, so blocks and biomes come from the chunks in the WorldGenRegion being
+     * generated, and level-wide state comes from the LevelSnapshot the server thread published at the start of
+     * the current tick.  Light, moon phase and nearby counts aren't available and return null, as does anything else we can't
+     * work out (e.g., if the level hasn't ticked yet or the position is outside the region).
      */
     class WorldgenThreadSpawnAttempt implements SpawnAttempt {
 
-        private final EntitySpawnReason spawnReason;
-        private final MobCategory category;
-        private final EntityType<?> entityType;
-        private final BlockPos blockPos;
         private final Logger logger;
+        private final BlockPos.MutableBlockPos blockPos = new BlockPos.MutableBlockPos();
+        private final BlockPos.MutableBlockPos belowPos = new BlockPos.MutableBlockPos();
+        private Identifier dimensionId;
+        private WorldGenRegion region;
+        private LevelSnapshot snapshot;
+        private EntitySpawnReason spawnReason;
+        private MobCategory category;
+        private EntityType<?> entityType;
+        private boolean inUse;
+
+        private Holder<Biome> biomeHolder;
+        private boolean biomeIdResolved;
+        private Identifier biomeId;
+        private Block block;
+        private RuleCheck.WeatherType weatherType;
+        private Long gameTime;
+        private Long dayTime;
+
+        WorldgenThreadSpawnAttempt(final Logger logger) {
+            this.logger = requireNonNull(logger);
+        }
 
-        WorldgenThreadSpawnAttempt(final EntitySpawnReason spawnReason,
-                                   final MobCategory category,
-                                   final EntityType<?> entityType,
-                                   final BlockPos blockPos,
-                                   final Logger logger) {
+        /**
+         * Prepare this instance to describe a new spawn attempt.  The serverLevel is only used for things that
+         * never change, like its dimension.
+         *
+         * @param region the region being generated, or null if we don't know it.
+         */
+        WorldgenThreadSpawnAttempt reset(final ServerLevel serverLevel,
+                                         final WorldGenRegion region,
+                                         final EntitySpawnReason spawnReason,
+                                         final MobCategory category,
+                                         final EntityType<?> entityType,
+                                         final BlockPos blockPos) {
+            return reset(serverLevel.dimension().identifier(), ((LevelSnapshotHolder) serverLevel).mf_getLevelSnapshot(),
+                    region, spawnReason, category, entityType, blockPos);
+        }
+
+        /**
+         * Same as the other reset(), with what we need from the level already read from it.  Package-private for
+         * tests.
+         *
+         * @param snapshot the level's snapshot, or null if it hasn't ticked yet.
+         */
+        WorldgenThreadSpawnAttempt reset(final Identifier dimensionId,
+                                         final LevelSnapshot snapshot,
+                                         final WorldGenRegion region,
+                                         final EntitySpawnReason spawnReason,
+                                         final MobCategory category,
+                                         final EntityType<?> entityType,
+                                         final BlockPos blockPos) {
+            this.dimensionId = requireNonNull(dimensionId);
+            this.region = region;
+            this.snapshot = snapshot;
             this.spawnReason = spawnReason;
             this.category = category;
             this.entityType = entityType;
-            this.blockPos = blockPos;
-            this.logger = requireNonNull(logger);
+            this.blockPos.set(blockPos);
+            this.biomeHolder = null;
+            this.biomeIdResolved = false;
+            this.biomeId = null;
+            this.block = null;
+            this.weatherType = null;
+            this.gameTime = null;
+            this.dayTime = null;
+            this.inUse = true;
+            return this;
+        }
+
+        void release() {
+            this.region = null;
+            this.snapshot = null;
+            this.entityType = null;
+            this.biomeHolder = null;
+            this.block = null;
+            this.inUse = false;
+        }
+
+        boolean isInUse() {
+            return this.inUse;
         }
 
         /**
@@ -318,79 +521,171 @@ interface SpawnAttempt {
             return this.logger;
         }
 
-        // ======================================================================
-        // Unsupported during world generation
+        @Override
+        public Identifier getDimensionId() {
+            return this.dimensionId;
+        }
 
         @Override
         public String getWorldName() {
-            this.logger.debug(()->"[MobFilter] worldName cannot be evaluated during world generation");
-            return null;
+            if (this.snapshot == null) {
+                this.logger.debug(()->"[MobFilter] worldName not yet available during world generation");
+                return null;
+            }
+            return this.snapshot.worldName();
         }
 
         @Override
-        public Identifier getDimensionId() {
-            this.logger.debug(()->"[MobFilter] dimensionId cannot be evaluated during world generation");
-            return null;
+        public Difficulty getDifficulty() {
+            if (this.snapshot == null) {
+                this.logger.debug(()->"[MobFilter] difficulty not yet available during world generation");
+                return null;
+            }
+            return this.snapshot.difficulty();
         }
 
         @Override
-        public Identifier getBlockId() {
-            this.logger.debug(()->"[MobFilter] blockId cannot be evaluated during world generation");
-            return null;
+        public Long getDayTime() {
+            if (this.snapshot == null) {
+                this.logger.debug(()->"[MobFilter] dayTime not yet available during world generation");
+                return null;
+            }
+            if (this.dayTime == null) this.dayTime = this.snapshot.dayTime(); // box once per spawn
+            return this.dayTime;
         }
 
         @Override
-        public Integer getMoonPhase() {
-            this.logger.debug(()->"[MobFilter] moonPhase cannot be evaluated during world generation");
-            return null;
+        public Long getGameTime() {
+            if (this.snapshot == null) {
+                this.logger.debug(()->"[MobFilter] gameTime not yet available during world generation");
+                return null;
+            }
+            if (this.gameTime == null) this.gameTime = this.snapshot.gameTime();
+            return this.gameTime;
         }
 
         @Override
-        public Integer getBrightness(LightLayer lightLayer, BlockPos blockPos) {
-            this.logger.debug(()->"[MobFilter] brightness cannot be evaluated during world generation");
-            return null;
+        public Boolean isThundering() {
+            if (this.snapshot == null) {
+                this.logger.debug(()->"[MobFilter] thundering not yet available during world generation");
+                return null;
+            }
+            return this.snapshot.isThundering();
         }
 
+        /**
+         * Same as Level.isRainingAt(), except that we go by the heightmap alone because the sky light isn't
+         * safe to read here.
+         */
         @Override
-        public Integer getMaxLocalRawBrightness(BlockPos blockPos) {
-            this.logger.debug(()->"[MobFilter] maxLocalRawBrightness cannot be evaluated during world generation");
-            return null;
+        public Boolean isRainingAt(BlockPos blockPos) {
+            if (this.snapshot == null || !isInRegion(blockPos)) {
+                this.logger.debug(()->"[MobFilter] isRainingAt cannot be evaluated at " + blockPos + " during world generation");
+                return null;
+            }
+            if (!this.snapshot.isRaining()) return false;
+            if (this.region.getHeight(Heightmap.Types.MOTION_BLOCKING, blockPos.getX(), blockPos.getZ()) > blockPos.getY()) return false;
+            final Biome biome = getBiome(blockPos);
+            if (biome == null) return null;
+            return biome.getPrecipitationAt(blockPos, this.region.getSeaLevel()) == Biome.Precipitation.RAIN;
         }
 
         @Override
-        public Boolean isThundering() {
-            this.logger.debug(()->"[MobFilter] thundering cannot be evaluated during world generation");
-            return null;
+        public Block getBlock() {
+            if (this.block == null) {
+                this.belowPos.setWithOffset(this.blockPos, Direction.DOWN);
+                if (!isInRegion(this.belowPos)) {
+                    this.logger.debug(()->"[MobFilter] block cannot be evaluated at " + this.belowPos + " during world generation");
+                    return null;
+                }
+                this.block = this.region.getBlockState(this.belowPos).getBlock();
+            }
+            return this.block;
         }
 
         @Override
-        public Boolean isRainingAt(BlockPos blockPos) {
-            this.logger.debug(()->"[MobFilter] isRainingAt cannot be evaluated during world generation");
-            return null;
+        public Identifier getBlockId() {
+            final Block block = getBlock();
+            return block != null ? BuiltInRegistries.BLOCK.getKey(block) : null;
         }
 
         @Override
-        public Difficulty getDifficulty() {
-            this.logger.debug(()->"[MobFilter] difficulty cannot be evaluated during world generation");
-            return null;
+        public Holder<Biome> getBiomeHolder() {
+            if (this.biomeHolder == null) {
+                if (!isInRegion(this.blockPos)) {
+                    this.logger.debug(()->"[MobFilter] biome cannot be evaluated at " + this.blockPos + " during world generation");
+                    return null;
+                }
+                this.biomeHolder = this.region.getBiome(this.blockPos);
+            }
+            return this.biomeHolder;
+        }
+
+        @Override
+        public Biome getBiome(BlockPos blockPos) {
+            if (this.blockPos.equals(blockPos)) {
+                final Holder<Biome> holder = getBiomeHolder();
+                return holder != null ? holder.value() : null;
+            }
+            return isInRegion(blockPos) ? this.region.getBiome(blockPos).value() : null;
         }
 
         @Override
         public Identifier getBiomeId() {
-            this.logger.debug("[MobFilter] biomeId cannot be evaluated during world generation");
+            if (!this.biomeIdResolved) {
+                final Holder<Biome> holder = getBiomeHolder();
+                if (holder != null) {
+                    this.biomeId = this.region.registryAccess().lookupOrThrow(Registries.BIOME).getKey(holder.value());
+                }
+                this.biomeIdResolved = true;
+            }
+            return this.biomeId;
+        }
+
+        @Override
+        public RuleCheck.WeatherType getWeatherType() {
+            if (this.weatherType == null) {
+                this.weatherType = RuleCheck.WeatherCheck.computeWeatherType(this);
+            }
+            return this.weatherType;
+        }
+
+        // ======================================================================
+        // Unsupported during world generation
+
+        @Override
+        public Integer getMoonPhase() {
+            this.logger.debug(()->"[MobFilter] moonPhase cannot be evaluated during world generation");
             return null;
         }
 
         @Override
-        public Biome getBiome(BlockPos blockPos) {
-            this.logger.debug(()->"[MobFilter] biome cannot be evaluated during world generation");
+        public Integer getBrightness(LightLayer lightLayer, BlockPos blockPos) {
+            this.logger.debug(()->"[MobFilter] brightness cannot be evaluated during world generation");
             return null;
         }
 
         @Override
-        public Long getDayTime() {
-            this.logger.debug(()->"[MobFilter] dayTime cannot be evaluated during world generation");
+        public Integer getMaxLocalRawBrightness(BlockPos blockPos) {
+            this.logger.debug(()->"[MobFilter] maxLocalRawBrightness cannot be evaluated during world generation");
+            return null;
+        }
+
+        /**
+         * MobCounts belongs to the server thread, and the chunks being generated don't have any mobs tracked
+         * yet anyway.
+         */
+        @Override
+        public Integer getNearbyCount(int categoryMask, int chunkRadius) {
+            this.logger.debug(()->"[MobFilter] nearbyCount cannot be evaluated during world generation");
             return null;
         }
+
+        // ======================================================================
+        // Private
+
+        private boolean isInRegion(final BlockPos pos) {
+            return this.region != null && this.region.hasChunk(pos.getX() >> 4, pos.getZ() >> 4);
+        }
     }
 }
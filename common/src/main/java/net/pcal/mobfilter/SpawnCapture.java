@@ -0,0 +1,215 @@
+package net.pcal.mobfilter;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.Identifier;
+import net.minecraft.world.Difficulty;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.MobCategory;
+import net.minecraft.world.level.LightLayer;
+import net.pcal.mobfilter.RuleCheck.WeatherType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the spawn attempts the server sees, with everything the rules look at, so they can be replayed
+ * offline against other configs (see ReplayRunner in the benchmarks).  Started and stopped with
+ * '/mobfilter capture'.
+ *
+ * The file is MAGIC and FORMAT_VERSION followed by records, each starting with a kind byte.  Strings (ids and
+ * world names) are written once in a STRING record and referred to afterward by their index in the file.
+ * Everything else is written inline, with -1 for anything that couldn't be determined.  Nearby counts aren't
+ * captured, since what they count depends on the check.
+ *
+ * Writes are synchronized, since spawns come from the server thread and worldgen threads.  Capturing is
+ * meant to be turned on for a few minutes, not left running, so we don't try any harder than that.
+ */
+final class SpawnCapture implements AutoCloseable {
+
+    private static final int MAGIC = 0x4D465343; // 'MFSC'
+    private static final int FORMAT_VERSION = 1;
+    private static final byte KIND_STRING = 0;
+    private static final byte KIND_ATTEMPT = 1;
+    private static final int NONE = -1;
+    private static final int HAS_POS = 1;
+    private static final int HAS_DAY_TIME = 2;
+    private static final int HAS_GAME_TIME = 4;
+
+    private static final EntitySpawnReason[] REASONS = EntitySpawnReason.values();
+    private static final MobCategory[] CATEGORIES = MobCategory.values();
+    private static final WeatherType[] WEATHER_TYPES = WeatherType.values();
+    private static final Difficulty[] DIFFICULTIES = Difficulty.values();
+
+    private final Path path;
+    private final DataOutputStream out;
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private long count = 0;
+
+    private SpawnCapture(final Path path, final DataOutputStream out) {
+        this.path = path;
+        this.out = out;
+    }
+
+    /**
+     * Create or replace the capture file.
+     */
+    static SpawnCapture open(final Path path) throws IOException {
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        return new SpawnCapture(path, out);
+    }
+
+    Path getPath() {
+        return this.path;
+    }
+
+    synchronized long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Write everything the rules could ask the attempt for.
+     */
+    synchronized void write(final SpawnAttempt att) throws IOException {
+        final BlockPos pos = att.getBlockPos();
+        final Long dayTime = att.getDayTime();
+        final Long gameTime = att.getGameTime();
+        final int entityId = writeString(att.getEntityId());
+        final int worldName = writeString(att.getWorldName());
+        final int dimensionId = writeString(att.getDimensionId());
+        final int biomeId = writeString(att.getBiomeId());
+        final int blockId = writeString(att.getBlockId());
+        this.out.writeByte(KIND_ATTEMPT);
+        this.out.writeInt(entityId);
+        this.out.writeInt(worldName);
+        this.out.writeInt(dimensionId);
+        this.out.writeInt(biomeId);
+        this.out.writeInt(blockId);
+        this.out.writeByte(ordinal(att.getSpawnReason()));
+        this.out.writeByte(ordinal(att.getMobCategory()));
+        this.out.writeByte(ordinal(att.getWeatherType()));
+        this.out.writeByte(ordinal(att.getDifficulty()));
+        this.out.writeByte(orNone(pos != null ? att.getMaxLocalRawBrightness(pos) : null));
+        this.out.writeByte(orNone(pos != null ? att.getBrightness(LightLayer.SKY, pos) : null));
+        this.out.writeByte(orNone(att.getMoonPhase()));
+        this.out.writeByte((pos != null ? HAS_POS : 0) | (dayTime != null ? HAS_DAY_TIME : 0) | (gameTime != null ? HAS_GAME_TIME : 0));
+        if (pos != null) {
+            this.out.writeInt(pos.getX());
+            this.out.writeInt(pos.getY());
+            this.out.writeInt(pos.getZ());
+        }
+        if (dayTime != null) this.out.writeLong(dayTime);
+        if (gameTime != null) this.out.writeLong(gameTime);
+        this.count++;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.out.close();
+    }
+
+    /**
+     * Read back every attempt in a capture file.
+     *
+     * @throws IOException if the file can't be read or isn't a capture.
+     */
+    static List<CapturedSpawnAttempt> read(final Path path) throws IOException {
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a spawn capture: " + path);
+            if (in.readInt() != FORMAT_VERSION) throw new IOException("Unsupported spawn capture version: " + path);
+            final List<String> strings = new ArrayList<>();
+            final List<CapturedSpawnAttempt> out = new ArrayList<>();
+            while (true) {
+                final int kind = in.read();
+                if (kind < 0) break;
+                if (kind == KIND_STRING) {
+                    strings.add(in.readUTF());
+                } else if (kind == KIND_ATTEMPT) {
+                    final CapturedSpawnAttempt att = new CapturedSpawnAttempt();
+                    try {
+                        att.entityId = toId(strings, in.readInt());
+                        att.worldName = toString(strings, in.readInt());
+                        att.dimensionId = toId(strings, in.readInt());
+                        att.biomeId = toId(strings, in.readInt());
+                        att.blockId = toId(strings, in.readInt());
+                        att.spawnReason = fromOrdinal(REASONS, in.readByte());
+                        att.mobCategory = fromOrdinal(CATEGORIES, in.readByte());
+                        att.weatherType = fromOrdinal(WEATHER_TYPES, in.readByte());
+                        att.difficulty = fromOrdinal(DIFFICULTIES, in.readByte());
+                        att.rawBrightness = fromNone(in.readByte());
+                        att.skyBrightness = fromNone(in.readByte());
+                        att.moonPhase = fromNone(in.readByte());
+                        final int flags = in.readByte();
+                        if ((flags & HAS_POS) != 0) att.blockPos = new BlockPos(in.readInt(), in.readInt(), in.readInt());
+                        if ((flags & HAS_DAY_TIME) != 0) att.dayTime = in.readLong();
+                        if ((flags & HAS_GAME_TIME) != 0) att.gameTime = in.readLong();
+                    } catch (EOFException e) {
+                        break; // the server stopped mid-write
+                    }
+                    out.add(att);
+                } else {
+                    throw new IOException("Unknown record kind " + kind + " in spawn capture " + path);
+                }
+            }
+            return out;
+        }
+    }
+
+    // ===================================================================================
+    // Private
+
+    /**
+     * @return the index of the given string, writing it first if this is the first time we've seen it.
+     */
+    private int writeString(final Object value) throws IOException {
+        if (value == null) return NONE;
+        final String s = value.toString();
+        Integer id = this.stringIds.get(s);
+        if (id == null) {
+            id = this.stringIds.size();
+            this.stringIds.put(s, id);
+            this.out.writeByte(KIND_STRING);
+            this.out.writeUTF(s);
+        }
+        return id;
+    }
+
+    private static int ordinal(final Enum<?> value) {
+        return value != null ? value.ordinal() : NONE;
+    }
+
+    private static int orNone(final Integer value) {
+        return value != null ? value : NONE;
+    }
+
+    private static Integer fromNone(final byte value) {
+        return value == NONE ? null : (int) value;
+    }
+
+    private static <E> E fromOrdinal(final E[] values, final byte ordinal) {
+        return ordinal >= 0 && ordinal < values.length ? values[ordinal] : null;
+    }
+
+    private static String toString(final List<String> strings, final int id) throws IOException {
+        if (id == NONE) return null;
+        if (id < 0 || id >= strings.size()) throw new IOException("Bad string reference " + id + " in spawn capture");
+        return strings.get(id);
+    }
+
+    private static Identifier toId(final List<String> strings, final int id) throws IOException {
+        final String s = toString(strings, id);
+        return s != null ? Identifier.parse(s) : null;
+    }
+}
@@ -0,0 +1,17 @@
+package net.pcal.mobfilter;
+
+import net.minecraft.world.entity.EntitySpawnReason;
+
+/**
+ * Implemented on Mob by MobMixin, so that we can remember how a mob was created until it's added to the
+ * world.  Cast any Mob to this to get at it.
+ */
+public interface SpawnReasonHolder {
+
+    /**
+     * @return the reason passed to EntityType.create when this mob was created, or null if we didn't see it.
+     */
+    EntitySpawnReason mf_getSpawnReason();
+
+    void mf_setSpawnReason(EntitySpawnReason reason);
+}
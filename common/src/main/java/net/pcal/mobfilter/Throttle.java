@@ -0,0 +1,248 @@
+package net.pcal.mobfilter;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.Identifier;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.MobCategory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets for a THROTTLE rule.  Each chunk in each level (or each entity type or category in each chunk,
+ * depending on the scope) gets a bucket that holds up to 'burst' spawns and refills at 'rate' spawns per minute.  A spawn
+ * that finds its bucket empty is denied.
+ *
+ * A bucket's state is packed into a single long (the time of its last refill in the high bits, tokens in
+ * 1/256ths in the low bits), kept in primitive maps so that throttling a spawn doesn't allocate.  The maps are
+ * split into STRIPES, each guarded by its own lock, so spawns can be throttled from the server thread and
+ * worldgen threads at once.  A full bucket behaves the same as a missing one, so every SWEEP_INTERVAL
+ * acquisitions we drop the buckets that have refilled.  That's what cleans up after chunks that have unloaded.
+ *
+ * Each level has its own set of maps, so chunks with the same coordinates in different dimensions don't
+ * drain each other.  Spawns whose dimension isn't known share one more set.
+ *
+ * Time comes from System.nanoTime(), so adjusting the system clock doesn't stall or refill the buckets.
+ *
+ * Shared by every copy of the rule that RuleIndex and friends make, so all of them see the same buckets.
+ */
+final class Throttle {
+
+    enum Scope {
+        CHUNK,
+        ENTITY_TYPE,
+        CATEGORY
+    }
+
+    static final int MAX_BURST = 0xFFFF;
+
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long ONE_TOKEN = 256;
+    private static final long MILLIS_PER_MINUTE = 60_000;
+    private static final int SWEEP_INTERVAL = 4096;
+    private static final int STRIPES = 16; // power of two
+    private static final long NO_BUCKET = -1;
+
+    private final double rate;
+    private final int burst;
+    private final Scope scope;
+    private final long fullTokens;
+    private final LongSupplier clock;
+    private final long startMillis;
+    private final ConcurrentHashMap<Identifier, Long2LongOpenHashMap[]> bucketsByLevel = new ConcurrentHashMap<>();
+    private final Long2LongOpenHashMap[] unknownLevelBuckets = createStripes();
+    private final AtomicInteger acquisitions = new AtomicInteger();
+    private final AtomicBoolean isSweeping = new AtomicBoolean();
+
+    /**
+     * @param rate spawns per minute.
+     * @param burst the most spawns that can happen at once after a quiet spell.
+     */
+    Throttle(final double rate, final int burst, final Scope scope) {
+        this(rate, burst, scope, () -> System.nanoTime() / 1_000_000);
+    }
+
+    /**
+     * @param clock the current time in milliseconds.  For tests.
+     */
+    Throttle(final double rate, final int burst, final Scope scope, final LongSupplier clock) {
+        if (!(rate > 0)) throw new IllegalArgumentException("Throttle rate must be greater than zero: " + rate);
+        if (burst < 1 || burst > MAX_BURST) throw new IllegalArgumentException("Throttle burst must be between 1 and " + MAX_BURST + ": " + burst);
+        this.rate = rate;
+        this.burst = burst;
+        this.scope = scope != null ? scope : Scope.CHUNK;
+        this.fullTokens = burst * ONE_TOKEN;
+        this.clock = clock;
+        this.startMillis = clock.getAsLong();
+    }
+
+    double getRate() {
+        return this.rate;
+    }
+
+    int getBurst() {
+        return this.burst;
+    }
+
+    Scope getScope() {
+        return this.scope;
+    }
+
+    /**
+     * @return whether the given spawn's bucket has a token in it, without taking it.  Spawns without a
+     * position can't be throttled and always have one.
+     */
+    boolean hasToken(final SpawnAttempt att) {
+        final BlockPos pos = att.getBlockPos();
+        if (pos == null) return true;
+        final long now = getNow();
+        final long key = getKey(pos, att.getEntityType(), att.getMobCategory());
+        final Long2LongOpenHashMap stripe = getStripe(getBuckets(att.getDimensionId()), key);
+        synchronized (stripe) {
+            final long state = stripe.get(key);
+            return state == NO_BUCKET || getAvailable(state, now) >= ONE_TOKEN;
+        }
+    }
+
+    /**
+     * Take a token for the given spawn.
+     *
+     * @return false if the spawn should be denied, true if it can go ahead.  Spawns without a position
+     * can't be throttled and always go ahead.
+     */
+    boolean tryAcquire(final SpawnAttempt att) {
+        final BlockPos pos = att.getBlockPos();
+        if (pos == null) return true;
+        final long now = getNow();
+        final long key = getKey(pos, att.getEntityType(), att.getMobCategory());
+        final Long2LongOpenHashMap stripe = getStripe(getBuckets(att.getDimensionId()), key);
+        if (this.acquisitions.incrementAndGet() % SWEEP_INTERVAL == 0) sweep();
+        synchronized (stripe) {
+            final long state = stripe.get(key);
+            if (state == NO_BUCKET) {
+                stripe.put(key, pack(now, this.fullTokens - ONE_TOKEN));
+                return true;
+            }
+            final long refill = getRefill(state, now);
+            final long available = Math.min(this.fullTokens, (state & TOKEN_MASK) + refill);
+            if (available < ONE_TOKEN) return false;
+            stripe.put(key, pack(refill > 0 ? now : state >>> TOKEN_BITS, available - ONE_TOKEN));
+            return true;
+        }
+    }
+
+    /**
+     * Drop the buckets that have refilled completely.  Runs on its own every SWEEP_INTERVAL acquisitions.
+     */
+    void sweep() {
+        if (!this.isSweeping.compareAndSet(false, true)) return;
+        try {
+            final long now = getNow();
+            sweep(this.unknownLevelBuckets, now);
+            for (final Long2LongOpenHashMap[] buckets : this.bucketsByLevel.values()) sweep(buckets, now);
+        } finally {
+            this.isSweeping.set(false);
+        }
+    }
+
+    /**
+     * @return how many buckets we're holding on to.  For tests.
+     */
+    int getBucketCount() {
+        int out = getBucketCount(this.unknownLevelBuckets);
+        for (final Long2LongOpenHashMap[] buckets : this.bucketsByLevel.values()) out += getBucketCount(buckets);
+        return out;
+    }
+
+    // ===================================================================================
+    // Private
+
+    private long getNow() {
+        return this.clock.getAsLong() - this.startMillis;
+    }
+
+    /**
+     * @return the tokens in the bucket with the given state once it's been refilled up to now.
+     */
+    private long getAvailable(final long state, final long now) {
+        return Math.min(this.fullTokens, (state & TOKEN_MASK) + getRefill(state, now));
+    }
+
+    /**
+     * @return the tokens that have dripped into the bucket with the given state since its last refill.
+     */
+    private long getRefill(final long state, final long now) {
+        return (long) (Math.max(0, now - (state >>> TOKEN_BITS)) * this.rate * ONE_TOKEN / MILLIS_PER_MINUTE);
+    }
+
+    private Long2LongOpenHashMap[] getBuckets(final Identifier dimensionId) {
+        if (dimensionId == null) return this.unknownLevelBuckets;
+        final Long2LongOpenHashMap[] out = this.bucketsByLevel.get(dimensionId);
+        return out != null ? out : this.bucketsByLevel.computeIfAbsent(dimensionId, k -> createStripes());
+    }
+
+    private void sweep(final Long2LongOpenHashMap[] buckets, final long now) {
+        for (final Long2LongOpenHashMap stripe : buckets) {
+            synchronized (stripe) {
+                if (stripe.isEmpty()) continue;
+                final ObjectIterator<Long2LongMap.Entry> i = stripe.long2LongEntrySet().fastIterator();
+                while (i.hasNext()) {
+                    if (getAvailable(i.next().getLongValue(), now) >= this.fullTokens) i.remove();
+                }
+            }
+        }
+    }
+
+    private static int getBucketCount(final Long2LongOpenHashMap[] buckets) {
+        int out = 0;
+        for (final Long2LongOpenHashMap stripe : buckets) {
+            synchronized (stripe) {
+                out += stripe.size();
+            }
+        }
+        return out;
+    }
+
+    private static Long2LongOpenHashMap getStripe(final Long2LongOpenHashMap[] buckets, final long key) {
+        return buckets[(int) HashCommon.mix(key) & (STRIPES - 1)];
+    }
+
+    private static Long2LongOpenHashMap[] createStripes() {
+        final Long2LongOpenHashMap[] out = new Long2LongOpenHashMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            out[i] = new Long2LongOpenHashMap();
+            out[i].defaultReturnValue(NO_BUCKET);
+        }
+        return out;
+    }
+
+    /**
+     * Chunk x and z each get 22 bits, which covers the whole world border, and the low 20 bits hold the
+     * entity type id or category if the scope needs them.
+     */
+    private long getKey(final BlockPos pos, final EntityType<?> entityType, final MobCategory category) {
+        final long chunkKey = ((long) ((pos.getX() >> 4) & 0x3FFFFF) << 42) | ((long) ((pos.getZ() >> 4) & 0x3FFFFF) << 20);
+        return switch (this.scope) {
+            case CHUNK -> chunkKey;
+            case ENTITY_TYPE -> chunkKey | (entityType != null ? BuiltInRegistries.ENTITY_TYPE.getId(entityType) & 0xFFFFF : 0xFFFFF);
+            case CATEGORY -> chunkKey | (category != null ? category.ordinal() : 0xFFFFF);
+        };
+    }
+
+    private static long pack(final long millis, final long tokens) {
+        return (millis << TOKEN_BITS) | tokens;
+    }
+
+    @Override
+    public String toString() {
+        return "Throttle[rate=" + this.rate + ", burst=" + this.burst + ", scope=" + this.scope + "]";
+    }
+}
@@ -1,5 +1,7 @@
 package net.pcal.mobfilter.mixins;
 
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.EntitySpawnReason;
 import net.minecraft.world.entity.EntityType;
@@ -10,6 +12,8 @@ import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
+import java.util.function.Consumer;
+
 @SuppressWarnings("ALL")
 @Mixin(EntityType.class)
 public abstract class EntityTypeMixin {
@@ -18,5 +22,10 @@ public abstract class EntityTypeMixin {
     private void mf_create(Level level, EntitySpawnReason entitySpawnReason, CallbackInfoReturnable<Entity> cir) {
         MixinService.get().EntityType_create(level, entitySpawnReason, cir);
     }
+
+    @Inject(at = @At("HEAD"), method = "create(Lnet/minecraft/server/level/ServerLevel;Ljava/util/function/Consumer;Lnet/minecraft/core/BlockPos;Lnet/minecraft/world/entity/EntitySpawnReason;ZZ)Lnet/minecraft/world/entity/Entity;", cancellable = true, remap = false)
+    private void mf_createAt(ServerLevel level, Consumer<?> consumer, BlockPos pos, EntitySpawnReason entitySpawnReason, boolean shouldOffsetY, boolean shouldOffsetYMore, CallbackInfoReturnable<Entity> cir) {
+        MixinService.get().EntityType_createAt((EntityType<?>)(Object)this, level, pos, entitySpawnReason, cir);
+    }
 }
 
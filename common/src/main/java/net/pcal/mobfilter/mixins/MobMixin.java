@@ -0,0 +1,25 @@
+package net.pcal.mobfilter.mixins;
+
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.Mob;
+import net.pcal.mobfilter.SpawnReasonHolder;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+
+@SuppressWarnings("ALL")
+@Mixin(Mob.class)
+public abstract class MobMixin implements SpawnReasonHolder {
+
+    @Unique
+    private EntitySpawnReason mf_spawnReason;
+
+    @Override
+    public EntitySpawnReason mf_getSpawnReason() {
+        return this.mf_spawnReason;
+    }
+
+    @Override
+    public void mf_setSpawnReason(EntitySpawnReason reason) {
+        this.mf_spawnReason = reason;
+    }
+}
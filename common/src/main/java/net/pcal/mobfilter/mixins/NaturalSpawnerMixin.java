@@ -0,0 +1,38 @@
+package net.pcal.mobfilter.mixins;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.random.WeightedList;
+import net.minecraft.world.entity.MobCategory;
+import net.minecraft.world.level.NaturalSpawner;
+import net.minecraft.world.level.StructureManager;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.biome.MobSpawnSettings;
+import net.minecraft.world.level.chunk.ChunkGenerator;
+import net.pcal.mobfilter.MixinService;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@SuppressWarnings("ALL")
+@Mixin(NaturalSpawner.class)
+public abstract class NaturalSpawnerMixin {
+
+    /**
+     * Lets us reject natural spawns before the mob gets constructed.
+     */
+    @Inject(method = "isValidSpawnPostionForType", at = @At("RETURN"), cancellable = true, remap = false)
+    private static void mf_isValidSpawnPostionForType(ServerLevel serverLevel, MobCategory category, StructureManager structureManager, ChunkGenerator generator, MobSpawnSettings.SpawnerData spawnerData, BlockPos.MutableBlockPos pos, double distance, CallbackInfoReturnable<Boolean> cir) {
+        MixinService.get().NaturalSpawner_isValidSpawnPostionForType(serverLevel, spawnerData, pos, cir);
+    }
+
+    /**
+     * Lets us remove mobs that are never allowed to spawn naturally from the spawn lists.
+     */
+    @Inject(method = "mobsAt", at = @At("RETURN"), cancellable = true, remap = false)
+    private static void mf_mobsAt(ServerLevel serverLevel, StructureManager structureManager, ChunkGenerator generator, MobCategory category, BlockPos pos, Holder<Biome> biome, CallbackInfoReturnable<WeightedList<MobSpawnSettings.SpawnerData>> cir) {
+        MixinService.get().NaturalSpawner_mobsAt(serverLevel, cir);
+    }
+}
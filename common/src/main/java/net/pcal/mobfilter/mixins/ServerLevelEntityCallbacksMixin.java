@@ -0,0 +1,35 @@
+package net.pcal.mobfilter.mixins;
+
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.pcal.mobfilter.MixinService;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@SuppressWarnings("ALL")
+@Mixin(targets = "net.minecraft.server.level.ServerLevel$EntityCallbacks")
+public abstract class ServerLevelEntityCallbacksMixin {
+
+    @Shadow(remap = false)
+    @Final
+    ServerLevel this$0;
+
+    @Inject(at = @At("TAIL"), method = "onTrackingStart", remap = false)
+    private void mf_onTrackingStart(Entity entity, CallbackInfo ci) {
+        MixinService.get().EntityCallbacks_onTrackingStart(this$0, entity);
+    }
+
+    @Inject(at = @At("TAIL"), method = "onTrackingEnd", remap = false)
+    private void mf_onTrackingEnd(Entity entity, CallbackInfo ci) {
+        MixinService.get().EntityCallbacks_onTrackingEnd(this$0, entity);
+    }
+
+    @Inject(at = @At("TAIL"), method = "onSectionChange", remap = false)
+    private void mf_onSectionChange(Entity entity, CallbackInfo ci) {
+        MixinService.get().EntityCallbacks_onSectionChange(this$0, entity);
+    }
+}
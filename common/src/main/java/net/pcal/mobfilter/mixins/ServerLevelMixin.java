@@ -2,19 +2,53 @@ package net.pcal.mobfilter.mixins;
 
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.entity.Entity;
+import net.pcal.mobfilter.LevelSnapshot;
+import net.pcal.mobfilter.LevelSnapshotHolder;
 import net.pcal.mobfilter.MixinService;
+import net.pcal.mobfilter.MobCounts;
+import net.pcal.mobfilter.MobCountsHolder;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
+import java.util.function.BooleanSupplier;
+
 
 @SuppressWarnings("ALL")
 @Mixin(ServerLevel.class)
-public abstract class ServerLevelMixin {
+public abstract class ServerLevelMixin implements LevelSnapshotHolder, MobCountsHolder {
+
+    @Unique
+    private volatile LevelSnapshot mf_levelSnapshot;
+
+    @Unique
+    private final MobCounts mf_mobCounts = new MobCounts();
 
     @Inject(at = @At("HEAD"), cancellable = true, method = "addFreshEntity", remap = false)
     private void mf_addFreshEntity(Entity entity, CallbackInfoReturnable<Boolean> cir) {
         MixinService.get().ServerLevel_addFreshEntity((ServerLevel)(Object)this, entity, cir);
     }
+
+    @Inject(at = @At("HEAD"), method = "tick", remap = false)
+    private void mf_tick(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
+        MixinService.get().ServerLevel_tick((ServerLevel)(Object)this);
+    }
+
+    @Override
+    public LevelSnapshot mf_getLevelSnapshot() {
+        return this.mf_levelSnapshot;
+    }
+
+    @Override
+    public void mf_setLevelSnapshot(LevelSnapshot snapshot) {
+        this.mf_levelSnapshot = snapshot;
+    }
+
+    @Override
+    public MobCounts mf_getMobCounts() {
+        return this.mf_mobCounts;
+    }
 }
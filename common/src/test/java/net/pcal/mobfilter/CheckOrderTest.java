@@ -0,0 +1,75 @@
+package net.pcal.mobfilter;
+
+import com.google.common.collect.ImmutableList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.resources.Identifier;
+import net.pcal.mobfilter.RuleCheck.BiomeCheck;
+import net.pcal.mobfilter.RuleCheck.BlockPosCheck;
+import net.pcal.mobfilter.RuleCheck.LightLevelCheck;
+import net.pcal.mobfilter.RuleCheck.MoonPhaseCheck;
+import net.pcal.mobfilter.RuleCheck.RandomCheck;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static net.pcal.mobfilter.Rule.RuleAction.DISALLOW_SPAWN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class CheckOrderTest {
+
+    private static final BiomeCheck BIOME = new BiomeCheck(IdMatcher.of(new String[]{"minecraft:plains"}));
+    private static final LightLevelCheck LIGHT = new LightLevelCheck(0, 7);
+    private static final RandomCheck RANDOM = new RandomCheck(0.5);
+    private static final BlockPosCheck BLOCK_X = new BlockPosCheck(Direction.Axis.X, 0, 100);
+    private static final MoonPhaseCheck MOON = new MoonPhaseCheck(Matcher.of(new Integer[]{0}));
+
+    /**
+     * Without any samples, checks should be sorted by cost, but never moved across a RandomCheck.
+     */
+    @Test
+    public void testStaticOrder() {
+        final List<Rule> rules = config(ImmutableList.of(BIOME, LIGHT, RANDOM, MOON, BLOCK_X));
+        final List<Rule> reordered = new CheckOrder(rules).reorder(rules);
+        assertEquals(ImmutableList.of(LIGHT, BIOME, RANDOM, BLOCK_X, MOON), reordered.get(0).checks());
+        assertNull(new CheckOrder(reordered).reorder(reordered));
+    }
+
+    /**
+     * A check that almost always fails should move ahead of a cheaper one that almost always passes.
+     */
+    @Test
+    public void testSampledOrder() {
+        final List<Rule> rules = config(ImmutableList.of(BLOCK_X, MOON));
+        final CheckOrder checkOrder = new CheckOrder(rules);
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.entityId = Identifier.parse("minecraft:zombie");
+        att.blockPos = new BlockPos(50, 64, 50); // always in BLOCK_X
+        att.moonPhase = 4; // never MOON
+        for (int i = 0; i < 1000; i++) checkOrder.sample(rules.get(0), att);
+        assertEquals(ImmutableList.of(MOON, BLOCK_X), checkOrder.reorder(rules).get(0).checks());
+    }
+
+    /**
+     * Sampling should still never move a check across a RandomCheck, even one that always fails and would
+     * otherwise go first.  The checks on either side of it are reordered among themselves.
+     */
+    @Test
+    public void testSampledOrderAroundRandom() {
+        final BlockPosCheck blockZ = new BlockPosCheck(Direction.Axis.Z, 1000, 2000);
+        final List<Rule> rules = config(ImmutableList.of(BLOCK_X, MOON, RANDOM, LIGHT, blockZ));
+        final CheckOrder checkOrder = new CheckOrder(rules);
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.entityId = Identifier.parse("minecraft:zombie");
+        att.blockPos = new BlockPos(50, 64, 50); // always in BLOCK_X, never in blockZ
+        att.moonPhase = 4; // never MOON
+        att.rawBrightness = 0; // always in LIGHT
+        for (int i = 0; i < 1000; i++) checkOrder.sample(rules.get(0), att);
+        assertEquals(ImmutableList.of(MOON, BLOCK_X, RANDOM, blockZ, LIGHT), checkOrder.reorder(rules).get(0).checks());
+    }
+
+    private static List<Rule> config(final List<RuleCheck> checks) {
+        return TestConfigs.config(new Rule("test", checks, DISALLOW_SPAWN));
+    }
+}
@@ -0,0 +1,87 @@
+package net.pcal.mobfilter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ConfigCacheTest {
+
+    /**
+     * Writing a config to the cache and reading it back should give the same rules.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        final byte[] json = readResource("ConfigLoadersTest/testJson/test-config.json5");
+        final byte[] simple = readResource("ConfigLoadersTest/testSimple/test-config.simple");
+        final Config.Builder builder = Config.builder();
+        JsonConfigLoader.loadRules(new ByteArrayInputStream(json), builder);
+        SimpleConfigLoader.loadRules(new ByteArrayInputStream(simple), builder);
+        final Config config = builder.build();
+
+        final byte[] hash = ConfigCache.hash(json, simple);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConfigCache.write(out, hash, config);
+        final Config cached = ConfigCache.read(new ByteArrayInputStream(out.toByteArray()), hash);
+        assertEquals(config.getRules().toString(), cached.getRules().toString());
+        assertEquals(config.getLogLevel(), cached.getLogLevel());
+    }
+
+    /**
+     * A cache built from different files shouldn't be used.
+     */
+    @Test
+    public void testStaleCache() throws Exception {
+        final byte[] json = readResource("ConfigLoadersTest/testJson/test-config.json5");
+        final Config.Builder builder = Config.builder();
+        JsonConfigLoader.loadRules(new ByteArrayInputStream(json), builder);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConfigCache.write(out, ConfigCache.hash(json, null), builder.build());
+        final byte[] edited = ConfigCache.hash(json, "ALLOW SPAWN".getBytes(UTF_8));
+        assertNull(ConfigCache.read(new ByteArrayInputStream(out.toByteArray()), edited));
+    }
+
+    /**
+     * A cache written by a different version of the mod shouldn't be used, even if the files are the same.
+     */
+    @Test
+    public void testOtherModVersion() throws Exception {
+        final byte[] json = readResource("ConfigLoadersTest/testJson/test-config.json5");
+        final Config.Builder builder = Config.builder();
+        JsonConfigLoader.loadRules(new ByteArrayInputStream(json), builder);
+        final byte[] hash = ConfigCache.hash(json, null);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConfigCache.write(out, hash, builder.build(), "1.0.0");
+        assertNull(ConfigCache.read(new ByteArrayInputStream(out.toByteArray()), hash, "1.0.1"));
+        assertNotNull(ConfigCache.read(new ByteArrayInputStream(out.toByteArray()), hash, "1.0.0"));
+    }
+
+    /**
+     * Hashing the files as they're streamed should give the same hash as hashing their contents.
+     */
+    @Test
+    public void testHashFiles(@TempDir final Path dir) throws Exception {
+        final byte[] json = readResource("ConfigLoadersTest/testJson/test-config.json5");
+        final byte[] simple = readResource("ConfigLoadersTest/testSimple/test-config.simple");
+        final Path jsonFile = Files.write(dir.resolve("mobfilter.json5"), json);
+        final Path simpleFile = Files.write(dir.resolve("mobfilter.simple"), simple);
+        assertArrayEquals(ConfigCache.hash(json, simple), ConfigCache.hash(jsonFile, simpleFile));
+    }
+
+    private byte[] readResource(final String name) throws Exception {
+        try (final InputStream in = requireNonNull(getClass().getClassLoader().getResourceAsStream(name))) {
+            return in.readAllBytes();
+        }
+    }
+}
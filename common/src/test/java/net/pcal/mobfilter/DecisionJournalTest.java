@@ -0,0 +1,66 @@
+package net.pcal.mobfilter;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.Identifier;
+import net.minecraft.world.entity.EntitySpawnReason;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static net.pcal.mobfilter.JournalReader.FLAG_STATIC;
+import static net.pcal.mobfilter.JournalReader.VERDICT_ALLOW;
+import static net.pcal.mobfilter.JournalReader.VERDICT_DISALLOW;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DecisionJournalTest {
+
+    /**
+     * Decisions written to the journal should come back out of JournalReader, with their names.
+     */
+    @Test
+    public void testRoundTrip(@TempDir final Path tempDir) throws Exception {
+        final Path file = tempDir.resolve("journal.bin");
+        final DecisionJournal journal = new DecisionJournal(file, 1, id -> "test:mob" + id);
+        journal.record(100, Identifier.parse("minecraft:overworld"), null, EntitySpawnReason.NATURAL, 3, VERDICT_DISALLOW, FLAG_STATIC);
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.dimensionId = Identifier.parse("minecraft:the_nether");
+        att.dayTime = 6000L; // the journal records game time, not time of day
+        att.gameTime = 200L;
+        att.blockPos = new BlockPos(1, -60, -3);
+        att.spawnReason = EntitySpawnReason.SPAWNER;
+        journal.record(att, -1, VERDICT_ALLOW, (byte) 0);
+        journal.close();
+
+        final String[] lines = read(file);
+        assertEquals(3, lines.length);
+        assertEquals("tick=100 level=minecraft:overworld entity=? reason=NATURAL pos=? rule=3 DISALLOW (static)", lines[1]);
+        assertEquals("tick=200 level=minecraft:the_nether entity=? reason=SPAWNER pos=[1, -60, -3] rule=none ALLOW", lines[2]);
+    }
+
+    /**
+     * Starting a new journal should keep the last one around rather than truncating it.
+     */
+    @Test
+    public void testPreviousJournalKept(@TempDir final Path tempDir) throws Exception {
+        final Path file = tempDir.resolve("journal.bin");
+        final DecisionJournal first = new DecisionJournal(file, 1, id -> "test:mob" + id);
+        first.record(100, Identifier.parse("minecraft:overworld"), null, EntitySpawnReason.NATURAL, 3, VERDICT_DISALLOW, FLAG_STATIC);
+        first.close();
+        new DecisionJournal(file, 1, id -> "test:mob" + id).close();
+
+        assertEquals(1, read(file).length);
+        final String[] lines = read(tempDir.resolve("journal.bin.old"));
+        assertEquals(2, lines.length);
+        assertEquals("tick=100 level=minecraft:overworld entity=? reason=NATURAL pos=? rule=3 DISALLOW (static)", lines[1]);
+    }
+
+    private static String[] read(final Path file) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JournalReader.read(file, new PrintStream(out, true, UTF_8));
+        return out.toString(UTF_8).split("\\R");
+    }
+}
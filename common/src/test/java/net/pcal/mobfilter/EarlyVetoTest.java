@@ -0,0 +1,139 @@
+package net.pcal.mobfilter;
+
+import com.google.common.collect.ImmutableList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.resources.Identifier;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.pcal.mobfilter.RuleCheck.BlockPosCheck;
+import net.pcal.mobfilter.RuleCheck.EntityIdCheck;
+import net.pcal.mobfilter.RuleCheck.RandomCheck;
+import net.pcal.mobfilter.RuleCheck.SpawnReasonCheck;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.pcal.mobfilter.Rule.RuleAction.ALLOW_SPAWN;
+import static net.pcal.mobfilter.Rule.RuleAction.DISALLOW_SPAWN;
+import static net.pcal.mobfilter.Rule.RuleAction.THROTTLE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The early veto runs before the mob is constructed, and the full decision runs again when it's added.  A veto
+ * has to be a decision the full evaluation would also make, or we'd be blocking spawns the rules allow.
+ */
+public class EarlyVetoTest {
+
+    private static final String[] ENTITIES = {"minecraft:zombie", "minecraft:creeper", "minecraft:cow"};
+    private static final EntitySpawnReason[] REASONS = {EntitySpawnReason.NATURAL, EntitySpawnReason.SPAWNER, EntitySpawnReason.SPAWN_ITEM_USE};
+
+    /**
+     * With only deterministic rules, the veto sees the whole chain, so it should agree with the full decision
+     * about every spawn.
+     */
+    @Test
+    public void testDeterministicRulesAgree() {
+        final RuleChain rules = RuleChain.build(TestConfigs.config(
+                box("safe zone", -100, 100, ALLOW_SPAWN),
+                new Rule("no creepers", ImmutableList.of(entity("minecraft:creeper")), DISALLOW_SPAWN),
+                new Rule("no spawner zombies", ImmutableList.of(
+                        entity("minecraft:zombie"), reason(EntitySpawnReason.SPAWNER)), DISALLOW_SPAWN),
+                box("no spawns out east", 1000, 2000, DISALLOW_SPAWN)));
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        int vetoes = 0;
+        for (final String entity : ENTITIES) {
+            for (final EntitySpawnReason reason : REASONS) {
+                for (int x = -500; x <= 2500; x += 50) {
+                    set(att, entity, reason, x);
+                    final boolean vetoed = ConfigService.isSpawnVetoed(att, rules);
+                    assertEquals(!vetoed, ConfigService.isSpawnAllowed(att, rules), entity + " " + reason + " " + x);
+                    if (vetoed) vetoes++;
+                }
+            }
+        }
+        assertTrue(vetoes > 0);
+    }
+
+    /**
+     * The veto has to stop at the first rule with a RandomCheck, since that rule might match when the mob is
+     * added even if it didn't match before.  Rules before it can still veto, and whatever is vetoed must be
+     * disallowed every time.
+     */
+    @Test
+    public void testNondeterministicRulesNeverVeto() {
+        final RuleChain rules = RuleChain.build(TestConfigs.config(
+                new Rule("no creepers", ImmutableList.of(entity("minecraft:creeper")), DISALLOW_SPAWN),
+                new Rule("half the zombies", ImmutableList.of(entity("minecraft:zombie"), new RandomCheck(0.5)), ALLOW_SPAWN),
+                new Rule("no zombies", ImmutableList.of(entity("minecraft:zombie")), DISALLOW_SPAWN),
+                new Rule("fewer cows", ImmutableList.of(entity("minecraft:cow"), new RandomCheck(0.5)), DISALLOW_SPAWN)));
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        for (final String entity : ENTITIES) {
+            for (final EntitySpawnReason reason : REASONS) {
+                set(att, entity, reason, 0);
+                final boolean vetoed = ConfigService.isSpawnVetoed(att, rules);
+                assertEquals(entity.equals("minecraft:creeper"), vetoed, entity + " " + reason);
+                boolean allowed = false, disallowed = false;
+                for (int i = 0; i < 200; i++) {
+                    if (ConfigService.isSpawnAllowed(att, rules)) allowed = true; else disallowed = true;
+                }
+                if (vetoed) assertFalse(allowed, entity + " " + reason);
+                if (!vetoed) assertTrue(allowed && disallowed, entity + " " + reason); // the coin flips went both ways
+            }
+        }
+    }
+
+    /**
+     * A THROTTLE rule isn't deterministic either, so neither it nor anything after it can veto, and asking
+     * for a veto mustn't take any tokens.
+     */
+    @Test
+    public void testThrottleNeverVetoes() {
+        final AtomicLong clock = new AtomicLong();
+        final RuleChain rules = RuleChain.build(TestConfigs.config(
+                new Rule("no creepers", ImmutableList.of(entity("minecraft:creeper")), DISALLOW_SPAWN),
+                new Rule("slow zombies", ImmutableList.of(entity("minecraft:zombie")), THROTTLE, -1,
+                        new Throttle(60, 1, Throttle.Scope.CHUNK, clock::get)),
+                new Rule("no spawner zombies", ImmutableList.of(
+                        entity("minecraft:zombie"), reason(EntitySpawnReason.SPAWNER)), DISALLOW_SPAWN)));
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        set(att, "minecraft:zombie", EntitySpawnReason.NATURAL, 0);
+        for (int i = 0; i < 10; i++) assertFalse(ConfigService.isSpawnVetoed(att, rules));
+        assertTrue(ConfigService.isSpawnAllowed(att, rules)); // the token is still there
+        assertFalse(ConfigService.isSpawnVetoed(att, rules)); // out of tokens, but that's still for later
+        assertFalse(ConfigService.isSpawnAllowed(att, rules));
+        clock.addAndGet(1000);
+        set(att, "minecraft:zombie", EntitySpawnReason.SPAWNER, 0);
+        assertFalse(ConfigService.isSpawnVetoed(att, rules)); // deterministic, but behind the throttle
+        assertFalse(ConfigService.isSpawnAllowed(att, rules));
+        set(att, "minecraft:creeper", EntitySpawnReason.SPAWNER, 0);
+        assertTrue(ConfigService.isSpawnVetoed(att, rules));
+        assertFalse(ConfigService.isSpawnAllowed(att, rules));
+    }
+
+    // ===================================================================================
+    // Private
+
+    private static void set(final StubSpawnAttempt att, final String entity, final EntitySpawnReason reason, final int x) {
+        att.entityId = Identifier.parse(entity);
+        att.dimensionId = Identifier.parse("minecraft:overworld");
+        att.spawnReason = reason;
+        att.blockPos = new BlockPos(x, 64, x);
+    }
+
+    private static EntityIdCheck entity(final String id) {
+        return new EntityIdCheck(IdMatcher.of(new String[]{id}));
+    }
+
+    private static SpawnReasonCheck reason(final EntitySpawnReason reason) {
+        return new SpawnReasonCheck(EnumSet.of(reason));
+    }
+
+    private static Rule box(final String name, final int min, final int max, final Rule.RuleAction action) {
+        return new Rule(name, ImmutableList.of(
+                new BlockPosCheck(Direction.Axis.X, min, max),
+                new BlockPosCheck(Direction.Axis.Z, min, max)), action);
+    }
+}
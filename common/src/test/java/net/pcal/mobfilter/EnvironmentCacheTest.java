@@ -0,0 +1,124 @@
+package net.pcal.mobfilter;
+
+import net.minecraft.core.BlockPos;
+import net.pcal.mobfilter.RuleCheck.WeatherType;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * The cache can't be handed a real ServerLevel here, so these go through the weather lookup, which only uses the
+ * level as a key and works the weather out from the spawn attempt.  Changing the stub's weather after a lookup
+ * shows whether the cache remembered the old answer.  The stub has no biome, so rain can't be worked out and
+ * thunder stands in for a change of weather.
+ */
+public class EnvironmentCacheTest {
+
+    @Test
+    public void testRemembersWithinTick() {
+        final EnvironmentCache cache = new EnvironmentCache();
+        final Object level = new Object();
+        final StubSpawnAttempt att = attempt(WeatherType.CLEAR);
+        assertEquals(WeatherType.CLEAR, cache.getWeatherType(level, 100, att));
+        att.weatherType = WeatherType.THUNDER;
+        assertEquals(WeatherType.CLEAR, cache.getWeatherType(level, 100, att));
+        att.blockPos = new BlockPos(1, 64, 0);
+        assertEquals(WeatherType.THUNDER, cache.getWeatherType(level, 100, att)); // different position
+    }
+
+    @Test
+    public void testClearedWhenGameTimeChanges() {
+        final EnvironmentCache cache = new EnvironmentCache();
+        final Object level = new Object();
+        final StubSpawnAttempt att = attempt(WeatherType.CLEAR);
+        assertEquals(WeatherType.CLEAR, cache.getWeatherType(level, 100, att));
+        att.weatherType = WeatherType.THUNDER;
+        assertEquals(WeatherType.THUNDER, cache.getWeatherType(level, 101, att));
+    }
+
+    @Test
+    public void testClearedWhenLevelChanges() {
+        final EnvironmentCache cache = new EnvironmentCache();
+        final Object overworld = new Object();
+        final Object nether = new Object();
+        final StubSpawnAttempt att = attempt(WeatherType.CLEAR);
+        assertEquals(WeatherType.CLEAR, cache.getWeatherType(overworld, 100, att));
+        att.weatherType = WeatherType.THUNDER;
+        assertEquals(WeatherType.THUNDER, cache.getWeatherType(nether, 100, att));
+        assertEquals(WeatherType.THUNDER, cache.getWeatherType(overworld, 100, att)); // nothing kept from before
+    }
+
+    @Test
+    public void testClearedByClear() {
+        final EnvironmentCache cache = new EnvironmentCache();
+        final Object level = new Object();
+        final StubSpawnAttempt att = attempt(WeatherType.CLEAR);
+        assertEquals(WeatherType.CLEAR, cache.getWeatherType(level, 100, att));
+        cache.clear();
+        att.weatherType = WeatherType.THUNDER;
+        assertEquals(WeatherType.THUNDER, cache.getWeatherType(level, 100, att));
+    }
+
+    /**
+     * A full map is emptied before anything else goes in, so it never holds more than MAX_ENTRIES.
+     */
+    @Test
+    public void testMaxEntries() {
+        final EnvironmentCache cache = new EnvironmentCache();
+        final Object level = new Object();
+        final StubSpawnAttempt att = attempt(WeatherType.CLEAR);
+        for (int x = 0; x < EnvironmentCache.MAX_ENTRIES; x++) {
+            att.blockPos = new BlockPos(0, 64, 0);
+            cache.getWeatherType(level, 100, att);
+        }
+        att.weatherType = WeatherType.THUNDER;
+        att.blockPos = new BlockPos(EnvironmentCache.MAX_ENTRIES - 1, 64, 0);
+        assertEquals(WeatherType.CLEAR, cache.getWeatherType(level, 100, att)); // full, but still remembered
+
+        att.blockPos = new BlockPos(EnvironmentCache.MAX_ENTRIES, 64, 0);
+        assertEquals(WeatherType.THUNDER, cache.getWeatherType(level, 100, att)); // one too many
+        att.blockPos = new BlockPos(0, 64, 0);
+        assertEquals(WeatherType.THUNDER, cache.getWeatherType(level, 100, att));
+    }
+
+    /**
+     * The cache mustn't keep an unloaded level alive.
+     */
+    @Test
+    public void testLevelHeldWeakly() throws Exception {
+        final EnvironmentCache cache = new EnvironmentCache();
+        Object level = new Object();
+        final WeakReference<Object> ref = new WeakReference<>(level);
+        cache.getWeatherType(level, 100, attempt(WeatherType.CLEAR));
+        level = null;
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+    }
+
+    @Test
+    public void testBoxedDayTimeReused() {
+        final EnvironmentCache cache = new EnvironmentCache();
+        final Long boxed = cache.boxDayTime(18000);
+        assertSame(boxed, cache.boxDayTime(18000));
+        assertEquals(18001L, cache.boxDayTime(18001));
+        cache.clear();
+        assertEquals(18001L, cache.boxDayTime(18001));
+    }
+
+    // ===================================================================================
+    // Private
+
+    private static StubSpawnAttempt attempt(final WeatherType weatherType) {
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.blockPos = new BlockPos(0, 64, 0);
+        att.weatherType = weatherType;
+        return att;
+    }
+}
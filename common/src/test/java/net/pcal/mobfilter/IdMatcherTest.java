@@ -4,6 +4,7 @@ import net.minecraft.resources.Identifier;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class IdMatcherTest {
@@ -24,6 +25,30 @@ public class IdMatcherTest {
         assertFalse(IdMatcher.of(new String[] { "minecraft:cobblestone", "mymod:*" }).isMatch(r("minecraft:redstone")));
     }
 
+    @Test
+    public void testGlobsAndRegexes() {
+        final IdMatcher zombies = IdMatcher.of(new String[] { "minecraft:*_zombie", "mymod:boss_?" });
+        assertTrue(zombies.isMatch(r("minecraft:zombie_zombie")));
+        assertTrue(zombies.isMatch(r("minecraft:_zombie")));
+        assertTrue(zombies.isMatch(r("mymod:boss_1")));
+        assertFalse(zombies.isMatch(r("minecraft:zombie")));
+        assertFalse(zombies.isMatch(r("mymod:boss_12")));
+        assertFalse(zombies.isMatch(r("othermod:drowned_zombie")));
+
+        assertTrue(IdMatcher.of(new String[] { "*:zombie" }).isMatch(r("mymod:zombie")));
+        assertTrue(IdMatcher.of(new String[] { "minecraft:pig*" }).isMatch(r("minecraft:piglin_brute")));
+        assertFalse(IdMatcher.of(new String[] { "minecraft:pig.n" }).isMatch(r("minecraft:pigin"))); // dots are literal
+
+        final IdMatcher regex = IdMatcher.of(new String[] { "/mymod:boss_[0-9]+/", "minecraft:cow" });
+        assertTrue(regex.isMatch(r("mymod:boss_12")));
+        assertTrue(regex.isMatch(r("minecraft:cow")));
+        assertFalse(regex.isMatch(r("mymod:boss_")));
+        assertFalse(regex.isMatch(r("xmymod:boss_1"))); // must match the whole id
+
+        assertThrows(IllegalArgumentException.class, () -> IdMatcher.of(new String[] { "/[/" }));
+        assertThrows(IllegalArgumentException.class, () -> IdMatcher.of(new String[] { "zombie*" }));
+    }
+
     private static Identifier r(String val) {
         return Identifier.parse(val);
     }
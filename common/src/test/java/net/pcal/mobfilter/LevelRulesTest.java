@@ -0,0 +1,193 @@
+package net.pcal.mobfilter;
+
+import com.google.common.collect.ImmutableList;
+import com.mojang.serialization.Lifecycle;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.MappedRegistry;
+import net.minecraft.core.RegistrationInfo;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.data.registries.VanillaRegistries;
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.Difficulty;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.level.biome.Biome;
+import net.pcal.mobfilter.RuleCheck.BiomeCheck;
+import net.pcal.mobfilter.RuleCheck.BiomeSetCheck;
+import net.pcal.mobfilter.RuleCheck.EntityIdCheck;
+import net.pcal.mobfilter.RuleCheck.TimeOfDayCheck;
+import net.pcal.mobfilter.RuleCheck.WeatherCheck;
+import net.pcal.mobfilter.RuleCheck.WeatherType;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static net.pcal.mobfilter.LevelRules.TICK_DEAD;
+import static net.pcal.mobfilter.LevelRules.TICK_EVALUATE;
+import static net.pcal.mobfilter.LevelRules.TICK_FOLDED;
+import static net.pcal.mobfilter.Rule.RuleAction.DISALLOW_SPAWN;
+import static net.pcal.mobfilter.TestConfigs.config;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LevelRulesTest {
+
+    private static final Identifier OVERWORLD = Identifier.parse("minecraft:overworld");
+
+    private static Registry<Biome> biomes;
+
+    /**
+     * The biome registry is part of the level, so we make one from the vanilla biomes.
+     */
+    @BeforeAll
+    public static void bootstrap() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        final MappedRegistry<Biome> registry = new MappedRegistry<>(Registries.BIOME, Lifecycle.stable());
+        VanillaRegistries.createLookup().lookupOrThrow(Registries.BIOME).listElements()
+                .forEach(biome -> registry.register(biome.key(), biome.value(), RegistrationInfo.BUILT_IN));
+        biomes = registry.freeze();
+    }
+
+    /**
+     * BiomeChecks should be compiled to BiomeSetChecks for the level, and should decide every biome the same
+     * way the uncompiled rules do.
+     */
+    @Test
+    public void testBiomeSetCheck() {
+        final List<Rule> rules = config(
+                new Rule("no ocean zombies", ImmutableList.of(entity("minecraft:zombie"), biome("*ocean*")), DISALLOW_SPAWN),
+                new Rule("no desert", ImmutableList.of(biome("minecraft:desert", "minecraft:badlands")), DISALLOW_SPAWN));
+        final RuleChain compiled = LevelRules.build(rules, "world", OVERWORLD, Difficulty.NORMAL, biomes)
+                .getRuleIndex().getRules(EntityType.ZOMBIE);
+        assertEquals(2, compiled.getRules().size());
+        for (final Rule rule : compiled.getRules()) {
+            assertInstanceOf(BiomeSetCheck.class, rule.checks().get(rule.checks().size() - 1), rule.toString());
+        }
+        final RuleChain uncompiled = RuleChain.build(rules);
+
+        final StubSpawnAttempt att = zombie();
+        int disallowed = 0;
+        for (final Holder.Reference<Biome> biome : biomes.listElements().toList()) {
+            att.biomeHolder = biome;
+            att.biomeId = biome.key().identifier();
+            final boolean allowed = ConfigService.isSpawnAllowed(att, compiled);
+            assertEquals(ConfigService.isSpawnAllowed(att, uncompiled), allowed, att.biomeId.toString());
+            if (!allowed) disallowed++;
+        }
+        assertTrue(disallowed >= 3, "only " + disallowed + " biomes disallowed");
+    }
+
+    /**
+     * Without a biome holder, BiomeSetCheck can't look up the biome's id and falls back to matching the
+     * biome id like the uncompiled check.
+     */
+    @Test
+    public void testBiomeSetCheckFallback() {
+        final List<Rule> rules = config(new Rule("no desert", ImmutableList.of(biome("minecraft:desert")), DISALLOW_SPAWN));
+        final RuleChain compiled = LevelRules.build(rules, "world", OVERWORLD, Difficulty.NORMAL, biomes)
+                .getRuleIndex().getRules(EntityType.ZOMBIE);
+        final StubSpawnAttempt att = zombie();
+        att.biomeId = Identifier.parse("minecraft:desert");
+        assertFalse(ConfigService.isSpawnAllowed(att, compiled));
+        att.biomeId = Identifier.parse("minecraft:plains");
+        assertTrue(ConfigService.isSpawnAllowed(att, compiled));
+        att.biomeId = null;
+        assertFalse(ConfigService.isSpawnAllowed(att, compiled)); // unknown biome is assumed to match
+    }
+
+    /**
+     * Tick states should be worked out once per game time, from that tick's day time and weather.
+     */
+    @Test
+    public void testTickStates() {
+        final LevelRules lr = LevelRules.build(config(
+                new Rule("night", ImmutableList.of(new TimeOfDayCheck(13000, 23000)), DISALLOW_SPAWN),
+                new Rule("thunder", ImmutableList.of(weather(WeatherType.THUNDER)), DISALLOW_SPAWN),
+                new Rule("rain", ImmutableList.of(weather(WeatherType.RAIN)), DISALLOW_SPAWN),
+                new Rule("zombies", ImmutableList.of(entity("minecraft:zombie")), DISALLOW_SPAWN),
+                new Rule("rainy nights", ImmutableList.of(new TimeOfDayCheck(13000, 23000), weather(WeatherType.RAIN)), DISALLOW_SPAWN)),
+                "world", OVERWORLD, Difficulty.NORMAL, biomes);
+
+        assertArrayEquals(new byte[]{TICK_DEAD, TICK_DEAD, TICK_EVALUATE, TICK_EVALUATE, TICK_DEAD},
+                lr.getTickStates(100, 1000, false)); // clear day
+        assertArrayEquals(new byte[]{TICK_DEAD, TICK_DEAD, TICK_EVALUATE, TICK_EVALUATE, TICK_DEAD},
+                lr.getTickStates(100, 14000, true)); // same tick, so not looked at again
+        assertArrayEquals(new byte[]{TICK_FOLDED, TICK_FOLDED, TICK_DEAD, TICK_EVALUATE, TICK_DEAD},
+                lr.getTickStates(101, 14000, true)); // thunderstorm at night
+        assertArrayEquals(new byte[]{TICK_FOLDED, TICK_DEAD, TICK_EVALUATE, TICK_EVALUATE, TICK_EVALUATE},
+                lr.getTickStates(102, 3 * 24000 + 14000, false)); // night three days later
+    }
+
+    /**
+     * Levels whose rules have no tick-scoped checks don't need tick states at all.
+     */
+    @Test
+    public void testNoTickStates() {
+        final LevelRules lr = LevelRules.build(config(
+                new Rule("zombies", ImmutableList.of(entity("minecraft:zombie")), DISALLOW_SPAWN)),
+                "world", OVERWORLD, Difficulty.NORMAL, biomes);
+        assertNull(lr.getTickStates(100, 1000, false));
+    }
+
+    @Test
+    public void testTimeOfDayCheck() {
+        final TimeOfDayCheck night = new TimeOfDayCheck(13000, 23000);
+        assertEquals(Boolean.FALSE, night.isMatch(12999, false));
+        assertEquals(Boolean.TRUE, night.isMatch(13000, false));
+        assertEquals(Boolean.TRUE, night.isMatch(23000, true));
+        assertEquals(Boolean.FALSE, night.isMatch(23001, false));
+        assertEquals(Boolean.TRUE, night.isMatch(10 * 24000 + 18000, false));
+    }
+
+    /**
+     * Only thunder is the same everywhere in the level; otherwise the weather check can only be answered for
+     * the level if it doesn't care whether it's clear, raining or snowing.
+     */
+    @Test
+    public void testWeatherCheck() {
+        final WeatherCheck thunder = weather(WeatherType.THUNDER);
+        assertEquals(Boolean.TRUE, thunder.isMatch(0, true));
+        assertEquals(Boolean.FALSE, thunder.isMatch(0, false));
+
+        final WeatherCheck rain = weather(WeatherType.RAIN);
+        assertEquals(Boolean.FALSE, rain.isMatch(0, true));
+        assertNull(rain.isMatch(0, false));
+
+        final WeatherCheck notThunder = weather(WeatherType.CLEAR, WeatherType.RAIN, WeatherType.SNOW);
+        assertEquals(Boolean.FALSE, notThunder.isMatch(0, true));
+        assertEquals(Boolean.TRUE, notThunder.isMatch(0, false));
+    }
+
+    // ===================================================================================
+    // Private
+
+    private static StubSpawnAttempt zombie() {
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.entityId = Identifier.parse("minecraft:zombie");
+        att.entityType = EntityType.ZOMBIE;
+        att.dimensionId = OVERWORLD;
+        att.blockPos = new BlockPos(0, 64, 0);
+        return att;
+    }
+
+    private static EntityIdCheck entity(final String... ids) {
+        return new EntityIdCheck(IdMatcher.of(ids));
+    }
+
+    private static WeatherCheck weather(final WeatherType... types) {
+        return new WeatherCheck(Matcher.of(types));
+    }
+
+    private static BiomeCheck biome(final String... ids) {
+        return new BiomeCheck(IdMatcher.of(ids));
+    }
+}
@@ -0,0 +1,51 @@
+package net.pcal.mobfilter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static net.pcal.mobfilter.MixinService.MinecraftThreadType.SERVER;
+import static net.pcal.mobfilter.MixinService.MinecraftThreadType.WORLDGEN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MixinServiceTest {
+
+    /**
+     * Once the server thread is known, other threads are worldgen threads.  A registered worldgen thread
+     * predicate should still be honored, even for the server thread itself.
+     */
+    @Test
+    public void testDetermineThreadType() throws Exception {
+        final MixinService service = new MixinService();
+        final ThreadLocal<Boolean> isGenerating = ThreadLocal.withInitial(() -> false);
+        service.setServerThread(Thread.currentThread());
+        assertEquals(SERVER, service.determineThreadType(SERVER));
+        assertEquals(WORLDGEN, service.determineThreadType(WORLDGEN));
+        assertEquals(WORLDGEN, getThreadTypeOnOtherThread(service));
+
+        service.registerWorldgenThreads(thread -> isGenerating.get());
+        assertEquals(SERVER, service.determineThreadType(SERVER));
+        isGenerating.set(true);
+        assertEquals(WORLDGEN, service.determineThreadType(SERVER));
+        isGenerating.set(false);
+
+        service.setServerThread(null);
+        service.registerWorldgenThreads(thread -> thread.getName().equals("pregen"));
+        assertEquals(WORLDGEN, getThreadTypeOnOtherThread(service, "pregen"));
+    }
+
+    // ===================================================================================
+    // Private
+
+    private static MixinService.MinecraftThreadType getThreadTypeOnOtherThread(final MixinService service) throws InterruptedException {
+        return getThreadTypeOnOtherThread(service, "other");
+    }
+
+    private static MixinService.MinecraftThreadType getThreadTypeOnOtherThread(final MixinService service, final String name) throws InterruptedException {
+        final AtomicReference<MixinService.MinecraftThreadType> out = new AtomicReference<>();
+        final Thread thread = new Thread(() -> out.set(service.determineThreadType(SERVER)), name);
+        thread.start();
+        thread.join();
+        return out.get();
+    }
+}
@@ -0,0 +1,55 @@
+package net.pcal.mobfilter;
+
+import net.minecraft.world.entity.MobCategory;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+
+import static net.minecraft.world.entity.MobCategory.CREATURE;
+import static net.minecraft.world.entity.MobCategory.MONSTER;
+import static net.pcal.mobfilter.MobCounts.getChunkKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MobCountsTest {
+
+    /**
+     * Counts should follow entities as they're added, move between chunks and go away.
+     */
+    @Test
+    public void testCounts() {
+        final MobCounts counts = new MobCounts();
+        final int monsters = MobCounts.getCategoryMask(EnumSet.of(MONSTER));
+        counts.add(1, MONSTER, getChunkKey(0, 0));
+        counts.add(2, MONSTER, getChunkKey(2, -2));
+        counts.add(3, CREATURE, getChunkKey(0, 0));
+        counts.add(1, MONSTER, getChunkKey(0, 0)); // already counted
+        assertEquals(1, counts.getCount(monsters, 0, 0, 0));
+        assertEquals(2, counts.getCount(monsters, 0, 0, 2));
+        assertEquals(3, counts.getCount(MobCounts.getCategoryMask(EnumSet.of(MONSTER, CREATURE)), 0, 0, 2));
+
+        counts.move(1, MONSTER, getChunkKey(5, 5));
+        assertEquals(0, counts.getCount(monsters, 0, 0, 0));
+        assertEquals(1, counts.getCount(monsters, 4, 4, 1));
+
+        counts.remove(2, MONSTER);
+        counts.remove(2, MONSTER); // already gone
+        assertEquals(0, counts.getCount(monsters, 0, 0, 2));
+        assertEquals(1, counts.getCount(MobCounts.getCategoryMask(EnumSet.of(CREATURE)), 0, 0, 0));
+    }
+
+    /**
+     * The mask should have a bit for each category, so that counting with it picks out the same categories.
+     */
+    @Test
+    public void testCategoryMask() {
+        assertEquals(0, MobCounts.getCategoryMask(EnumSet.noneOf(MobCategory.class)));
+        for (final MobCategory category : MobCategory.values()) {
+            assertEquals(1 << category.ordinal(), MobCounts.getCategoryMask(EnumSet.of(category)));
+        }
+        final MobCounts counts = new MobCounts();
+        counts.add(1, MONSTER, getChunkKey(0, 0));
+        counts.add(2, CREATURE, getChunkKey(0, 0));
+        assertEquals(2, counts.getCount(MobCounts.getCategoryMask(EnumSet.allOf(MobCategory.class)), 0, 0, 0));
+        assertEquals(0, counts.getCount(0, 0, 0, 0));
+    }
+}
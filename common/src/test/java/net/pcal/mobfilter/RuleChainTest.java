@@ -0,0 +1,95 @@
+package net.pcal.mobfilter;
+
+import com.google.common.collect.ImmutableList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.resources.Identifier;
+import net.pcal.mobfilter.RuleCheck.BlockPosCheck;
+import net.pcal.mobfilter.RuleCheck.EntityIdCheck;
+import net.pcal.mobfilter.RuleCheck.TimeOfDayCheck;
+import net.pcal.mobfilter.RuleCheck.WeatherCheck;
+import org.junit.jupiter.api.Test;
+
+import static net.pcal.mobfilter.Rule.RuleAction.ALLOW_SPAWN;
+import static net.pcal.mobfilter.Rule.RuleAction.DISALLOW_SPAWN;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RuleChainTest {
+
+    /**
+     * Make sure the chunk grid only narrows down the boxed rules and doesn't change which rule matches first.
+     */
+    @Test
+    public void testRegionIndexKeepsRuleOrder() {
+        final RuleChain chain = RuleChain.build(ImmutableList.of(
+                box("zone a", -100, 100, -100, 100, ALLOW_SPAWN),
+                new Rule("no creepers", ImmutableList.of(
+                        new EntityIdCheck(IdMatcher.of(new String[]{"minecraft:creeper"}))), DISALLOW_SPAWN),
+                box("zone b", 50, 500, 50, 500, DISALLOW_SPAWN),
+                new Rule("west of here", ImmutableList.of(
+                        new BlockPosCheck(Direction.Axis.X, Integer.MIN_VALUE, 0)), DISALLOW_SPAWN),
+                box("zone c", 1000, 1015, 1000, 1015, DISALLOW_SPAWN)));
+
+        assertArrayEquals(new int[]{1, 3}, chain.getUnboxedPositions());
+        assertEquals(0, chain.getBoxedAt(new BlockPos(100_000, 64, 100_000)).length);
+        assertEquals(2, chain.getBoxedAt(new BlockPos(60, 64, 60)).length);
+
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.entityId = Identifier.parse("minecraft:creeper");
+        att.blockPos = new BlockPos(60, 64, 60);
+        assertTrue(ConfigService.isSpawnAllowed(att, chain)); // zone a comes before no creepers
+        att.blockPos = new BlockPos(200, 64, 200);
+        assertFalse(ConfigService.isSpawnAllowed(att, chain)); // no creepers comes before zone b
+        att.entityId = Identifier.parse("minecraft:zombie");
+        assertFalse(ConfigService.isSpawnAllowed(att, chain)); // zone b
+        att.blockPos = new BlockPos(-200, 64, 200);
+        assertFalse(ConfigService.isSpawnAllowed(att, chain)); // west of here
+        att.blockPos = new BlockPos(1010, 64, 1010);
+        assertFalse(ConfigService.isSpawnAllowed(att, chain)); // zone c
+        att.blockPos = new BlockPos(1020, 64, 1010);
+        assertTrue(ConfigService.isSpawnAllowed(att, chain)); // same chunk as zone c but outside it
+    }
+
+    /**
+     * Without a position, the boxed rules should still be evaluated, and their BlockPosChecks should match
+     * by default as they did before the chunk index.
+     */
+    @Test
+    public void testNoPosition() {
+        final RuleChain chain = RuleChain.build(ImmutableList.of(
+                new Rule("no creepers", ImmutableList.of(
+                        new EntityIdCheck(IdMatcher.of(new String[]{"minecraft:creeper"}))), DISALLOW_SPAWN),
+                box("zone a", -100, 100, -100, 100, DISALLOW_SPAWN),
+                box("zone b", 50, 500, 50, 500, ALLOW_SPAWN)));
+        assertArrayEquals(new int[]{0, 1}, chain.getBoxedAt(null));
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.entityId = Identifier.parse("minecraft:zombie");
+        assertFalse(ConfigService.isSpawnAllowed(att, chain)); // zone a
+    }
+
+    /**
+     * The tick-folded rules should be missing exactly their time and weather checks.
+     */
+    @Test
+    public void testTickFoldedRules() {
+        final EntityIdCheck creeper = new EntityIdCheck(IdMatcher.of(new String[]{"minecraft:creeper"}));
+        final Rule plain = new Rule("plain", ImmutableList.of(creeper), DISALLOW_SPAWN);
+        final Rule timed = new Rule("timed", ImmutableList.of(
+                new TimeOfDayCheck(0, 12000), creeper,
+                new WeatherCheck(Matcher.of(new WeatherType[]{WeatherType.THUNDER}))), DISALLOW_SPAWN);
+        final RuleChain chain = RuleChain.build(ImmutableList.of(plain, timed));
+        assertSame(plain, chain.getTickFolded(0));
+        assertEquals(ImmutableList.of(creeper), chain.getTickFolded(1).checks());
+        assertEquals(timed.name(), chain.getTickFolded(1).name());
+    }
+
+    private static Rule box(final String name, final int minX, final int maxX, final int minZ, final int maxZ, final Rule.RuleAction action) {
+        return new Rule(name, ImmutableList.of(
+                new BlockPosCheck(Direction.Axis.X, minX, maxX),
+                new BlockPosCheck(Direction.Axis.Z, minZ, maxZ)), action);
+    }
+}
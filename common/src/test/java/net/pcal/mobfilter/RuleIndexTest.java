@@ -0,0 +1,220 @@
+package net.pcal.mobfilter;
+
+import com.google.common.collect.ImmutableList;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.util.random.Weighted;
+import net.minecraft.util.random.WeightedList;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.MobCategory;
+import net.minecraft.world.level.biome.MobSpawnSettings.SpawnerData;
+import net.pcal.mobfilter.RuleCheck.BlockPosCheck;
+import net.pcal.mobfilter.RuleCheck.CategoryCheck;
+import net.pcal.mobfilter.RuleCheck.EntityIdCheck;
+import net.pcal.mobfilter.RuleCheck.RandomCheck;
+import net.pcal.mobfilter.RuleCheck.SpawnReasonCheck;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import static net.pcal.mobfilter.Rule.RuleAction.ALLOW_SPAWN;
+import static net.pcal.mobfilter.Rule.RuleAction.DISALLOW_SPAWN;
+import static net.pcal.mobfilter.Rule.RuleAction.THROTTLE;
+import static net.pcal.mobfilter.RuleIndex.VERDICT_ALLOW;
+import static net.pcal.mobfilter.RuleIndex.VERDICT_DISALLOW;
+import static net.pcal.mobfilter.RuleIndex.VERDICT_DYNAMIC;
+import static net.pcal.mobfilter.TestConfigs.config;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RuleIndexTest {
+
+    private static final String[] ENTITY_IDS = {
+            "minecraft:creeper", "minecraft:zombie", "minecraft:skeleton", "minecraft:spider",
+            "minecraft:cow", "minecraft:pig", "minecraft:squid", "minecraft:villager"
+    };
+    private static final BlockPos[] POSITIONS = {
+            new BlockPos(0, 64, 0), new BlockPos(60, 64, 60), new BlockPos(200, 64, 200),
+            new BlockPos(-200, 64, 200), new BlockPos(1000, 64, 1000)
+    };
+    private static final EntitySpawnReason[] REASONS = {
+            EntitySpawnReason.NATURAL, EntitySpawnReason.SPAWNER, EntitySpawnReason.SPAWN_ITEM_USE, null
+    };
+
+    /**
+     * RuleIndex needs the entity registry.
+     */
+    @BeforeAll
+    public static void bootstrap() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+    }
+
+    /**
+     * With entity, category and region rules interleaved, the per-type chains and static verdicts should decide
+     * every spawn the same way as walking the full rule list in order.
+     */
+    @Test
+    public void testSameAsLinearWalk() {
+        final List<Rule> rules = config(
+                box("zone a", -100, 100, ALLOW_SPAWN),
+                new Rule("no creepers", ImmutableList.of(entity("minecraft:creeper")), DISALLOW_SPAWN),
+                new Rule("no monsters in zone b", ImmutableList.of(
+                        new CategoryCheck(EnumSet.of(MobCategory.MONSTER)),
+                        new BlockPosCheck(Direction.Axis.X, 50, 500),
+                        new BlockPosCheck(Direction.Axis.Z, 50, 500)), DISALLOW_SPAWN),
+                new Rule("spawner undead", ImmutableList.of(
+                        entity("minecraft:zombie", "minecraft:skeleton"),
+                        new SpawnReasonCheck(EnumSet.of(EntitySpawnReason.SPAWNER))), ALLOW_SPAWN),
+                new Rule("no creatures", ImmutableList.of(new CategoryCheck(EnumSet.of(MobCategory.CREATURE))), DISALLOW_SPAWN),
+                new Rule("west of here", ImmutableList.of(new BlockPosCheck(Direction.Axis.X, Integer.MIN_VALUE, -1)), DISALLOW_SPAWN),
+                new Rule("no natural s", ImmutableList.of(
+                        entity("minecraft:s*"),
+                        new SpawnReasonCheck(EnumSet.of(EntitySpawnReason.NATURAL))), DISALLOW_SPAWN));
+        final RuleChain linear = RuleChain.build(rules);
+        final RuleIndex index = RuleIndex.build(rules);
+        int disallowed = 0;
+        for (final String entityId : ENTITY_IDS) {
+            for (final BlockPos pos : POSITIONS) {
+                for (final EntitySpawnReason reason : REASONS) {
+                    final CapturedSpawnAttempt att = attempt(entityId, reason, pos);
+                    final boolean expected = ConfigService.isSpawnAllowed(att, linear);
+                    final String what = entityId + " " + reason + " " + pos;
+                    assertEquals(expected, ConfigService.isSpawnAllowed(att, index), what);
+                    assertEquals(expected, ConfigService.isSpawnAllowed(att, index.getRules(att.getEntityType())), what);
+                    if (!expected) disallowed++;
+                }
+            }
+        }
+        assertTrue(disallowed > 0);
+        //
+        // And spot-check that the linear walk itself says what we think it does
+        //
+        assertTrue(ConfigService.isSpawnAllowed(attempt("minecraft:creeper", EntitySpawnReason.NATURAL, POSITIONS[1]), index)); // zone a first
+        assertFalse(ConfigService.isSpawnAllowed(attempt("minecraft:creeper", EntitySpawnReason.NATURAL, POSITIONS[2]), index));
+        assertTrue(ConfigService.isSpawnAllowed(attempt("minecraft:zombie", EntitySpawnReason.SPAWNER, POSITIONS[4]), index));
+        assertFalse(ConfigService.isSpawnAllowed(attempt("minecraft:zombie", EntitySpawnReason.SPAWNER, POSITIONS[2]), index)); // zone b first
+        assertFalse(ConfigService.isSpawnAllowed(attempt("minecraft:cow", EntitySpawnReason.SPAWNER, POSITIONS[4]), index));
+        assertFalse(ConfigService.isSpawnAllowed(attempt("minecraft:squid", EntitySpawnReason.NATURAL, POSITIONS[4]), index));
+        assertTrue(ConfigService.isSpawnAllowed(attempt("minecraft:squid", EntitySpawnReason.SPAWNER, POSITIONS[4]), index));
+        assertTrue(ConfigService.isSpawnAllowed(attempt("minecraft:skeleton", EntitySpawnReason.SPAWNER, POSITIONS[4]), index));
+    }
+
+    /**
+     * Rules that only check the entity and spawn reason should give fixed verdicts, including for spawns with no
+     * reason, where a SpawnReasonCheck matches by default.
+     */
+    @Test
+    public void testStaticVerdicts() {
+        final RuleIndex index = RuleIndex.build(config(
+                new Rule("no spawner creepers", ImmutableList.of(
+                        entity("minecraft:creeper"),
+                        new SpawnReasonCheck(EnumSet.of(EntitySpawnReason.SPAWNER))), DISALLOW_SPAWN),
+                new Rule("allow natural", ImmutableList.of(
+                        new SpawnReasonCheck(EnumSet.of(EntitySpawnReason.NATURAL))), ALLOW_SPAWN),
+                new Rule("no zombies", ImmutableList.of(entity("minecraft:zombie")), DISALLOW_SPAWN)));
+        assertVerdict(index, EntityType.CREEPER, EntitySpawnReason.NATURAL, VERDICT_ALLOW, 1);
+        assertVerdict(index, EntityType.CREEPER, EntitySpawnReason.SPAWNER, VERDICT_DISALLOW, 0);
+        assertVerdict(index, EntityType.CREEPER, EntitySpawnReason.SPAWN_ITEM_USE, VERDICT_ALLOW, -1);
+        assertVerdict(index, EntityType.CREEPER, null, VERDICT_DISALLOW, 0);
+        assertVerdict(index, EntityType.ZOMBIE, EntitySpawnReason.NATURAL, VERDICT_ALLOW, 1);
+        assertVerdict(index, EntityType.ZOMBIE, EntitySpawnReason.SPAWNER, VERDICT_DISALLOW, 2);
+        assertVerdict(index, EntityType.ZOMBIE, null, VERDICT_ALLOW, 1);
+        assertVerdict(index, EntityType.COW, EntitySpawnReason.SPAWNER, VERDICT_ALLOW, -1);
+    }
+
+    /**
+     * A matching RandomCheck or THROTTLE rule ahead of the deciding rule means the answer isn't fixed.  A THROTTLE
+     * rule that can't match the reason doesn't get in the way.
+     */
+    @Test
+    public void testDynamicVerdicts() {
+        final RuleIndex index = RuleIndex.build(config(
+                new Rule("coin flip", ImmutableList.of(entity("minecraft:creeper"), new RandomCheck(0.5)), DISALLOW_SPAWN),
+                new Rule("no creepers", ImmutableList.of(entity("minecraft:creeper")), DISALLOW_SPAWN),
+                new Rule("slow spawners", ImmutableList.of(
+                        entity("minecraft:zombie"),
+                        new SpawnReasonCheck(EnumSet.of(EntitySpawnReason.SPAWNER))), THROTTLE, -1,
+                        new Throttle(1, 1, Throttle.Scope.CHUNK)),
+                new Rule("no zombies", ImmutableList.of(entity("minecraft:zombie")), DISALLOW_SPAWN)));
+        for (final EntitySpawnReason reason : REASONS) {
+            assertVerdict(index, EntityType.CREEPER, reason, VERDICT_DYNAMIC, -1);
+            assertVerdict(index, EntityType.COW, reason, VERDICT_ALLOW, -1);
+        }
+        assertVerdict(index, EntityType.ZOMBIE, EntitySpawnReason.NATURAL, VERDICT_DISALLOW, 3);
+        assertVerdict(index, EntityType.ZOMBIE, EntitySpawnReason.SPAWNER, VERDICT_DYNAMIC, -1);
+        assertVerdict(index, EntityType.ZOMBIE, null, VERDICT_DYNAMIC, -1);
+        assertEquals(VERDICT_DYNAMIC, index.getVerdict(null, EntitySpawnReason.NATURAL));
+    }
+
+    /**
+     * Only spawners that are disallowed for every NATURAL spawn should be pruned.  What's left keeps its order and
+     * weights, and a list with nothing to prune comes back as the same instance.
+     */
+    @Test
+    public void testNaturalSpawners() {
+        final RuleIndex index = RuleIndex.build(config(
+                new Rule("no creepers", ImmutableList.of(entity("minecraft:creeper")), DISALLOW_SPAWN),
+                new Rule("no spawner zombies", ImmutableList.of(
+                        entity("minecraft:zombie"),
+                        new SpawnReasonCheck(EnumSet.of(EntitySpawnReason.SPAWNER))), DISALLOW_SPAWN),
+                new Rule("coin flip", ImmutableList.of(entity("minecraft:skeleton"), new RandomCheck(0.5)), DISALLOW_SPAWN)));
+        final Weighted<SpawnerData> zombie = spawner(EntityType.ZOMBIE, 100);
+        final Weighted<SpawnerData> creeper = spawner(EntityType.CREEPER, 100);
+        final Weighted<SpawnerData> spider = spawner(EntityType.SPIDER, 50);
+        final Weighted<SpawnerData> skeleton = spawner(EntityType.SKELETON, 80);
+
+        final WeightedList<SpawnerData> unchanged = WeightedList.of(List.of(zombie, spider, skeleton));
+        assertSame(unchanged, index.getNaturalSpawners(unchanged));
+        assertSame(unchanged, index.getNaturalSpawners(unchanged));
+
+        final WeightedList<SpawnerData> partial = WeightedList.of(List.of(zombie, creeper, spider, skeleton));
+        final WeightedList<SpawnerData> pruned = index.getNaturalSpawners(partial);
+        assertEquals(List.of(zombie, spider, skeleton), pruned.unwrap());
+        assertSame(pruned, index.getNaturalSpawners(partial));
+
+        final WeightedList<SpawnerData> creepersOnly = WeightedList.of(List.of(creeper));
+        assertTrue(index.getNaturalSpawners(creepersOnly).unwrap().isEmpty());
+    }
+
+    // ===================================================================================
+    // Private
+
+    private static void assertVerdict(final RuleIndex index, final EntityType<?> entityType, final EntitySpawnReason reason,
+                                      final byte verdict, final int rule) {
+        assertEquals(verdict, index.getVerdict(entityType, reason), entityType + " " + reason);
+        assertEquals(rule, index.getVerdictRule(entityType, reason), entityType + " " + reason);
+    }
+
+    private static Weighted<SpawnerData> spawner(final EntityType<?> type, final int weight) {
+        return new Weighted<>(new SpawnerData(type, 1, 4), weight);
+    }
+
+    private static EntityIdCheck entity(final String... ids) {
+        return new EntityIdCheck(IdMatcher.of(ids));
+    }
+
+    private static Rule box(final String name, final int min, final int max, final Rule.RuleAction action) {
+        return new Rule(name, ImmutableList.of(
+                new BlockPosCheck(Direction.Axis.X, min, max),
+                new BlockPosCheck(Direction.Axis.Z, min, max)), action);
+    }
+
+    private static CapturedSpawnAttempt attempt(final String entityId, final EntitySpawnReason reason, final BlockPos pos) {
+        final CapturedSpawnAttempt att = new CapturedSpawnAttempt();
+        att.entityId = Identifier.parse(entityId);
+        att.spawnReason = reason;
+        att.blockPos = pos;
+        att.resolve();
+        att.mobCategory = att.getEntityType().getCategory();
+        return att;
+    }
+}
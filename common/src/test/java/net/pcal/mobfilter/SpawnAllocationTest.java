@@ -0,0 +1,156 @@
+package net.pcal.mobfilter;
+
+import com.google.common.collect.ImmutableList;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.MobCategory;
+import net.pcal.mobfilter.RuleCheck.BlockPosCheck;
+import net.pcal.mobfilter.RuleCheck.CategoryCheck;
+import net.pcal.mobfilter.RuleCheck.EntityIdCheck;
+import net.pcal.mobfilter.RuleCheck.MoonPhaseCheck;
+import net.pcal.mobfilter.RuleCheck.SpawnReasonCheck;
+import net.pcal.mobfilter.RuleCheck.TimeOfDayCheck;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.pcal.mobfilter.Rule.RuleAction.ALLOW_SPAWN;
+import static net.pcal.mobfilter.Rule.RuleAction.DISALLOW_SPAWN;
+import static net.pcal.mobfilter.Rule.RuleAction.THROTTLE;
+import static net.pcal.mobfilter.TestConfigs.config;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SpawnAllocationTest {
+
+    private static final int ITERATIONS = 200_000;
+
+    /**
+     * Make sure that evaluating the rules doesn't allocate anything when trace logging is off.
+     */
+    @Test
+    public void testRuleEvaluationDoesNotAllocate() {
+        final RuleChain rules = RuleChain.build(ImmutableList.of(
+                new Rule("creepers", ImmutableList.of(
+                        new EntityIdCheck(IdMatcher.of(new String[]{"minecraft:creeper"}))), DISALLOW_SPAWN),
+                new Rule("safe zone", ImmutableList.of(
+                        new CategoryCheck(EnumSet.of(MobCategory.MONSTER)),
+                        new BlockPosCheck(Direction.Axis.X, -5000, -4000),
+                        new BlockPosCheck(Direction.Axis.Z, 4000, 5000)), DISALLOW_SPAWN),
+                new Rule("full moon", ImmutableList.of(
+                        new SpawnReasonCheck(EnumSet.of(EntitySpawnReason.NATURAL)),
+                        new MoonPhaseCheck(Matcher.of(new Integer[]{0})),
+                        new TimeOfDayCheck(13000, 23000)), ALLOW_SPAWN),
+                new Rule("no modded", ImmutableList.of(
+                        new EntityIdCheck(IdMatcher.of(new String[]{"mymod:*", "othermod:a", "othermod:b", "othermod:c", "othermod:d"}))), DISALLOW_SPAWN)));
+
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.entityId = Identifier.parse("minecraft:zombie");
+        att.spawnReason = EntitySpawnReason.NATURAL;
+        att.mobCategory = MobCategory.MONSTER;
+        att.blockPos = new BlockPos(1000, 64, -2000);
+        att.moonPhase = 4;
+        att.dayTime = 18000L;
+
+        assertTrue(ConfigService.isSpawnAllowed(att, rules));
+        att.entityId = Identifier.parse("minecraft:creeper");
+        assertFalse(ConfigService.isSpawnAllowed(att, rules));
+        att.entityId = Identifier.parse("minecraft:zombie");
+
+        assertNoAllocation(() -> ConfigService.isSpawnAllowed(att, rules));
+    }
+
+    /**
+     * Same again, but the way MixinService does it: the attempt is reused for each spawn, asked for an early
+     * veto, then decided, against the compiled per-type chain.  We can't stand up a ServerLevel here, so a stub
+     * stands in for the pooled MainThreadSpawnAttempt, whose reset() and release() only assign fields.  Day time
+     * goes through the level, so the boxing it used to do is checked on the EnvironmentCache directly.
+     */
+    @Test
+    public void testCompiledChainDoesNotAllocate() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        final List<Rule> config = config(
+                new Rule("creepers", ImmutableList.of(
+                        new EntityIdCheck(IdMatcher.of(new String[]{"minecraft:creeper"}))), DISALLOW_SPAWN),
+                new Rule("safe zone", ImmutableList.of(
+                        new CategoryCheck(EnumSet.of(MobCategory.MONSTER)),
+                        new BlockPosCheck(Direction.Axis.X, -5000, -4000),
+                        new BlockPosCheck(Direction.Axis.Z, 4000, 5000)), DISALLOW_SPAWN),
+                new Rule("no spawner zombies", ImmutableList.of(
+                        new EntityIdCheck(IdMatcher.of(new String[]{"minecraft:*zombie*"})),
+                        new SpawnReasonCheck(EnumSet.of(EntitySpawnReason.SPAWNER))), DISALLOW_SPAWN),
+                new Rule("east side", ImmutableList.of(
+                        new BlockPosCheck(Direction.Axis.X, 100_000, Integer.MAX_VALUE)), DISALLOW_SPAWN));
+        final RuleChain rules = RuleIndex.build(config).getRules(EntityType.ZOMBIE);
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.entityId = Identifier.parse("minecraft:zombie");
+        att.entityType = EntityType.ZOMBIE;
+        att.mobCategory = MobCategory.MONSTER;
+        final BlockPos pos = new BlockPos(1000, 64, -2000);
+
+        reset(att, EntitySpawnReason.SPAWNER, pos);
+        assertTrue(ConfigService.isSpawnVetoed(att, rules));
+        assertNoAllocation(() -> {
+            reset(att, EntitySpawnReason.NATURAL, pos);
+            if (ConfigService.isSpawnVetoed(att, rules) || !ConfigService.isSpawnAllowed(att, rules)) throw new AssertionError();
+        });
+
+        final EnvironmentCache cache = new EnvironmentCache();
+        assertSame(cache.boxDayTime(18000), cache.boxDayTime(18000));
+        assertNoAllocation(() -> cache.boxDayTime(18000));
+    }
+
+    /**
+     * A matching THROTTLE rule shouldn't allocate either, whether its bucket is new, has a token to take, or is
+     * empty.
+     */
+    @Test
+    public void testThrottleDoesNotAllocate() {
+        final AtomicLong clock = new AtomicLong();
+        final RuleChain rules = RuleChain.build(ImmutableList.of(
+                new Rule("slow zombies", ImmutableList.of(
+                        new EntityIdCheck(IdMatcher.of(new String[]{"minecraft:zombie"}))), THROTTLE, -1,
+                        new Throttle(60, 1, Throttle.Scope.CHUNK, clock::get)),
+                new Rule("no spawners", ImmutableList.of(
+                        new SpawnReasonCheck(EnumSet.of(EntitySpawnReason.SPAWNER))), DISALLOW_SPAWN)));
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.entityId = Identifier.parse("minecraft:zombie");
+        att.dimensionId = Identifier.parse("minecraft:overworld");
+        att.spawnReason = EntitySpawnReason.NATURAL;
+        att.blockPos = new BlockPos(1000, 64, -2000);
+
+        assertTrue(ConfigService.isSpawnAllowed(att, rules));
+        assertFalse(ConfigService.isSpawnAllowed(att, rules));
+        assertNoAllocation(() -> {
+            clock.addAndGet(1000); // one more token
+            if (!ConfigService.isSpawnAllowed(att, rules) || ConfigService.isSpawnAllowed(att, rules)) throw new AssertionError();
+        });
+    }
+
+    // ===================================================================================
+    // Private
+
+    private static void assertNoAllocation(final Runnable decision) {
+        for (int i = 0; i < ITERATIONS; i++) decision.run(); // warm up
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long before = threadBean.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) decision.run();
+        final long bytesPerDecision = (threadBean.getCurrentThreadAllocatedBytes() - before) / ITERATIONS;
+        assertTrue(bytesPerDecision == 0, "allocated " + bytesPerDecision + " bytes per decision");
+    }
+
+    private static void reset(final StubSpawnAttempt att, final EntitySpawnReason spawnReason, final BlockPos pos) {
+        att.spawnReason = spawnReason;
+        att.blockPos = pos;
+    }
+}
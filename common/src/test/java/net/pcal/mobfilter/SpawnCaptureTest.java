@@ -0,0 +1,81 @@
+package net.pcal.mobfilter;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.Identifier;
+import net.minecraft.world.Difficulty;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.MobCategory;
+import net.minecraft.world.level.LightLayer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class SpawnCaptureTest {
+
+    /**
+     * Attempts written to a capture should come back with the same values, including the ones that were null.
+     */
+    @Test
+    public void testRoundTrip(@TempDir final Path tempDir) throws Exception {
+        final Path file = tempDir.resolve("capture.bin");
+        final StubSpawnAttempt full = new StubSpawnAttempt();
+        full.entityId = Identifier.parse("minecraft:zombie");
+        full.worldName = "world";
+        full.dimensionId = Identifier.parse("minecraft:overworld");
+        full.blockId = Identifier.parse("minecraft:grass_block");
+        full.biomeId = Identifier.parse("minecraft:plains");
+        full.spawnReason = EntitySpawnReason.NATURAL;
+        full.mobCategory = MobCategory.MONSTER;
+        full.blockPos = new BlockPos(100, -60, -3000);
+        full.moonPhase = 4;
+        full.skyBrightness = 15;
+        full.rawBrightness = 0;
+        full.difficulty = Difficulty.HARD;
+        full.dayTime = 13000L;
+        full.gameTime = 2_000_000L;
+        full.weatherType = RuleCheck.WeatherType.THUNDER;
+        final StubSpawnAttempt empty = new StubSpawnAttempt();
+        empty.entityId = Identifier.parse("minecraft:zombie");
+        try (final SpawnCapture capture = SpawnCapture.open(file)) {
+            capture.write(full);
+            capture.write(empty);
+            assertEquals(2, capture.getCount());
+        }
+
+        final List<CapturedSpawnAttempt> attempts = SpawnCapture.read(file);
+        assertEquals(2, attempts.size());
+        final CapturedSpawnAttempt att = attempts.get(0);
+        assertEquals(full.entityId, att.getEntityId());
+        assertEquals("world", att.getWorldName());
+        assertEquals(full.dimensionId, att.getDimensionId());
+        assertEquals(full.blockId, att.getBlockId());
+        assertEquals(full.biomeId, att.getBiomeId());
+        assertEquals(EntitySpawnReason.NATURAL, att.getSpawnReason());
+        assertEquals(MobCategory.MONSTER, att.getMobCategory());
+        assertEquals(full.blockPos, att.getBlockPos());
+        assertEquals(4, att.getMoonPhase());
+        assertEquals(15, att.getBrightness(LightLayer.SKY, full.blockPos));
+        assertEquals(0, att.getMaxLocalRawBrightness(full.blockPos));
+        assertEquals(Difficulty.HARD, att.getDifficulty());
+        assertEquals(13000L, att.getDayTime());
+        assertEquals(2_000_000L, att.getGameTime());
+        assertEquals(RuleCheck.WeatherType.THUNDER, att.getWeatherType());
+        assertEquals(Boolean.TRUE, att.isThundering());
+
+        final CapturedSpawnAttempt nulls = attempts.get(1);
+        assertEquals(full.entityId, nulls.getEntityId());
+        assertNull(nulls.getWorldName());
+        assertNull(nulls.getSpawnReason());
+        assertNull(nulls.getBlockPos());
+        assertNull(nulls.getMoonPhase());
+        assertNull(nulls.getDayTime());
+        assertNull(nulls.getGameTime());
+        assertNull(nulls.getWeatherType());
+        assertNull(nulls.isThundering());
+    }
+}
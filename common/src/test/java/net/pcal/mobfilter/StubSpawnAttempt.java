@@ -0,0 +1,156 @@
+package net.pcal.mobfilter;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.resources.Identifier;
+import net.minecraft.world.Difficulty;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.MobCategory;
+import net.minecraft.world.level.LightLayer;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.Block;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * SpawnAttempt with canned values, for exercising the rules without a world.
+ */
+class StubSpawnAttempt implements SpawnAttempt {
+
+    private static final Logger LOGGER = LogManager.getLogger(StubSpawnAttempt.class);
+
+    Identifier entityId;
+    EntityType<?> entityType;
+    String worldName;
+    Identifier dimensionId;
+    Identifier blockId;
+    EntitySpawnReason spawnReason;
+    MobCategory mobCategory;
+    BlockPos blockPos;
+    Integer moonPhase;
+    Integer skyBrightness;
+    Integer rawBrightness;
+    Difficulty difficulty;
+    Identifier biomeId;
+    Holder<Biome> biomeHolder;
+    Long dayTime;
+    Long gameTime;
+    RuleCheck.WeatherType weatherType;
+    Integer nearbyCount;
+
+    @Override
+    public Identifier getEntityId() {
+        return this.entityId;
+    }
+
+    @Override
+    public EntityType<?> getEntityType() {
+        return this.entityType;
+    }
+
+    @Override
+    public String getWorldName() {
+        return this.worldName;
+    }
+
+    @Override
+    public Identifier getDimensionId() {
+        return this.dimensionId;
+    }
+
+    @Override
+    public Identifier getBlockId() {
+        return this.blockId;
+    }
+
+    @Override
+    public EntitySpawnReason getSpawnReason() {
+        return this.spawnReason;
+    }
+
+    @Override
+    public MobCategory getMobCategory() {
+        return this.mobCategory;
+    }
+
+    @Override
+    public BlockPos getBlockPos() {
+        return this.blockPos;
+    }
+
+    @Override
+    public Integer getMoonPhase() {
+        return this.moonPhase;
+    }
+
+    @Override
+    public Integer getBrightness(LightLayer lightLayer, BlockPos blockPos) {
+        return lightLayer == LightLayer.SKY ? this.skyBrightness : null;
+    }
+
+    @Override
+    public Integer getMaxLocalRawBrightness(BlockPos blockPos) {
+        return this.rawBrightness;
+    }
+
+    @Override
+    public Boolean isThundering() {
+        return this.weatherType == null ? null : this.weatherType == RuleCheck.WeatherType.THUNDER;
+    }
+
+    @Override
+    public Boolean isRainingAt(BlockPos blockPos) {
+        return this.weatherType == null ? null : this.weatherType != RuleCheck.WeatherType.CLEAR;
+    }
+
+    @Override
+    public Difficulty getDifficulty() {
+        return this.difficulty;
+    }
+
+    @Override
+    public Biome getBiome(BlockPos blockPos) {
+        return null;
+    }
+
+    @Override
+    public Identifier getBiomeId() {
+        return this.biomeId;
+    }
+
+    @Override
+    public Long getDayTime() {
+        return this.dayTime;
+    }
+
+    @Override
+    public Long getGameTime() {
+        return this.gameTime;
+    }
+
+    @Override
+    public RuleCheck.WeatherType getWeatherType() {
+        return this.weatherType;
+    }
+
+    @Override
+    public Block getBlock() {
+        return null;
+    }
+
+    @Override
+    public Holder<Biome> getBiomeHolder() {
+        return this.biomeHolder;
+    }
+
+    @Override
+    public Integer getNearbyCount(int categoryMask, int chunkRadius) {
+        return this.nearbyCount;
+    }
+
+    @Override
+    public Logger getLogger() {
+        return LOGGER;
+    }
+}
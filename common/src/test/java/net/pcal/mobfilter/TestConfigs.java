@@ -0,0 +1,21 @@
+package net.pcal.mobfilter;
+
+import java.util.List;
+
+/**
+ * Helpers for building configs in tests.
+ */
+final class TestConfigs {
+
+    private TestConfigs() {
+    }
+
+    /**
+     * @return the given rules as the config would have them, i.e., with their ordinals assigned.
+     */
+    static List<Rule> config(final Rule... rules) {
+        final Config.Builder builder = Config.builder();
+        for (final Rule rule : rules) builder.addRule(rule);
+        return builder.build().getRules();
+    }
+}
@@ -0,0 +1,120 @@
+package net.pcal.mobfilter;
+
+import com.google.common.collect.ImmutableList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.Identifier;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.pcal.mobfilter.RuleCheck.EntityIdCheck;
+import net.pcal.mobfilter.RuleCheck.SpawnReasonCheck;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.pcal.mobfilter.Rule.RuleAction.DISALLOW_SPAWN;
+import static net.pcal.mobfilter.Rule.RuleAction.THROTTLE;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ThrottleTest {
+
+    /**
+     * A bucket should allow 'burst' spawns and then deny, and each chunk should get its own bucket.
+     */
+    @Test
+    public void testBurstPerChunk() {
+        final Throttle throttle = new Throttle(0.001, 2, Throttle.Scope.CHUNK);
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.entityId = Identifier.parse("minecraft:zombie");
+        att.blockPos = new BlockPos(1, 64, 1);
+        assertTrue(throttle.tryAcquire(att));
+        att.blockPos = new BlockPos(15, 70, 15); // same chunk
+        assertTrue(throttle.tryAcquire(att));
+        assertFalse(throttle.tryAcquire(att));
+        att.blockPos = new BlockPos(-1, 64, 1); // next chunk over
+        assertTrue(throttle.tryAcquire(att));
+    }
+
+    /**
+     * The same chunk coordinates in different dimensions should have separate buckets.
+     */
+    @Test
+    public void testBucketPerDimension() {
+        final Throttle throttle = new Throttle(0.001, 1, Throttle.Scope.CHUNK);
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.entityId = Identifier.parse("minecraft:zombie");
+        att.blockPos = new BlockPos(1, 64, 1);
+        att.dimensionId = Identifier.parse("minecraft:overworld");
+        assertTrue(throttle.tryAcquire(att));
+        assertFalse(throttle.tryAcquire(att));
+        att.dimensionId = Identifier.parse("minecraft:the_nether");
+        assertTrue(throttle.tryAcquire(att));
+        assertFalse(throttle.tryAcquire(att));
+        att.dimensionId = null;
+        assertTrue(throttle.tryAcquire(att));
+        assertEquals(3, throttle.getBucketCount());
+    }
+
+    /**
+     * An empty bucket should get a token back after 1/rate minutes, and not before.
+     */
+    @Test
+    public void testRefill() {
+        final AtomicLong clock = new AtomicLong(1_000_000);
+        final Throttle throttle = new Throttle(60, 1, Throttle.Scope.CHUNK, clock::get); // one a second
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.blockPos = new BlockPos(1, 64, 1);
+        assertTrue(throttle.tryAcquire(att));
+        assertFalse(throttle.tryAcquire(att));
+        clock.addAndGet(500);
+        assertFalse(throttle.tryAcquire(att));
+        clock.addAndGet(500);
+        assertTrue(throttle.tryAcquire(att));
+        assertFalse(throttle.tryAcquire(att));
+        clock.addAndGet(60_000); // refills to burst, not beyond
+        assertTrue(throttle.tryAcquire(att));
+        assertFalse(throttle.tryAcquire(att));
+    }
+
+    /**
+     * A spawn that a later rule denies shouldn't use up a token; only spawns that are actually allowed should.
+     */
+    @Test
+    public void testTokenOnlyTakenWhenAllowed() {
+        final RuleChain rules = RuleChain.build(ImmutableList.of(
+                new Rule("slow zombies", ImmutableList.of(new EntityIdCheck(IdMatcher.of(new String[]{"minecraft:zombie"}))),
+                        THROTTLE, -1, new Throttle(0.001, 1, Throttle.Scope.CHUNK)),
+                new Rule("no spawners", ImmutableList.of(new SpawnReasonCheck(EnumSet.of(EntitySpawnReason.SPAWNER))), DISALLOW_SPAWN)));
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.entityId = Identifier.parse("minecraft:zombie");
+        att.blockPos = new BlockPos(1, 64, 1);
+        att.spawnReason = EntitySpawnReason.SPAWNER;
+        for (int i = 0; i < 5; i++) assertFalse(ConfigService.isSpawnAllowed(att, rules));
+        att.spawnReason = EntitySpawnReason.NATURAL;
+        assertTrue(ConfigService.isSpawnAllowed(att, rules));
+        assertFalse(ConfigService.isSpawnAllowed(att, rules));
+    }
+
+    /**
+     * sweep() should drop the buckets that have refilled and keep the ones that haven't.
+     */
+    @Test
+    public void testSweep() {
+        final AtomicLong clock = new AtomicLong(0);
+        final Throttle throttle = new Throttle(60, 1, Throttle.Scope.CHUNK, clock::get);
+        final StubSpawnAttempt att = new StubSpawnAttempt();
+        att.blockPos = new BlockPos(1, 64, 1);
+        assertTrue(throttle.tryAcquire(att));
+        att.blockPos = new BlockPos(100, 64, 100);
+        assertTrue(throttle.tryAcquire(att));
+        clock.addAndGet(1000);
+        att.blockPos = new BlockPos(200, 64, 200);
+        assertTrue(throttle.tryAcquire(att));
+        assertEquals(3, throttle.getBucketCount());
+        throttle.sweep();
+        assertEquals(1, throttle.getBucketCount());
+        assertFalse(throttle.tryAcquire(att)); // the one that's still empty survived
+    }
+}
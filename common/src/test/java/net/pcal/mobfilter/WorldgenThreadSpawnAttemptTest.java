@@ -0,0 +1,126 @@
+package net.pcal.mobfilter;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.Difficulty;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.MobCategory;
+import net.minecraft.world.level.LightLayer;
+import net.pcal.mobfilter.SpawnAttempt.WorldgenThreadSpawnAttempt;
+import org.apache.logging.log4j.LogManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorldgenThreadSpawnAttemptTest {
+
+    private static final Identifier OVERWORLD = Identifier.parse("minecraft:overworld");
+    private static final BlockPos POS = new BlockPos(100, 64, -200);
+
+    @BeforeAll
+    public static void bootstrap() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+    }
+
+    /**
+     * Before the level has ticked there's no snapshot, so nothing level-wide is known.  Without a region,
+     * nothing about the blocks is known either.  What the spawner told us still is.
+     */
+    @Test
+    public void testNothingKnown() {
+        final WorldgenThreadSpawnAttempt att = attempt(null);
+        assertEquals(Identifier.parse("minecraft:zombie"), att.getEntityId());
+        assertSame(EntityType.ZOMBIE, att.getEntityType());
+        assertEquals(OVERWORLD, att.getDimensionId());
+        assertEquals(EntitySpawnReason.CHUNK_GENERATION, att.getSpawnReason());
+        assertEquals(MobCategory.MONSTER, att.getMobCategory());
+        assertEquals(POS, att.getBlockPos());
+        assertNull(att.getWorldName());
+        assertNull(att.getDifficulty());
+        assertNull(att.getDayTime());
+        assertNull(att.getGameTime());
+        assertNull(att.isThundering());
+        assertNull(att.isRainingAt(POS));
+        assertNull(att.getWeatherType());
+        assertBlocksUnknown(att);
+    }
+
+    /**
+     * Once the level has ticked, level-wide facts come from the snapshot, but blocks still need a region.
+     */
+    @Test
+    public void testSnapshotWithoutRegion() {
+        final WorldgenThreadSpawnAttempt att = attempt(new LevelSnapshot("world", Difficulty.HARD, 1234, 18000, true, false));
+        assertEquals("world", att.getWorldName());
+        assertEquals(Difficulty.HARD, att.getDifficulty());
+        assertEquals(18000L, att.getDayTime());
+        assertEquals(1234L, att.getGameTime());
+        assertSame(att.getGameTime(), att.getGameTime());
+        assertFalse(att.isThundering());
+        assertNull(att.isRainingAt(POS)); // raining, but we can't tell whether it reaches POS
+        assertNull(att.getWeatherType());
+        assertBlocksUnknown(att);
+
+        att.reset(OVERWORLD, new LevelSnapshot("world", Difficulty.HARD, 1234, 18000, true, true), null,
+                EntitySpawnReason.CHUNK_GENERATION, MobCategory.MONSTER, EntityType.ZOMBIE, POS);
+        assertEquals(RuleCheck.WeatherType.THUNDER, att.getWeatherType()); // thunder doesn't need the region
+    }
+
+    /**
+     * The snapshot should be reused from tick to tick as long as only the times change.
+     */
+    @Test
+    public void testSnapshotReused() {
+        final LevelSnapshot first = LevelSnapshot.of(null, "world", Difficulty.NORMAL, 100, 200, false, false);
+        final LevelSnapshot second = LevelSnapshot.of(first, "world", Difficulty.NORMAL, 101, 201, false, false);
+        assertSame(first, second);
+        assertEquals(101, second.gameTime());
+        assertEquals(201, second.dayTime());
+
+        final LevelSnapshot raining = LevelSnapshot.of(second, "world", Difficulty.NORMAL, 102, 202, true, false);
+        assertNotSame(second, raining);
+        assertTrue(raining.isRaining());
+        assertEquals(102, raining.gameTime());
+        assertNotSame(raining, LevelSnapshot.of(raining, "world", Difficulty.HARD, 103, 203, true, false));
+
+        final WorldgenThreadSpawnAttempt att = attempt(first);
+        assertEquals(101L, att.getGameTime());
+        LevelSnapshot.of(first, "world", Difficulty.NORMAL, 150, 250, false, false);
+        assertEquals(101L, att.getGameTime()); // one spawn sees one time
+        att.release();
+        att.reset(OVERWORLD, first, null, EntitySpawnReason.CHUNK_GENERATION, MobCategory.MONSTER, EntityType.ZOMBIE, POS);
+        assertEquals(150L, att.getGameTime());
+    }
+
+    // ===================================================================================
+    // Private
+
+    private static WorldgenThreadSpawnAttempt attempt(final LevelSnapshot snapshot) {
+        return new WorldgenThreadSpawnAttempt(LogManager.getLogger(WorldgenThreadSpawnAttemptTest.class))
+                .reset(OVERWORLD, snapshot, null, EntitySpawnReason.CHUNK_GENERATION, MobCategory.MONSTER, EntityType.ZOMBIE, POS);
+    }
+
+    private static void assertBlocksUnknown(final WorldgenThreadSpawnAttempt att) {
+        assertNull(att.getBlock());
+        assertNull(att.getBlockId());
+        assertNull(att.getBiomeHolder());
+        assertNull(att.getBiome(POS));
+        assertNull(att.getBiomeId());
+        assertNull(att.getMoonPhase());
+        assertNull(att.getBrightness(LightLayer.SKY, POS));
+        assertNull(att.getMaxLocalRawBrightness(POS));
+        assertNull(att.getNearbyCount(MobCounts.getCategoryMask(EnumSet.of(MobCategory.MONSTER)), 1));
+    }
+}
@@ -1,8 +1,11 @@
 package net.pcal.mobfilter.fabric;
 
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.pcal.mobfilter.ConfigService;
+import net.pcal.mobfilter.MixinService;
+import net.pcal.mobfilter.MobFilterCommands;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -22,12 +25,22 @@ public class FabricModInitializer implements ModInitializer {
     public void onInitialize() {
         ConfigService.get().ensureConfigFilesExists(CONFIG_DIR_PATH);
         ServerLifecycleEvents.SERVER_STARTING.register(server -> {
+            MixinService.get().setServerThread(server.getRunningThread());
             try {
                 ConfigService.get().loadConfig(CONFIG_DIR_PATH);
+                ConfigService.get().startWatching(CONFIG_DIR_PATH);
             } catch (Exception | NoClassDefFoundError e) {
                 LOGGER.catching(Level.ERROR, e);
                 LOGGER.error("[MobFilter] failed to initialize");
             }
         });
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> ConfigService.get().stopWatching());
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            MixinService.get().setServerThread(null);
+            MixinService.get().stopCapture();
+            ConfigService.get().stopJournal();
+        });
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) ->
+                MobFilterCommands.register(dispatcher, CONFIG_DIR_PATH));
     }
 }
@@ -4,8 +4,13 @@ import net.neoforged.bus.api.IEventBus;
 import net.neoforged.fml.common.Mod;
 import net.neoforged.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.neoforged.neoforge.common.NeoForge;
+import net.neoforged.neoforge.event.RegisterCommandsEvent;
 import net.neoforged.neoforge.event.server.ServerStartingEvent;
+import net.neoforged.neoforge.event.server.ServerStoppedEvent;
+import net.neoforged.neoforge.event.server.ServerStoppingEvent;
 import net.pcal.mobfilter.ConfigService;
+import net.pcal.mobfilter.MixinService;
+import net.pcal.mobfilter.MobFilterCommands;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -22,6 +27,9 @@ public class ForgeMobFilterMod {
         LOGGER.info("[MobFilter] Mod constructor called");
         modBus.addListener(ForgeMobFilterMod::onCommonSetup);
         NeoForge.EVENT_BUS.addListener(ForgeMobFilterMod::onServerStarting);
+        NeoForge.EVENT_BUS.addListener(ForgeMobFilterMod::onServerStopping);
+        NeoForge.EVENT_BUS.addListener(ForgeMobFilterMod::onServerStopped);
+        NeoForge.EVENT_BUS.addListener(ForgeMobFilterMod::onRegisterCommands);
     }
 
     private static void onCommonSetup(FMLCommonSetupEvent event) {
@@ -31,13 +39,29 @@ public class ForgeMobFilterMod {
 
     private static void onServerStarting(ServerStartingEvent event) {
         LOGGER.info("[MobFilter] ServerStartingEvent fired");
+        MixinService.get().setServerThread(event.getServer().getRunningThread());
         ConfigService.get().ensureConfigFilesExists(CONFIG_DIR_PATH);
         try {
             ConfigService.get().loadConfig(CONFIG_DIR_PATH);
+            ConfigService.get().startWatching(CONFIG_DIR_PATH);
         } catch (Exception | NoClassDefFoundError e) {
             LOGGER.catching(Level.ERROR, e);
             LOGGER.error("[MobFilter] failed to initialize");
         }
     }
+
+    private static void onServerStopping(ServerStoppingEvent event) {
+        ConfigService.get().stopWatching();
+    }
+
+    private static void onServerStopped(ServerStoppedEvent event) {
+        MixinService.get().setServerThread(null);
+        MixinService.get().stopCapture();
+        ConfigService.get().stopJournal();
+    }
+
+    private static void onRegisterCommands(RegisterCommandsEvent event) {
+        MobFilterCommands.register(event.getDispatcher(), CONFIG_DIR_PATH);
+    }
 }
 